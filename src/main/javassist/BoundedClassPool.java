@@ -0,0 +1,350 @@
+/*
+ * Javassist, a Java-bytecode translator toolkit.
+ * Copyright (C) 1999- Shigeru Chiba. All Rights Reserved.
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with
+ * the License.  Alternatively, the contents of this file may be used under
+ * the terms of the GNU Lesser General Public License Version 2.1 or later,
+ * or the Apache License Version 2.0.
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ */
+
+package javassist;
+
+import java.lang.ref.SoftReference;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javassist.bytecode.AttributeInfo;
+import javassist.bytecode.ClassFile;
+import javassist.bytecode.FieldInfo;
+import javassist.bytecode.MethodInfo;
+
+/**
+ * A <code>ClassPool</code> that limits the memory used by
+ * the cached <code>CtClass</code> objects.
+ *
+ * <p><code>ClassPool</code> keeps every <code>CtClass</code> object
+ * until <code>detach()</code> is called.  This class pool keeps
+ * the unmodified <code>CtClass</code> objects only while the estimated size
+ * of their class files is within the memory budget.  If the budget is
+ * exceeded, the least recently used objects are released.  They are
+ * softly referenced and, if they have been garbage-collected,
+ * <code>get()</code> reads the class files from the class path again.
+ * While a released <code>CtClass</code> object is still in use,
+ * <code>get()</code> returns the same object.
+ *
+ * <p>The <code>CtClass</code> objects that have been modified or made by
+ * <code>makeClass()</code> etc. are never released since they cannot be
+ * obtained from the class path again.  The frozen objects, for example,
+ * the ones converted by <code>toClass()</code>, are not released either
+ * since the objects read from the class path again would not be frozen.
+ * They must be explicitly detached.
+ *
+ * <p>The size of a class file is roughly estimated from the number of
+ * the constant pool entries and the length of the attributes.
+ * It is not the exact size of the objects in the heap.
+ *
+ * @see ClassPool
+ * @since 3.25
+ */
+public class BoundedClassPool extends ClassPool {
+    // a rough estimate of the size of a CtClass object without its class file
+    private static final int CTCLASS_SIZE = 256;
+    private static final int CONST_ENTRY_SIZE = 40;
+    private static final int MEMBER_SIZE = 64;
+    private static final int INIT_HASH_SIZE = 191;
+
+    private static final class Entry {
+        final CtClass clazz;
+        int size;
+
+        Entry(CtClass c) {
+            clazz = c;
+            size = estimateSize(c);
+        }
+    }
+
+    private long budget;
+    private long used;
+    private int compressCount;
+
+    // the unmodified classes in the access order.
+    private final LinkedHashMap<String,Entry> recent;
+
+    // the unmodified classes released from recent.
+    private final HashMap<String,SoftReference<CtClass>> released;
+
+    // the modified or frozen classes and the classes made by makeClass() etc.
+    private final HashMap<String,CtClass> pinned;
+
+    /**
+     * Creates a root class pool.  No parent class pool is specified.
+     *
+     * @param budget    the memory budget (in bytes).
+     */
+    public BoundedClassPool(long budget) {
+        this(null, budget);
+    }
+
+    /**
+     * Creates a root class pool.  If <code>useDefaultPath</code> is
+     * true, <code>appendSystemPath()</code> is called.
+     *
+     * @param useDefaultPath    true if the system search path is
+     *                          appended.
+     * @param budget            the memory budget (in bytes).
+     */
+    public BoundedClassPool(boolean useDefaultPath, long budget) {
+        this(null, budget);
+        if (useDefaultPath)
+            appendSystemPath();
+    }
+
+    /**
+     * Creates a class pool.
+     *
+     * @param parent    the parent of this class pool.  If this is a root
+     *                  class pool, this parameter must be <code>null</code>.
+     * @param budget    the memory budget (in bytes).
+     */
+    @SuppressWarnings("unchecked")
+    public BoundedClassPool(ClassPool parent, long budget) {
+        super(parent);
+        this.budget = budget;
+        used = 0;
+        compressCount = 0;
+        recent = new LinkedHashMap<String,Entry>(INIT_HASH_SIZE, 0.75f, true);
+        released = new HashMap<String,SoftReference<CtClass>>();
+        pinned = new HashMap<String,CtClass>(classes);
+    }
+
+    /**
+     * Returns the memory budget (in bytes).
+     */
+    public synchronized long getMemoryBudget() {
+        return budget;
+    }
+
+    /**
+     * Changes the memory budget.  If the estimated size of the cached
+     * classes exceeds the new budget, the least recently used classes
+     * are released.
+     *
+     * @param budget    the memory budget (in bytes).
+     */
+    public synchronized void setMemoryBudget(long budget) {
+        this.budget = budget;
+        trim();
+    }
+
+    /**
+     * Returns the estimated size (in bytes) of the unmodified classes
+     * that are not released.  The modified classes are not counted.
+     */
+    public synchronized long getMemoryUsage() {
+        return used;
+    }
+
+    @Override
+    protected synchronized CtClass getCached(String classname) {
+        CtClass c = pinned.get(classname);
+        if (c != null)
+            return c;
+
+        Entry e = recent.get(classname);
+        if (e != null)
+            return e.clazz;
+
+        SoftReference<CtClass> ref = released.get(classname);
+        if (ref == null)
+            return null;
+
+        c = ref.get();
+        released.remove(classname);
+        if (c != null) {
+            addRecent(classname, new Entry(c));
+            trim();
+        }
+
+        return c;
+    }
+
+    @Override
+    protected synchronized void cacheCtClass(String classname, CtClass c,
+                                             boolean dynamic) {
+        remove(classname);
+        if (dynamic || mustPin(c))
+            pinned.put(classname, c);
+        else {
+            addRecent(classname, new Entry(c));
+            trim();
+        }
+    }
+
+    @Override
+    protected synchronized CtClass removeCached(String classname) {
+        return remove(classname);
+    }
+
+    private CtClass remove(String classname) {
+        CtClass c = pinned.remove(classname);
+        Entry e = recent.remove(classname);
+        if (e != null) {
+            used -= e.size;
+            c = e.clazz;
+        }
+
+        SoftReference<CtClass> ref = released.remove(classname);
+        if (c == null && ref != null)
+            c = ref.get();
+
+        return c;
+    }
+
+    private void addRecent(String classname, Entry e) {
+        recent.put(classname, e);
+        used += e.size;
+    }
+
+    /**
+     * Releases the least recently used classes until the estimated size
+     * is within the budget.
+     */
+    private void trim() {
+        Iterator<Map.Entry<String,Entry>> it = recent.entrySet().iterator();
+        while (used > budget && it.hasNext()) {
+            Map.Entry<String,Entry> me = it.next();
+            Entry e = me.getValue();
+            it.remove();
+            used -= e.size;
+            if (mustPin(e.clazz))
+                pinned.put(me.getKey(), e.clazz);
+            else
+                released.put(me.getKey(), new SoftReference<CtClass>(e.clazz));
+        }
+
+        if (released.size() > recent.size() + INIT_HASH_SIZE)
+            removeCleared();
+    }
+
+    private static boolean mustPin(CtClass c) {
+        return c.isModified() || c.isFrozen();
+    }
+
+    private void removeCleared() {
+        Iterator<SoftReference<CtClass>> it = released.values().iterator();
+        while (it.hasNext())
+            if (it.next().get() == null)
+                it.remove();
+    }
+
+    @Override
+    synchronized void classFileLoaded(CtClass clazz) {
+        Entry e = recent.get(clazz.getName());
+        if (e != null && e.clazz == clazz) {
+            int size = estimateSize(clazz);
+            used += size - e.size;
+            e.size = size;
+            trim();
+        }
+    }
+
+    @Override
+    synchronized void classModified(CtClass clazz) {
+        pin(clazz);
+    }
+
+    @Override
+    synchronized void classFrozen(CtClass clazz) {
+        pin(clazz);
+    }
+
+    private void pin(CtClass clazz) {
+        String name = clazz.getName();
+        Entry e = recent.get(name);
+        if (e != null && e.clazz == clazz) {
+            recent.remove(name);
+            used -= e.size;
+            pinned.put(name, clazz);
+            return;
+        }
+
+        SoftReference<CtClass> ref = released.get(name);
+        if (ref != null && ref.get() == clazz) {
+            released.remove(name);
+            pinned.put(name, clazz);
+        }
+    }
+
+    @Override
+    void compress() {
+        if (!canCompress())
+            return;
+
+        CtClass[] cached;
+        synchronized (this) {
+            if (compressCount++ <= COMPRESS_THRESHOLD)
+                return;
+
+            compressCount = 0;
+            cached = new CtClass[recent.size() + pinned.size()];
+            int i = 0;
+            for (Entry e: recent.values())
+                cached[i++] = e.clazz;
+
+            for (CtClass c: pinned.values())
+                cached[i++] = c;
+        }
+
+        // CtClass#compress() may lock the CtClass object.
+        for (CtClass c: cached)
+            c.compress();
+    }
+
+    /**
+     * Estimates the size of the given class.
+     */
+    static int estimateSize(CtClass c) {
+        if (c instanceof CtClassType) {
+            CtClassType ct = (CtClassType)c;
+            byte[] raw = ct.rawClassfile;
+            if (raw != null)
+                return CTCLASS_SIZE + raw.length;
+
+            ClassFile cf = ct.classfile;
+            if (cf != null)
+                return CTCLASS_SIZE + estimateSize(cf);
+        }
+
+        return CTCLASS_SIZE;
+    }
+
+    private static int estimateSize(ClassFile cf) {
+        int size = cf.getConstPool().getSize() * CONST_ENTRY_SIZE
+                   + estimateSize(cf.getAttributes());
+        for (FieldInfo f: cf.getFields())
+            size += MEMBER_SIZE + estimateSize(f.getAttributes());
+
+        for (MethodInfo m: cf.getMethods())
+            size += MEMBER_SIZE + estimateSize(m.getAttributes());
+
+        return size;
+    }
+
+    private static int estimateSize(List<AttributeInfo> attributes) {
+        int size = 0;
+        for (AttributeInfo a: attributes)
+            size += a.length();
+
+        return size;
+    }
+}
@@ -0,0 +1,308 @@
+/*
+ * Javassist, a Java-bytecode translator toolkit.
+ * Copyright (C) 1999- Shigeru Chiba. All Rights Reserved.
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with
+ * the License.  Alternatively, the contents of this file may be used under
+ * the terms of the GNU Lesser General Public License Version 2.1 or later,
+ * or the Apache License Version 2.0.
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ */
+
+package javassist;
+
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A cache of the class hierarchy seen from a <code>ClassPool</code>.
+ *
+ * <p>It records the super classes and the interfaces of the classes and
+ * the common super class of two classes, which are repeatedly
+ * computed when stack maps are rebuilt or bytecode is analyzed.
+ * The classes are recorded by their names.  The cache can be read by
+ * several threads at the same time.
+ *
+ * <p>The cache is discarded when <code>setSuperclass()</code>,
+ * <code>setInterfaces()</code>, <code>addInterface()</code>,
+ * or <code>setName()</code> is called on a <code>CtClass</code> object
+ * obtained from the class pool or its parents, or when a new class is
+ * made by <code>ClassPool#makeClass()</code> etc. of these class pools.
+ * Changes in the other class pools do not discard the cache.
+ * If the class file is directly modified through <code>ClassFile</code>,
+ * or if the class pool obtains classes from other class pools than
+ * its parents, {@link #clear()} must be called.
+ *
+ * @see ClassPool#getClassHierarchy()
+ * @since 3.25
+ */
+public final class ClassHierarchy {
+    // incremented when the hierarchy of a class in the pool is changed.
+    private final AtomicInteger changes;
+
+    private final ClassPool pool;
+    private volatile int myVersion;
+
+    // a class name -> the names of the class and its super classes.
+    private final ConcurrentHashMap<String,String[]> superclasses;
+
+    // a class name -> the names of all the interfaces it implements.
+    private final ConcurrentHashMap<String,String[]> interfaces;
+
+    // a pair of class names -> the name of the common super class.
+    private final ConcurrentHashMap<Pair,String> commonSuperclasses;
+
+    // a pair of class names -> whether the first is a subtype of the second.
+    private final ConcurrentHashMap<Pair,Boolean> subtypes;
+
+    private static final class Pair {
+        final String one, two;
+        final int hash;
+
+        Pair(String one, String two) {
+            this.one = one;
+            this.two = two;
+            hash = one.hashCode() * 31 + two.hashCode();
+        }
+
+        @Override
+        public int hashCode() { return hash; }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (obj instanceof Pair) {
+                Pair p = (Pair)obj;
+                return one.equals(p.one) && two.equals(p.two);
+            }
+
+            return false;
+        }
+    }
+
+    ClassHierarchy(ClassPool cp) {
+        pool = cp;
+        changes = new AtomicInteger();
+        myVersion = version();
+        superclasses = new ConcurrentHashMap<String,String[]>();
+        interfaces = new ConcurrentHashMap<String,String[]>();
+        commonSuperclasses = new ConcurrentHashMap<Pair,String>();
+        subtypes = new ConcurrentHashMap<Pair,Boolean>();
+    }
+
+    /**
+     * Is called when the hierarchy of a class in the given class pool
+     * may be changed.  It invalidates the caches of the class pool and
+     * its children.
+     */
+    static void changed(ClassPool cp) {
+        if (cp != null)
+            cp.getClassHierarchy().changes.incrementAndGet();
+    }
+
+    /* Returns the sum of the changes in the class pool and its parents.
+     */
+    private int version() {
+        int v = changes.get();
+        for (ClassPool cp = pool.parent; cp != null; cp = cp.parent)
+            v += cp.getClassHierarchy().changes.get();
+
+        return v;
+    }
+
+    /**
+     * Discards the cached data.
+     */
+    public void clear() {
+        superclasses.clear();
+        interfaces.clear();
+        commonSuperclasses.clear();
+        subtypes.clear();
+    }
+
+    /* Discards the cached data if the hierarchy has been changed
+     * and returns the current version.
+     */
+    private int check() {
+        int v = version();
+        if (v != myVersion)
+            synchronized (this) {
+                if (v != myVersion) {
+                    clear();
+                    myVersion = v;
+                }
+            }
+
+        return v;
+    }
+
+    /**
+     * Finds the most specific common super class of the given classes.
+     * If both are the same class, that class is returned.
+     * Interfaces are not considered.  The returned class is obtained
+     * from this class pool.
+     *
+     * @param one       a class (not an array or a primitive type).
+     * @param two       a class (not an array or a primitive type).
+     */
+    public CtClass commonSuperClass(CtClass one, CtClass two)
+        throws NotFoundException
+    {
+        if (one == two)
+            return one;
+
+        int v = check();
+        Pair key = new Pair(one.getName(), two.getName());
+        String name = commonSuperclasses.get(key);
+        if (name == null) {
+            String[] supers1 = getSuperclassNames(one);
+            String[] supers2 = getSuperclassNames(two);
+            int i = supers1.length - 1;
+            int j = supers2.length - 1;
+            while (i > 0 && j > 0 && supers1[i - 1].equals(supers2[j - 1])) {
+                i--;
+                j--;
+            }
+
+            name = supers1[i];
+            if (v == version())
+                commonSuperclasses.put(key, name);
+        }
+
+        if (name.equals(one.getName()))
+            return one;
+        else if (name.equals(two.getName()))
+            return two;
+        else
+            return pool.get(name);
+    }
+
+    /**
+     * Returns true if the first class is a subtype of the second one.
+     * It returns the same result as <code>clazz.subtypeOf(sup)</code>
+     * but the result is cached.
+     *
+     * @param clazz     a class.
+     * @param sup       a class or an interface.
+     * @see CtClass#subtypeOf(CtClass)
+     */
+    public boolean subtypeOf(CtClass clazz, CtClass sup)
+        throws NotFoundException
+    {
+        if (clazz == sup)
+            return true;
+        else if (clazz.isArray() || clazz.isPrimitive()
+                 || sup.isArray() || sup.isPrimitive())
+            return clazz.subtypeOf(sup);
+
+        int v = check();
+        String supName = sup.getName();
+        Pair key = new Pair(clazz.getName(), supName);
+        Boolean result = subtypes.get(key);
+        if (result == null) {
+            String[] names;
+            if (sup.isInterface())
+                names = getInterfaceNames(clazz);
+            else
+                names = getSuperclassNames(clazz);
+
+            result = Boolean.FALSE;
+            for (String name: names)
+                if (name.equals(supName)) {
+                    result = Boolean.TRUE;
+                    break;
+                }
+
+            if (v == version())
+                subtypes.put(key, result);
+        }
+
+        return result.booleanValue();
+    }
+
+    /**
+     * Returns the names of the given class and all its super classes.
+     * The first element is the name of the given class and the last
+     * one is <code>java.lang.Object</code>.
+     * The returned array must not be modified.
+     */
+    public String[] getSuperclassNames(CtClass clazz) throws NotFoundException {
+        int v = check();
+        String name = clazz.getName();
+        String[] names = superclasses.get(name);
+        if (names == null) {
+            CtClass sup = clazz.getSuperclass();
+            if (sup == null)
+                names = new String[] { name };
+            else {
+                String[] supers = getSuperclassNames(sup);
+                names = new String[supers.length + 1];
+                names[0] = name;
+                System.arraycopy(supers, 0, names, 1, supers.length);
+            }
+
+            if (v == version())
+                superclasses.put(name, names);
+        }
+
+        return names;
+    }
+
+    /**
+     * Returns the names of all the interfaces implemented by the given
+     * class.  They include the interfaces implemented by its super
+     * classes and the super interfaces.  If the given class is an interface,
+     * its name is also included.  The returned array must not be modified.
+     */
+    public String[] getInterfaceNames(CtClass clazz) throws NotFoundException {
+        int v = check();
+        String name = clazz.getName();
+        String[] names = interfaces.get(name);
+        if (names == null) {
+            Set<String> set = new LinkedHashSet<String>();
+            if (clazz.isInterface())
+                set.add(name);
+
+            for (CtClass intf: clazz.getInterfaces())
+                for (String s: getInterfaceNames(intf))
+                    set.add(s);
+
+            CtClass sup = clazz.getSuperclass();
+            if (sup != null)
+                for (String s: getInterfaceNames(sup))
+                    set.add(s);
+
+            names = set.toArray(new String[set.size()]);
+            if (v == version())
+                interfaces.put(name, names);
+        }
+
+        return names;
+    }
+
+    /**
+     * Returns all the interfaces implemented by the given class.
+     * The returned map is a new map from the names of the interfaces
+     * to the <code>CtClass</code> objects obtained from this class pool.
+     *
+     * @see #getInterfaceNames(CtClass)
+     */
+    public Map<String,CtClass> getAllInterfaces(CtClass clazz)
+        throws NotFoundException
+    {
+        String[] names = getInterfaceNames(clazz);
+        Map<String,CtClass> map = new HashMap<String,CtClass>();
+        for (String name: names)
+            map.put(name, name.equals(clazz.getName()) ? clazz : pool.get(name));
+
+        return map;
+    }
+}
@@ -17,19 +17,32 @@
 package javassist;
 
 import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.URL;
 import java.security.ProtectionDomain;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Enumeration;
 import java.util.Hashtable;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
 
 import javassist.bytecode.ClassFile;
 import javassist.bytecode.Descriptor;
+import javassist.bytecode.StringTable;
 import javassist.util.proxy.DefinePackageHelper;
 
 /**
@@ -65,6 +78,8 @@ import javassist.util.proxy.DefinePackageHelper;
  *
  * @see javassist.CtClass
  * @see javassist.ClassPath
+ * @see javassist.ConcurrentClassPool
+ * @see javassist.BoundedClassPool
  */
 @SuppressWarnings({"unchecked", "rawtypes"})
 public class ClassPool {
@@ -99,7 +114,7 @@ public class ClassPool {
     public static boolean doPruning = false;
 
     private int compressCount;
-    private static final int COMPRESS_THRESHOLD = 100;
+    static final int COMPRESS_THRESHOLD = 100;
 
     /* releaseUnmodifiedClassFile was introduced for avoiding a bug
        of JBoss AOP.  So the value should be true except for JBoss AOP.
@@ -126,6 +141,18 @@ public class ClassPool {
 
     private ArrayList importedPackages;
 
+    private boolean lazyParsing;
+
+    private boolean incrementalWrite;
+
+    private StringTable stringTable;
+
+    // the number of running transformAll().  compress() is not called
+    // while it is positive.
+    private AtomicInteger transformations;
+
+    private ClassHierarchy hierarchy;
+
     /**
      * Creates a root class pool.  No parent class pool is specified.
      */
@@ -167,6 +194,11 @@ public class ClassPool {
 
         this.cflow = null;
         this.compressCount = 0;
+        this.lazyParsing = false;
+        this.incrementalWrite = false;
+        this.stringTable = null;
+        this.transformations = new AtomicInteger();
+        this.hierarchy = new ClassHierarchy(this);
         clearImportedPackages();
     }
 
@@ -228,6 +260,30 @@ public class ClassPool {
         classes.put(classname, c);
     }
 
+    /**
+     * Is invoked when a new class is made by <code>makeClass()</code> etc.
+     */
+    void classMade(String classname) {
+        source.getNegativeCache().remove(classname);
+        ClassHierarchy.changed(this);
+    }
+
+    /**
+     * Is invoked when the class file of the given class is read
+     * from the class path or restored from the backup storage.
+     */
+    void classFileLoaded(CtClass clazz) {}
+
+    /**
+     * Is invoked when the given class is modified for the first time.
+     */
+    void classModified(CtClass clazz) {}
+
+    /**
+     * Is invoked when the given class is frozen.
+     */
+    void classFrozen(CtClass clazz) {}
+
     /**
      * Provide a hook so that subclasses can do their own
      * caching of classes.
@@ -246,11 +302,23 @@ public class ClassPool {
         return source.toString();
     }
 
+    /**
+     * Returns false if <code>compress()</code> must not be called
+     * since the classes are being modified by several threads.
+     */
+    boolean canCompress() {
+        return transformations.get() == 0;
+    }
+
     /**
      * This method is periodically invoked so that memory
-     * footprint will be minimized.
+     * footprint will be minimized.  It does nothing while
+     * <code>canCompress()</code> returns false.
      */
     void compress() {
+        if (!canCompress())
+            return;
+
         if (compressCount++ > COMPRESS_THRESHOLD) {
             compressCount = 0;
             Enumeration e = classes.elements();
@@ -702,6 +770,7 @@ public class ClassPool {
         if (ifNotFrozen)
             checkNotFrozen(classname);
 
+        classMade(classname);
         cacheCtClass(classname, clazz, true);
         return clazz;
     }
@@ -750,6 +819,7 @@ public class ClassPool {
         if (ifNotFrozen)
             checkNotFrozen(classname);
 
+        classMade(classname);
         cacheCtClass(classname, clazz, true);
         return clazz;
     }
@@ -781,6 +851,7 @@ public class ClassPool {
         if (found != null)
             return found;
         else {
+            classMade(classname);
             cacheCtClass(classname, clazz, true);
             return clazz;
         }
@@ -828,6 +899,7 @@ public class ClassPool {
     {
         checkNotFrozen(classname);
         CtClass clazz = new CtNewClass(classname, this, false, superclass);
+        classMade(classname);
         cacheCtClass(classname, clazz, true);
         return clazz;
     }
@@ -842,6 +914,7 @@ public class ClassPool {
     synchronized CtClass makeNestedClass(String classname) {
         checkNotFrozen(classname);
         CtClass clazz = new CtNewClass(classname, this, false, null);
+        classMade(classname);
         cacheCtClass(classname, clazz, true);
         return clazz;
     }
@@ -872,6 +945,7 @@ public class ClassPool {
     {
         checkNotFrozen(name);
         CtClass clazz = new CtNewClass(name, this, true, superclass);
+        classMade(name);
         cacheCtClass(name, clazz, true);
         return clazz;
     }
@@ -983,6 +1057,399 @@ public class ClassPool {
         source.removeClassPath(cp);
     }
 
+    /**
+     * Closes the jar files in the search path.
+     * A jar file added by <code>appendClassPath(String)</code> etc. is
+     * opened when a class file is read from it first, and it is kept open
+     * until it is removed by <code>removeClassPath()</code> or this method
+     * is called.  Since an open file cannot be deleted or replaced on
+     * some platforms such as Windows, call this method before modifying
+     * the jar files.
+     *
+     * <p>If other threads are still reading class files from a jar file,
+     * it is closed when they finish reading.  A closed jar file is
+     * reopened when a class file is read from it again.
+     *
+     * @since 3.25
+     */
+    public void closeJarFiles() {
+        source.closeJarFiles();
+    }
+
+    /**
+     * Turns the package index of the search path on/off.
+     *
+     * <p>If the index is on, <code>get()</code> and <code>find()</code>
+     * examine only the elements of the search path that may contain
+     * the package of the given class.  The index is lazily constructed
+     * from the entries of the jar files and the files in the directories
+     * in the search path.  The other kinds of <code>ClassPath</code>,
+     * such as <code>LoaderClassPath</code>, are always examined.
+     * The index is reconstructed when the search path is changed by
+     * <code>insertClassPath()</code>, <code>appendClassPath()</code>,
+     * or <code>removeClassPath()</code>.
+     *
+     * <p>Since the contents of a directory are recorded when the index
+     * is constructed, a class file written into the directory after that
+     * may not be found.  Call this method again to reconstruct the index.
+     *
+     * <p>The index is off by default.
+     *
+     * @param on        true if the package index is used.
+     * @since 3.25
+     */
+    public void setPackageIndexing(boolean on) {
+        source.setPackageIndexing(on);
+    }
+
+    /**
+     * Turns the lazy parsing of class files on/off.
+     *
+     * <p>If it is on, a <code>CtClass</code> object obtained by
+     * <code>get()</code> first decodes only the header of the class file
+     * when <code>getName()</code>, <code>getSuperclass()</code>,
+     * <code>getInterfaces()</code>, <code>getModifiers()</code>,
+     * <code>isInterface()</code>, or <code>subtypeOf()</code> is called.
+     * The whole class file, including the constant pool, the methods,
+     * and the attributes, is parsed when it is needed, for example, when
+     * <code>getDeclaredMethods()</code> is called.  The class file is
+     * read from the class path only once.  This is useful when the class
+     * hierarchy of a large number of classes is examined.
+     *
+     * <p>The lazy parsing is off by default.
+     *
+     * @param on        true if the class files are lazily parsed.
+     * @see javassist.bytecode.ClassFileHeader
+     * @since 3.25
+     */
+    public void setLazyParsing(boolean on) {
+        lazyParsing = on;
+    }
+
+    /**
+     * Returns true if the class files are lazily parsed.
+     *
+     * @see #setLazyParsing(boolean)
+     * @since 3.25
+     */
+    public boolean isLazyParsing() {
+        return lazyParsing;
+    }
+
+    /**
+     * Turns the incremental writing of class files on/off.
+     *
+     * <p>If it is on, a <code>CtClass</code> object keeps the original
+     * class file read from the class path.  When the class file is
+     * written by <code>toBytecode()</code> etc., the methods and fields
+     * that have not been changed and the original constant pool entries
+     * are copied from the original class file.  This saves time
+     * when only a few methods of a large class are modified
+     * but it needs more memory.
+     *
+     * <p>The incremental writing is off by default.
+     *
+     * @param on        true if the class files are incrementally written.
+     * @see javassist.bytecode.ClassFile#ClassFile(byte[])
+     * @since 3.25
+     */
+    public void setIncrementalWrite(boolean on) {
+        incrementalWrite = on;
+    }
+
+    /**
+     * Returns true if the class files are incrementally written.
+     *
+     * @see #setIncrementalWrite(boolean)
+     * @since 3.25
+     */
+    public boolean isIncrementalWrite() {
+        return incrementalWrite;
+    }
+
+    /**
+     * Sets the table of strings shared among the class files
+     * read by this class pool.  If it is not null, the equal class names,
+     * member names, and descriptors in those class files refer to the same
+     * <code>String</code> object.  This saves memory when a large number of
+     * classes are loaded.  The same table may be given to
+     * several class pools.
+     *
+     * <p>It is null by default.  It must be set before the class files
+     * are read.
+     *
+     * @param table     the shared table or null.
+     * @see javassist.bytecode.ClassFile#setStringTable(StringTable)
+     * @since 3.25
+     */
+    public void setStringTable(StringTable table) {
+        stringTable = table;
+    }
+
+    /**
+     * Returns the table of strings shared among the class files.
+     * It may be null.
+     *
+     * @see #setStringTable(StringTable)
+     * @since 3.25
+     */
+    public StringTable getStringTable() {
+        return stringTable;
+    }
+
+    /**
+     * Returns the cache of the class hierarchy.
+     * It is used for rebuilding stack maps etc.
+     *
+     * @since 3.25
+     */
+    public ClassHierarchy getClassHierarchy() {
+        return hierarchy;
+    }
+
+    /**
+     * Modifies the given classes in parallel and writes the resulting
+     * class files.
+     *
+     * <p>This method first calls <code>start()</code> on the translator.
+     * Then, for each class name, it calls <code>onLoad()</code> on the
+     * translator and then
+     *
+     * <pre>get(classname).toBytecode()</pre>
+     *
+     * <p>as <code>javassist.Loader</code> does.  These are run on a
+     * fork/join pool of the given number of threads.  While a class is
+     * modified, the rebuild of stack maps is deferred so that it is
+     * run only once in <code>toBytecode()</code>.
+     *
+     * <p>The class files are written in the order of the given names.
+     * If <code>output</code> ends with <code>.jar</code>, they are
+     * written into a new jar file.  Otherwise, they are written into
+     * the directory as <code>CtClass#writeFile(String)</code> does.
+     * If the modification of a class fails, the class file is not written
+     * and the exception is recorded in the returned map.
+     *
+     * <p>The translator must be thread-safe.  Since the classes are
+     * modified by different threads, <code>onLoad()</code> should modify
+     * only the class given as the parameter.  Other classes can be read
+     * by <code>get()</code> but they should not be modified.
+     *
+     * @param classnames        the names of the classes.
+     * @param translator        the translator modifying the classes.
+     * @param parallelism       the number of threads.
+     * @param output            the directory or the jar file.
+     * @return  the class names and the exceptions thrown while
+     *          the classes were modified.  It is empty if all the classes
+     *          are written.
+     * @throws NotFoundException        if <code>start()</code> throws it.
+     * @throws CannotCompileException   if <code>start()</code> throws it
+     *                                  or the current thread is interrupted.
+     * @throws IOException              if the class files cannot be written.
+     * @see Translator
+     * @since 3.25
+     */
+    public Map<String,Throwable> transformAll(Collection<String> classnames,
+                                              Translator translator,
+                                              int parallelism, File output)
+        throws NotFoundException, CannotCompileException, IOException
+    {
+        translator.start(this);
+        Map<String,Throwable> errors = new LinkedHashMap<String,Throwable>();
+        ForkJoinPool workers = new ForkJoinPool(parallelism);
+        transformations.incrementAndGet();
+        try {
+            List<Transformation> tasks = new ArrayList<Transformation>();
+            for (String name: classnames) {
+                Transformation t = new Transformation(name, translator);
+                t.future = workers.submit(t);
+                tasks.add(t);
+            }
+
+            JarOutputStream jar = null;
+            if (output.getName().endsWith(".jar"))
+                jar = new JarOutputStream(new BufferedOutputStream(
+                                                new FileOutputStream(output)));
+
+            try {
+                for (Transformation t: tasks) {
+                    t.future.get();
+                    if (t.error != null)
+                        errors.put(t.classname, t.error);
+                    else if (jar == null)
+                        writeToDirectory(output, t.classname, t.classfile);
+                    else {
+                        jar.putNextEntry(new JarEntry(t.classname.replace('.', '/')
+                                                      + ".class"));
+                        jar.write(t.classfile);
+                        jar.closeEntry();
+                    }
+
+                    t.classfile = null;
+                }
+            }
+            finally {
+                if (jar != null)
+                    jar.close();
+            }
+        }
+        catch (ExecutionException e) {
+            // Transformation.run() does not throw an exception.
+            throw new CannotCompileException(e.getCause());
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CannotCompileException(e);
+        }
+        finally {
+            workers.shutdownNow();
+            transformations.decrementAndGet();
+        }
+
+        return errors;
+    }
+
+    private class Transformation implements Runnable {
+        final String classname;
+        final Translator translator;
+        Future<?> future;
+        byte[] classfile;
+        Throwable error;
+
+        Transformation(String name, Translator t) {
+            classname = name;
+            translator = t;
+        }
+
+        public void run() {
+            try {
+                classfile = transform(classname, translator);
+            }
+            catch (Throwable t) {
+                error = t;
+            }
+        }
+    }
+
+    private byte[] transform(String classname, Translator translator)
+        throws NotFoundException, CannotCompileException, IOException
+    {
+        CtClass clazz = getOrNull(classname);
+        if (clazz != null)
+            clazz.deferStackMaps(true);
+
+        boolean done = false;
+        try {
+            translator.onLoad(this, classname);
+            clazz = get(classname);
+            byte[] classfile = clazz.toBytecode();
+            done = true;
+            return classfile;
+        }
+        finally {
+            if (clazz != null)
+                try {
+                    clazz.deferStackMaps(false);
+                }
+                catch (CannotCompileException e) {
+                    // do not hide the exception thrown by the translator.
+                    if (done)
+                        throw e;
+                }
+        }
+    }
+
+    private static void writeToDirectory(File dir, String classname,
+                                         byte[] classfile)
+        throws IOException
+    {
+        File file = new File(dir, classname.replace('.', File.separatorChar)
+                                  + ".class");
+        file.getParentFile().mkdirs();
+        OutputStream out = new BufferedOutputStream(new FileOutputStream(file));
+        try {
+            out.write(classfile);
+        }
+        finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Sets the maximum number of class names recorded in the cache
+     * of failed lookups.
+     *
+     * <p>If the size is positive, the names of the classes that
+     * were not found in the search path are recorded.  Then
+     * <code>get()</code>, <code>getOrNull()</code>, and <code>find()</code>
+     * do not search the class path again for a recorded name.
+     * When more names are recorded, the least recently used ones are
+     * discarded.  The cache is cleared when the search path is changed by
+     * <code>insertClassPath()</code>, <code>appendClassPath()</code>,
+     * or <code>removeClassPath()</code>.  A name is also removed
+     * when a class with that name is made by <code>makeClass()</code>
+     * etc.
+     *
+     * <p>The cache does not notice that a class file is added to
+     * a directory or a jar file in the search path.  Call
+     * {@link #clearNegativeCache()} if such a class file may be added.
+     *
+     * <p>The size is 0 by default; no names are recorded.
+     *
+     * @param size      the maximum number of recorded names.
+     *                  If it is 0, the cache is not used.
+     * @see #getNegativeCacheHits()
+     * @see #getNegativeCacheMisses()
+     * @since 3.25
+     */
+    public void setNegativeCacheSize(int size) {
+        source.getNegativeCache().setMaxSize(size);
+    }
+
+    /**
+     * Returns the maximum number of class names recorded in the cache
+     * of failed lookups.
+     *
+     * @see #setNegativeCacheSize(int)
+     * @since 3.25
+     */
+    public int getNegativeCacheSize() {
+        return source.getNegativeCache().getMaxSize();
+    }
+
+    /**
+     * Discards all the class names recorded in the cache of failed lookups.
+     *
+     * @see #setNegativeCacheSize(int)
+     * @since 3.25
+     */
+    public void clearNegativeCache() {
+        source.getNegativeCache().clear();
+    }
+
+    /**
+     * Returns how many times a search of the class path has been
+     * skipped since the class name was recorded in the cache
+     * of failed lookups.
+     *
+     * @see #setNegativeCacheSize(int)
+     * @since 3.25
+     */
+    public long getNegativeCacheHits() {
+        return source.getNegativeCache().hits();
+    }
+
+    /**
+     * Returns how many times the class path has been searched
+     * since the class name was not recorded in the cache of failed lookups.
+     * It is not counted while the cache is not used.
+     *
+     * @see #setNegativeCacheSize(int)
+     * @since 3.25
+     */
+    public long getNegativeCacheMisses() {
+        return source.getNegativeCache().misses();
+    }
+
     /**
      * Appends directories and jar files for search.
      *
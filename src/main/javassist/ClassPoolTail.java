@@ -19,6 +19,7 @@ package javassist;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
+import java.io.FilterInputStream;
 import java.io.FilenameFilter;
 import java.io.IOException;
 import java.io.InputStream;
@@ -27,7 +28,12 @@ import java.net.MalformedURLException;
 import java.net.URL;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.jar.JarEntry;
 import java.util.jar.JarFile;
 
@@ -41,7 +47,19 @@ final class ClassPathList {
     }
 }
 
-final class DirClassPath implements ClassPath {
+/**
+ * A class path that can list all the packages it contains.
+ * The list is used by the package index of <code>ClassPoolTail</code>.
+ */
+interface PackageListing {
+    /**
+     * Adds the names of the packages containing a class file to
+     * the given set.  The name of the default package is an empty string.
+     */
+    void listPackages(Set<String> packages);
+}
+
+final class DirClassPath implements ClassPath, PackageListing {
     String directory;
 
     DirClassPath(String dirName) {
@@ -77,13 +95,31 @@ final class DirClassPath implements ClassPath {
         return null;
     }
 
+    @Override
+    public void listPackages(Set<String> packages) {
+        listPackages(new File(directory), "", packages);
+    }
+
+    private static void listPackages(File dir, String pkg, Set<String> packages) {
+        File[] files = dir.listFiles();
+        if (files == null)
+            return;
+
+        for (File f: files)
+            if (f.isDirectory())
+                listPackages(f, pkg.length() == 0 ? f.getName()
+                                                  : pkg + '.' + f.getName(), packages);
+            else if (f.getName().endsWith(".class"))
+                packages.add(pkg);
+    }
+
     @Override
     public String toString() {
         return directory;
     }
 }
 
-final class JarDirClassPath implements ClassPath {
+final class JarDirClassPath implements ClassPath, PackageListing {
     JarClassPath[] jars;
 
     JarDirClassPath(String dirName) throws NotFoundException {
@@ -125,20 +161,42 @@ final class JarDirClassPath implements ClassPath {
 
         return null;    // not found
     }
+
+    @Override
+    public void listPackages(Set<String> packages) {
+        if (jars != null)
+            for (int i = 0; i < jars.length; i++)
+                jars[i].listPackages(packages);
+    }
+
+    void close() {
+        if (jars != null)
+            for (int i = 0; i < jars.length; i++)
+                jars[i].close();
+    }
 }
 
-final class JarClassPath implements ClassPath {
-    List<String> jarfileEntries;
+/* The jar file is opened when a class file is read first and it is
+ * kept open until close() is called.  close() is deferred until all
+ * the streams returned by openClassfile() are closed.
+ */
+final class JarClassPath implements ClassPath, PackageListing {
+    Set<String> jarfileEntries;
+    String jarfilePath;
     String jarfileURL;
+    private JarFile jarfile;    // opened on demand and kept open
+    private int readers;        // the number of the streams not closed yet
+    private boolean closing;    // true if close() has been deferred
 
     JarClassPath(String pathname) throws NotFoundException {
         JarFile jarfile = null;
         try {
             jarfile = new JarFile(pathname);
-            jarfileEntries = new ArrayList<String>();
+            jarfileEntries = new HashSet<String>();
             for (JarEntry je:Collections.list(jarfile.entries()))
                 if (je.getName().endsWith(".class"))
                     jarfileEntries.add(je.getName());
+            jarfilePath = pathname;
             jarfileURL = new File(pathname).getCanonicalFile()
                     .toURI().toURL().toString();
             return;
@@ -156,12 +214,10 @@ final class JarClassPath implements ClassPath {
     public InputStream openClassfile(String classname)
             throws NotFoundException
     {
-        URL jarURL = find(classname);
-        if (null != jarURL)
+        String jarname = classname.replace('.', '/') + ".class";
+        if (jarfileEntries.contains(jarname))
             try {
-                java.net.URLConnection con = jarURL.openConnection();
-                con.setUseCaches(false);
-                return con.getInputStream();
+                return openEntry(jarname);
             }
             catch (IOException e) {
                 throw new NotFoundException("broken jar file?: "
@@ -170,6 +226,94 @@ final class JarClassPath implements ClassPath {
         return null;
     }
 
+    /**
+     * Opens the jar file if it is not open and returns the stream
+     * of the given entry.  The jar file is kept open
+     * so that it is not reopened for every class file.
+     *
+     * @return null if the entry is not found.
+     */
+    private synchronized InputStream openEntry(String jarname)
+        throws IOException
+    {
+        if (jarfile == null)
+            jarfile = new JarFile(jarfilePath);
+
+        JarEntry entry = jarfile.getJarEntry(jarname);
+        if (entry == null)
+            return null;
+
+        InputStream in = new EntryStream(jarfile.getInputStream(entry));
+        readers++;
+        return in;
+    }
+
+    /**
+     * Closes the jar file.  If the streams returned by
+     * <code>openClassfile()</code> are still open, the jar file is closed
+     * when the last one of them is closed.  It will be reopened if
+     * a class file is read again.
+     */
+    synchronized void close() {
+        if (readers > 0)
+            closing = true;
+        else
+            closeJarFile();
+    }
+
+    private synchronized void released() {
+        if (--readers == 0 && closing)
+            closeJarFile();
+    }
+
+    private void closeJarFile() {
+        closing = false;
+        if (jarfile != null)
+            try {
+                jarfile.close();
+            }
+            catch (IOException e) {}
+            finally {
+                jarfile = null;
+            }
+    }
+
+    /* A stream of a jar entry.  The jar file is not closed
+     * until the stream is closed.
+     */
+    private final class EntryStream extends FilterInputStream {
+        private boolean closed = false;
+
+        EntryStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public void close() throws IOException {
+            synchronized (this) {
+                if (closed)
+                    return;
+
+                closed = true;
+            }
+
+            try {
+                super.close();
+            }
+            finally {
+                released();
+            }
+        }
+    }
+
+    @Override
+    public void listPackages(Set<String> packages) {
+        for (String name: jarfileEntries) {
+            int i = name.lastIndexOf('/');
+            packages.add(i < 0 ? "" : name.substring(0, i).replace('/', '.'));
+        }
+    }
+
     @Override
     public URL find(String classname) {
         String jarname = classname.replace('.', '/') + ".class";
@@ -189,9 +333,175 @@ final class JarClassPath implements ClassPath {
 
 final class ClassPoolTail {
     protected ClassPathList pathList;
+    private boolean packageIndexing;
+    private volatile PackageIndex packageIndex;
+    private NegativeCache negativeCache;
 
     public ClassPoolTail() {
         pathList = null;
+        packageIndexing = false;
+        packageIndex = null;
+        negativeCache = new NegativeCache();
+    }
+
+    /**
+     * A bounded set of the class names that were not found
+     * in the class path.  The least recently used names are
+     * removed first when the set is full.
+     */
+    static final class NegativeCache {
+        private LinkedHashMap<String,Boolean> names = null;
+        private int maxSize = 0;
+        private int generation = 0;
+        private long hits = 0;
+        private long misses = 0;
+
+        synchronized void setMaxSize(final int size) {
+            maxSize = size;
+            if (size <= 0)
+                names = null;
+            else
+                names = new LinkedHashMap<String,Boolean>(16, 0.75f, true) {
+                    /** default serialVersionUID */
+                    private static final long serialVersionUID = 1L;
+
+                    @Override
+                    protected boolean removeEldestEntry(Map.Entry<String,Boolean> e) {
+                        return size() > size;
+                    }
+                };
+        }
+
+        synchronized int getMaxSize() { return maxSize; }
+
+        /**
+         * Returns -1 if the class name is recorded.  Otherwise, it returns
+         * the generation number that must be passed to <code>add()</code>.
+         */
+        synchronized int lookup(String classname) {
+            if (names == null)
+                return generation;
+
+            if (names.get(classname) != null) {
+                hits++;
+                return -1;
+            }
+
+            misses++;
+            return generation;
+        }
+
+        /**
+         * Records the class name unless the class path has been
+         * changed since <code>lookup()</code> returned the generation.
+         */
+        synchronized void add(String classname, int gen) {
+            if (names != null && gen == generation)
+                names.put(classname, Boolean.TRUE);
+        }
+
+        synchronized void remove(String classname) {
+            if (names != null)
+                names.remove(classname);
+        }
+
+        synchronized void clear() {
+            generation = (generation + 1) & Integer.MAX_VALUE;
+            if (names != null)
+                names.clear();
+        }
+
+        synchronized long hits() { return hits; }
+
+        synchronized long misses() { return misses; }
+    }
+
+    NegativeCache getNegativeCache() { return negativeCache; }
+
+    /**
+     * A map from a package name to the class paths that
+     * may contain the package.  The class paths are in the search order.
+     */
+    static final class PackageIndex {
+        private final Map<String,ClassPath[]> packages;
+        private final ClassPath[] unlisted;     // paths not implementing PackageListing
+
+        PackageIndex(ClassPathList list) {
+            List<ClassPath> all = new ArrayList<ClassPath>();
+            List<Set<String>> listed = new ArrayList<Set<String>>();
+            Set<String> allPackages = new HashSet<String>();
+            for (; list != null; list = list.next) {
+                ClassPath path = list.path;
+                all.add(path);
+                if (path instanceof PackageListing) {
+                    Set<String> pkgs = new HashSet<String>();
+                    ((PackageListing)path).listPackages(pkgs);
+                    listed.add(pkgs);
+                    allPackages.addAll(pkgs);
+                }
+                else
+                    listed.add(null);
+            }
+
+            unlisted = select(all, listed, null);
+            packages = new HashMap<String,ClassPath[]>();
+            for (String pkg: allPackages)
+                packages.put(pkg, select(all, listed, pkg));
+        }
+
+        private static ClassPath[] select(List<ClassPath> all,
+                                          List<Set<String>> listed, String pkg) {
+            List<ClassPath> paths = new ArrayList<ClassPath>();
+            for (int i = 0; i < all.size(); i++) {
+                Set<String> pkgs = listed.get(i);
+                if (pkgs == null || (pkg != null && pkgs.contains(pkg)))
+                    paths.add(all.get(i));
+            }
+
+            return paths.toArray(new ClassPath[paths.size()]);
+        }
+
+        ClassPath[] lookup(String classname) {
+            int i = classname.lastIndexOf('.');
+            ClassPath[] paths = packages.get(i < 0 ? "" : classname.substring(0, i));
+            return paths == null ? unlisted : paths;
+        }
+    }
+
+    /**
+     * Turns the package index on/off.
+     */
+    public synchronized void setPackageIndexing(boolean on) {
+        packageIndexing = on;
+        packageIndex = null;
+    }
+
+    /**
+     * Is invoked when the class path is changed.
+     */
+    private void pathChanged() {
+        packageIndex = null;
+        negativeCache.clear();
+    }
+
+    /**
+     * Returns the class paths that may contain the given class
+     * or null if the package index is not used.
+     */
+    private ClassPath[] lookupPackageIndex(String classname) {
+        PackageIndex index = packageIndex;
+        if (index == null) {
+            synchronized (this) {
+                if (!packageIndexing)
+                    return null;
+
+                index = packageIndex;
+                if (index == null)
+                    packageIndex = index = new PackageIndex(pathList);
+            }
+        }
+
+        return index.lookup(classname);
     }
 
     @Override
@@ -211,6 +521,7 @@ final class ClassPoolTail {
 
     public synchronized ClassPath insertClassPath(ClassPath cp) {
         pathList = new ClassPathList(cp, pathList);
+        pathChanged();
         return cp;
     }
 
@@ -226,6 +537,7 @@ final class ClassPoolTail {
             list.next = tail;
         }
 
+        pathChanged();
         return cp;
     }
 
@@ -241,6 +553,21 @@ final class ClassPoolTail {
                     else
                         list = list.next;
             }
+
+        pathChanged();
+        close(cp);
+    }
+
+    public synchronized void closeJarFiles() {
+        for (ClassPathList list = pathList; list != null; list = list.next)
+            close(list.path);
+    }
+
+    private static void close(ClassPath cp) {
+        if (cp instanceof JarClassPath)
+            ((JarClassPath)cp).close();
+        else if (cp instanceof JarDirClassPath)
+            ((JarDirClassPath)cp).close();
     }
 
     public ClassPath appendSystemPath() {
@@ -328,6 +655,24 @@ final class ClassPoolTail {
     InputStream openClassfile(String classname)
         throws NotFoundException
     {
+        int gen = negativeCache.lookup(classname);
+        if (gen < 0)
+            return null;
+
+        InputStream ins = openClassfile0(classname);
+        if (ins == null)
+            negativeCache.add(classname, gen);
+
+        return ins;
+    }
+
+    private InputStream openClassfile0(String classname)
+        throws NotFoundException
+    {
+        ClassPath[] paths = lookupPackageIndex(classname);
+        if (paths != null)
+            return openClassfile(paths, classname);
+
         ClassPathList list = pathList;
         InputStream ins = null;
         NotFoundException error = null;
@@ -351,6 +696,27 @@ final class ClassPoolTail {
         return null;    // not found
     }
 
+    private static InputStream openClassfile(ClassPath[] paths, String classname)
+        throws NotFoundException
+    {
+        NotFoundException error = null;
+        for (ClassPath path: paths) {
+            try {
+                InputStream ins = path.openClassfile(classname);
+                if (ins != null)
+                    return ins;
+            }
+            catch (NotFoundException e) {
+                if (error == null)
+                    error = e;
+            }
+        }
+
+        if (error != null)
+            throw error;
+        return null;    // not found
+    }
+
     /**
      * Searches the class path to obtain the URL of the class file
      * specified by classname.  It is also used to determine whether
@@ -360,6 +726,29 @@ final class ClassPoolTail {
      * @return null if the class file could not be found.
      */
     public URL find(String classname) {
+        int gen = negativeCache.lookup(classname);
+        if (gen < 0)
+            return null;
+
+        URL url = find0(classname);
+        if (url == null)
+            negativeCache.add(classname, gen);
+
+        return url;
+    }
+
+    private URL find0(String classname) {
+        ClassPath[] paths = lookupPackageIndex(classname);
+        if (paths != null) {
+            for (ClassPath path: paths) {
+                URL url = path.find(classname);
+                if (url != null)
+                    return url;
+            }
+
+            return null;
+        }
+
         ClassPathList list = pathList;
         URL url = null;
         while (list != null) {
@@ -0,0 +1,148 @@
+/*
+ * Javassist, a Java-bytecode translator toolkit.
+ * Copyright (C) 1999- Shigeru Chiba. All Rights Reserved.
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with
+ * the License.  Alternatively, the contents of this file may be used under
+ * the terms of the GNU Lesser General Public License Version 2.1 or later,
+ * or the Apache License Version 2.0.
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ */
+
+package javassist;
+
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javassist.bytecode.Bytecode;
+import javassist.bytecode.CodeAttribute;
+import javassist.bytecode.ConstPool;
+import javassist.compiler.CompileError;
+import javassist.compiler.Javac;
+
+/**
+ * A statement or a block compiled once and inserted into many methods.
+ *
+ * <p>The source text is compiled for each shape of the methods, that is,
+ * the parameter types, the return type, and whether the method is static.
+ * The compiled bytecode is kept in its own constant pool.  When it is
+ * inserted into another method of the same shape, only the constant pool
+ * indexes in the bytecode are rewritten.
+ *
+ * <p>The source text can access the method parameters only through
+ * <code>$0</code>, <code>$1</code>, ..., <code>$args</code>, and the other
+ * special variables.  The names of the parameters are not available.
+ * By default, a template is compiled separately for every declaring class.
+ * If the source text does not refer to <code>this</code>, <code>$0</code>,
+ * <code>$class</code>, or the members of the declaring class by their
+ * simple names, the compiled bytecode can be shared among classes.
+ * Such a template is made by <code>CodeTemplate(src, true)</code>.
+ * Since class names in the source text are resolved by the class pool
+ * of the declaring class, the bytecode is never shared among the classes
+ * obtained from different class pools.  The template does not prevent
+ * the class pools from being garbage collected.
+ *
+ * <p>This class is thread-safe.
+ *
+ * <pre>
+ * CodeTemplate t = new CodeTemplate("{ Tracer.enter($sig, $args); }", true);
+ * for (CtMethod m: methods)
+ *     m.insertBefore(t);</pre>
+ *
+ * @see CtBehavior#insertBefore(CodeTemplate)
+ * @since 3.25
+ */
+public final class CodeTemplate {
+    private final String source;
+    private final boolean shared;
+    // a class pool -> the code compiled for the classes in the pool.
+    private final Map<ClassPool,ConcurrentHashMap<String,CodeAttribute>> compiled;
+
+    /**
+     * Constructs a template compiled separately for every declaring class.
+     *
+     * @param src       the source text.
+     *                  It must be a single statement or block.
+     */
+    public CodeTemplate(String src) {
+        this(src, false);
+    }
+
+    /**
+     * Constructs a template.
+     *
+     * @param src       the source text.
+     *                  It must be a single statement or block.
+     * @param shared    true if the compiled bytecode is shared among
+     *                  the methods of different classes in the same
+     *                  class pool.
+     */
+    public CodeTemplate(String src, boolean shared) {
+        this.source = src;
+        this.shared = shared;
+        this.compiled = new WeakHashMap<ClassPool,ConcurrentHashMap<String,CodeAttribute>>();
+    }
+
+    /**
+     * Returns the source text.
+     */
+    public String getSource() { return source; }
+
+    /**
+     * Returns the bytecode compiled for the given method.
+     * The returned code refers to the constant pool of the template.
+     */
+    CodeAttribute compile(CtBehavior method)
+        throws CompileError, NotFoundException
+    {
+        CtClass cc = method.getDeclaringClass();
+        boolean isStatic = Modifier.isStatic(method.getModifiers());
+        String desc = method.getMethodInfo2().getDescriptor();
+        String key = shared ? desc : cc.getName() + ':' + desc;
+        if (isStatic)
+            key = "static " + key;
+
+        ConcurrentHashMap<String,CodeAttribute> map = compiledIn(cc.getClassPool());
+        CodeAttribute ca = map.get(key);
+        if (ca == null) {
+            Bytecode b = new Bytecode(new ConstPool(cc.getName()), 0, 0);
+            Javac jv = new Javac(b, cc);
+            jv.recordParams(method.getParameterTypes(), isStatic);
+            jv.recordType(method.getReturnType0());
+            jv.compileStmnt(source);
+            ca = b.toCodeAttribute();
+            CodeAttribute ca2 = map.putIfAbsent(key, ca);
+            if (ca2 != null)
+                ca = ca2;
+        }
+
+        return ca;
+    }
+
+    private ConcurrentHashMap<String,CodeAttribute> compiledIn(ClassPool cp) {
+        synchronized (compiled) {
+            ConcurrentHashMap<String,CodeAttribute> map = compiled.get(cp);
+            if (map == null) {
+                map = new ConcurrentHashMap<String,CodeAttribute>();
+                compiled.put(cp, map);
+            }
+
+            return map;
+        }
+    }
+
+    /**
+     * Discards the compiled bytecode.
+     */
+    public void clear() {
+        synchronized (compiled) {
+            compiled.clear();
+        }
+    }
+}
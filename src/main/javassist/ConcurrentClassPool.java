@@ -0,0 +1,181 @@
+/*
+ * Javassist, a Java-bytecode translator toolkit.
+ * Copyright (C) 1999- Shigeru Chiba. All Rights Reserved.
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with
+ * the License.  Alternatively, the contents of this file may be used under
+ * the terms of the GNU Lesser General Public License Version 2.1 or later,
+ * or the Apache License Version 2.0.
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ */
+
+package javassist;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A <code>ClassPool</code> that can be shared by many threads.
+ *
+ * <p><code>get()</code> in <code>ClassPool</code> is synchronized on the
+ * pool, so that concurrent lookups are serialized even if the
+ * <code>CtClass</code> object has been already cached.  This class pool
+ * keeps the cached <code>CtClass</code> objects in a concurrent hash table
+ * and returns a cached object without locking.  If the object is not
+ * cached, only the threads looking up the same class name (precisely,
+ * the names mapped to the same lock stripe) wait for each other
+ * so that a class file is read only once.
+ *
+ * <p>The search order, <code>childFirstLookup</code>, and the delegation
+ * to the parent <code>ClassPool</code> are the same as those of
+ * <code>ClassPool</code>.
+ *
+ * <p>Note that a <code>CtClass</code> object itself is not thread-safe.
+ * The threads sharing this pool must not modify the same
+ * <code>CtClass</code> object at the same time.
+ *
+ * @see ClassPool
+ * @since 3.25
+ */
+public class ConcurrentClassPool extends ClassPool {
+    private static final int LOCK_STRIPES = 64;     // must be a power of 2
+
+    private final ConcurrentHashMap<String,CtClass> cache;
+    private final Object[] locks;
+    private final AtomicInteger compressCount;
+
+    /**
+     * Creates a root class pool.  No parent class pool is specified.
+     */
+    public ConcurrentClassPool() {
+        this(null);
+    }
+
+    /**
+     * Creates a root class pool.  If <code>useDefaultPath</code> is
+     * true, <code>appendSystemPath()</code> is called.
+     *
+     * @param useDefaultPath    true if the system search path is
+     *                          appended.
+     */
+    public ConcurrentClassPool(boolean useDefaultPath) {
+        this(null);
+        if (useDefaultPath)
+            appendSystemPath();
+    }
+
+    /**
+     * Creates a class pool.
+     *
+     * @param parent    the parent of this class pool.  If this is a root
+     *                  class pool, this parameter must be <code>null</code>.
+     */
+    @SuppressWarnings("unchecked")
+    public ConcurrentClassPool(ClassPool parent) {
+        super(parent);
+        cache = new ConcurrentHashMap<String,CtClass>(classes);
+        locks = new Object[LOCK_STRIPES];
+        for (int i = 0; i < LOCK_STRIPES; i++)
+            locks[i] = new Object();
+
+        compressCount = new AtomicInteger();
+    }
+
+    @Override
+    protected CtClass getCached(String classname) {
+        return cache.get(classname);
+    }
+
+    @Override
+    protected void cacheCtClass(String classname, CtClass c, boolean dynamic) {
+        cache.put(classname, c);
+    }
+
+    @Override
+    protected CtClass removeCached(String classname) {
+        return cache.remove(classname);
+    }
+
+    @Override
+    void compress() {
+        if (!canCompress())
+            return;
+
+        if (compressCount.incrementAndGet() > COMPRESS_THRESHOLD) {
+            compressCount.set(0);
+            for (CtClass c: cache.values())
+                c.compress();
+        }
+    }
+
+    /**
+     * Returns the lock object used while the class file
+     * for the given class name is read.
+     */
+    private Object lockFor(String classname) {
+        int h = classname.hashCode();
+        h ^= h >>> 16;
+        return locks[h & (LOCK_STRIPES - 1)];
+    }
+
+    /**
+     * @param useCache      false if the cached CtClass must be ignored.
+     * @return null     if the class could not be found.
+     */
+    @Override
+    protected CtClass get0(String classname, boolean useCache)
+        throws NotFoundException
+    {
+        CtClass clazz;
+        if (useCache) {
+            clazz = getCached(classname);
+            if (clazz != null)
+                return clazz;
+        }
+
+        synchronized (lockFor(classname)) {
+            if (useCache) {
+                // another thread may have read the class file.
+                clazz = getCached(classname);
+                if (clazz != null)
+                    return clazz;
+            }
+
+            return get1(classname, useCache);
+        }
+    }
+
+    private CtClass get1(String classname, boolean useCache)
+        throws NotFoundException
+    {
+        CtClass clazz;
+        if (!childFirstLookup && parent != null) {
+            clazz = parent.get0(classname, useCache);
+            if (clazz != null)
+                return clazz;
+        }
+
+        clazz = createCtClass(classname, useCache);
+        if (clazz != null) {
+            // clazz.getName() != classname if classname is "[L<name>;".
+            if (useCache) {
+                // makeClass() may have cached a class with the same name.
+                CtClass found = cache.putIfAbsent(clazz.getName(), clazz);
+                if (found != null)
+                    return found;
+            }
+
+            return clazz;
+        }
+
+        if (childFirstLookup && parent != null)
+            clazz = parent.get0(classname, useCache);
+
+        return clazz;
+    }
+}
@@ -810,6 +810,57 @@ public abstract class CtBehavior extends CtMember {
         }
     }
 
+    /**
+     * Inserts the bytecode of the given template at the beginning
+     * of the body.  The template is compiled only once for each
+     * shape of the methods; then the compiled bytecode is copied into
+     * this method.
+     *
+     * <p>The inserted bytecode is subject to the same constraints as
+     * <code>insertBefore(String)</code>.  The names of the parameters
+     * are not available in the template.
+     *
+     * @param template  the template representing the inserted bytecode.
+     * @see #insertBefore(String)
+     * @since 3.25
+     */
+    public void insertBefore(CodeTemplate template)
+        throws CannotCompileException
+    {
+        CtClass cc = declaringClass;
+        cc.checkModify();
+        CodeAttribute ca = methodInfo.getCodeAttribute();
+        if (ca == null)
+            throw new CannotCompileException("no method body");
+
+        try {
+            CodeAttribute code = template.compile(this);
+            code = (CodeAttribute)code.copy(methodInfo.getConstPool(), null);
+            if (code.getMaxStack() > ca.getMaxStack())
+                ca.setMaxStack(code.getMaxStack());
+
+            if (code.getMaxLocals() > ca.getMaxLocals())
+                ca.setMaxLocals(code.getMaxLocals());
+
+            CodeIterator iterator = ca.iterator();
+            int pos = iterator.insertEx(code.getCode());
+            iterator.insert(code.getExceptionTable(), pos);
+            methodInfo.rebuildStackMapIf6(cc.getClassPool(), cc.getClassFile2());
+        }
+        catch (NotFoundException e) {
+            throw new CannotCompileException(e);
+        }
+        catch (CompileError e) {
+            throw new CannotCompileException(e);
+        }
+        catch (BadBytecode e) {
+            throw new CannotCompileException(e);
+        }
+        catch (CodeAttribute.RuntimeCopyException e) {
+            throw new CannotCompileException(e);
+        }
+    }
+
     /**
      * Inserts bytecode at the end of the body.
      * The bytecode is inserted just before every return insturction.
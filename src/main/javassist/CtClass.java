@@ -24,9 +24,12 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.net.URL;
+import java.nio.ByteBuffer;
 import java.security.ProtectionDomain;
 import java.util.Collection;
 
+import javassist.bytecode.BadBytecode;
+import javassist.bytecode.ByteBufferOutputStream;
 import javassist.bytecode.ClassFile;
 import javassist.bytecode.Descriptor;
 import javassist.bytecode.Opcode;
@@ -1252,6 +1255,58 @@ public abstract class CtClass {
         checkModify();
     }
 
+    /**
+     * Starts or stops deferring the rebuild of stack maps.
+     *
+     * <p><code>insertBefore()</code>, <code>insertAfter()</code>,
+     * <code>instrument()</code>, etc. in <code>CtBehavior</code>
+     * rebuild the stack map of the modified method every time they are
+     * called.  While the rebuild is deferred, they do not rebuild it.
+     * The stack map of every modified method is rebuilt only once
+     * when <code>toBytecode()</code>, <code>toClass()</code>,
+     * <code>writeFile()</code>, or {@link #flushStackMaps()} is called
+     * or when the deferring is stopped.
+     * It makes several modifications to the same method faster.
+     *
+     * <p>Since the stack maps are not rebuilt, an error in the modified
+     * bytecode may not be reported until they are rebuilt.
+     * A method should not be copied into another class by
+     * <code>CtNewMethod.copy()</code> etc. until the stack maps are rebuilt.
+     *
+     * @param defer     true if the rebuild is deferred.  If false,
+     *                  the deferred stack maps are rebuilt.
+     * @see ClassFile#deferStackMaps(boolean)
+     * @since 3.25
+     */
+    public void deferStackMaps(boolean defer) throws CannotCompileException {
+        ClassFile cf = getClassFile2();
+        if (cf != null)
+            try {
+                cf.deferStackMaps(defer);
+            }
+            catch (BadBytecode e) {
+                throw new CannotCompileException(e);
+            }
+    }
+
+    /**
+     * Rebuilds the stack maps deferred by
+     * {@link #deferStackMaps(boolean)}.  The rebuild is still deferred
+     * after this method returns.
+     *
+     * @since 3.25
+     */
+    public void flushStackMaps() throws CannotCompileException {
+        ClassFile cf = getClassFile2();
+        if (cf != null)
+            try {
+                cf.flushStackMaps();
+            }
+            catch (BadBytecode e) {
+                throw new CannotCompileException(e);
+            }
+    }
+
     /**
      * Converts this class to a <code>java.lang.Class</code> object.
      * Once this method is called, further modifications are not
@@ -1414,6 +1469,9 @@ public abstract class CtClass {
      */
     public void detach() {
         ClassPool cp = getClassPool();
+        if (isModified())
+            ClassHierarchy.changed(cp);
+
         CtClass obj = cp.removeCached(getName());
         if (obj != this)
             cp.cacheCtClass(getName(), obj, false);
@@ -1517,6 +1575,25 @@ public abstract class CtClass {
         return barray.toByteArray();
     }
 
+    /**
+     * Converts this class to a class file and writes it into the given
+     * buffer.  The class file is directly written from the current position
+     * of the buffer and the position is advanced.  A pooled or direct
+     * buffer can be reused for many classes.
+     * Once this method is called, further modifications are not
+     * possible any more.
+     *
+     * @param buf       the buffer that a class file is written to.
+     * @throws java.nio.BufferOverflowException     if the buffer does
+     *                  not have enough space.
+     * @since 3.25
+     */
+    public void toBytecode(ByteBuffer buf)
+        throws IOException, CannotCompileException
+    {
+        toBytecode(new DataOutputStream(new ByteBufferOutputStream(buf)));
+    }
+
     /**
      * Writes a class file represented by this <code>CtClass</code>
      * object in the current directory.
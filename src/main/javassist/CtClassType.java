@@ -26,6 +26,7 @@ import java.io.InputStream;
 import java.lang.ref.Reference;
 import java.lang.ref.WeakReference;
 import java.net.URL;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Hashtable;
@@ -39,6 +40,7 @@ import javassist.bytecode.AttributeInfo;
 import javassist.bytecode.BadBytecode;
 import javassist.bytecode.Bytecode;
 import javassist.bytecode.ClassFile;
+import javassist.bytecode.ClassFileHeader;
 import javassist.bytecode.CodeAttribute;
 import javassist.bytecode.CodeIterator;
 import javassist.bytecode.ConstPool;
@@ -67,6 +69,7 @@ class CtClassType extends CtClass {
     boolean gcConstPool;    // if true, the constant pool entries will be garbage collected. 
     ClassFile classfile;
     byte[] rawClassfile;    // backup storage
+    private ClassFileHeader header;     // see getHeader()
 
     private Reference<CtMember.Cache> memberCache;
     private AccessorMaker accessors;
@@ -85,6 +88,7 @@ class CtClassType extends CtClass {
         wasChanged = wasFrozen = wasPruned = gcConstPool = false;
         classfile = null;
         rawClassfile = null;
+        header = null;
         memberCache = null;
         accessors = null;
         fieldInitializers = null;
@@ -96,6 +100,7 @@ class CtClassType extends CtClass {
     CtClassType(InputStream ins, ClassPool cp) throws IOException {
         this((String)null, cp);
         classfile = new ClassFile(new DataInputStream(ins));
+        classfile.setStringTable(cp.getStringTable());
         qualifiedName = classfile.getName();
     }
 
@@ -188,11 +193,18 @@ class CtClassType extends CtClass {
 
         if (rawClassfile != null) {
             try {
-                ClassFile cf = new ClassFile(new DataInputStream(
-                                             new ByteArrayInputStream(rawClassfile)));
+                ClassFile cf;
+                if (classPool.isIncrementalWrite())
+                    cf = new ClassFile(rawClassfile);
+                else
+                    cf = new ClassFile(new DataInputStream(
+                                       new ByteArrayInputStream(rawClassfile)));
                 rawClassfile = null;
                 getCount = GET_THRESHOLD;
-                return setClassFile(cf);
+                cf.setStringTable(classPool.getStringTable());
+                cf = setClassFile(cf);
+                classPool.classFileLoaded(this);
+                return cf;
             }
             catch (IOException e) {
                 throw new RuntimeException(e.toString(), e);
@@ -205,14 +217,72 @@ class CtClassType extends CtClass {
             if (fin == null)
                 throw new NotFoundException(getName());
 
-            fin = new BufferedInputStream(fin);
-            ClassFile cf = new ClassFile(new DataInputStream(fin));
+            ClassFile cf;
+            if (classPool.isIncrementalWrite())
+                cf = new ClassFile(ClassPoolTail.readStream(fin));
+            else {
+                fin = new BufferedInputStream(fin);
+                cf = new ClassFile(new DataInputStream(fin));
+            }
             if (!cf.getName().equals(qualifiedName))
                 throw new RuntimeException("cannot find " + qualifiedName + ": " 
                         + cf.getName() + " found in "
                         + qualifiedName.replace('.', '/') + ".class");
 
-            return setClassFile(cf);
+            cf.setStringTable(classPool.getStringTable());
+            cf = setClassFile(cf);
+            classPool.classFileLoaded(this);
+            return cf;
+        }
+        catch (NotFoundException e) {
+            throw new RuntimeException(e.toString(), e);
+        }
+        catch (IOException e) {
+            throw new RuntimeException(e.toString(), e);
+        }
+        finally {
+            if (fin != null)
+                try {
+                    fin.close();
+                }
+                catch (IOException e) {}
+        }
+    }
+
+    /**
+     * Returns the header of the class file if the lazy parsing is on
+     * and the class file has not been parsed yet.  Otherwise, null.
+     * The class file read for constructing the header is kept
+     * in rawClassfile so that getClassFile3() parses it later.
+     */
+    private synchronized ClassFileHeader getHeader() {
+        if (classfile != null || !classPool.isLazyParsing())
+            return null;
+
+        ClassFileHeader h = header;
+        if (h != null && rawClassfile == h.getBytes())
+            return h;
+
+        InputStream fin = null;
+        try {
+            byte[] bytes = rawClassfile;
+            if (bytes == null) {
+                fin = classPool.openClassfile(getName());
+                if (fin == null)
+                    throw new NotFoundException(getName());
+
+                bytes = ClassPoolTail.readStream(fin);
+            }
+
+            h = new ClassFileHeader(bytes);
+            if (!h.getName().equals(qualifiedName))
+                throw new RuntimeException("cannot find " + qualifiedName + ": "
+                        + h.getName() + " found in "
+                        + qualifiedName.replace('.', '/') + ".class");
+
+            rawClassfile = bytes;
+            header = h;
+            return h;
         }
         catch (NotFoundException e) {
             throw new RuntimeException(e.toString(), e);
@@ -309,7 +379,14 @@ class CtClassType extends CtClass {
     public boolean isFrozen() { return wasFrozen; }
 
     @Override
-    public void freeze() { wasFrozen = true; }
+    public void freeze() { setFrozen(); }
+
+    private void setFrozen() {
+        if (!wasFrozen) {
+            wasFrozen = true;
+            classPool.classFrozen(this);
+        }
+    }
 
     @Override
     void checkModify() throws RuntimeException {
@@ -321,7 +398,10 @@ class CtClassType extends CtClass {
             throw new RuntimeException(msg);
         }
 
-        wasChanged = true;
+        if (!wasChanged) {
+            wasChanged = true;
+            classPool.classModified(this);
+        }
     }
 
     @Override
@@ -337,12 +417,11 @@ class CtClassType extends CtClass {
         if (this == clazz || getName().equals(cname))
             return true;
 
-        ClassFile file = getClassFile2();
-        String supername = file.getSuperclass();
+        String supername = getSuperclassName();
         if (supername != null && supername.equals(cname))
             return true;
 
-        String[] ifs = file.getInterfaces();
+        String[] ifs = getInterfaceNames();
         int num = ifs.length;
         for (i = 0; i < num; ++i)
             if (ifs[i].equals(cname))
@@ -370,6 +449,7 @@ class CtClassType extends CtClass {
         super.setName(name);
         cf.setName(name);
         nameReplaced();
+        ClassHierarchy.changed(classPool);
         classPool.classNameChanged(oldname, this);
     }
 
@@ -404,6 +484,7 @@ class CtClassType extends CtClass {
         ClassFile cf = getClassFile2();
         cf.renameClass(classnames);
         nameReplaced();
+        ClassHierarchy.changed(classPool);
 
         if (newClassName != null) {
             super.setName(newClassName);
@@ -442,10 +523,24 @@ class CtClassType extends CtClass {
 
     @Override
     public int getModifiers() {
-        ClassFile cf = getClassFile2();
-        int acc = cf.getAccessFlags();
+        int acc, inner;
+        ClassFileHeader h = getHeader();
+        if (h == null) {
+            ClassFile cf = getClassFile2();
+            acc = cf.getAccessFlags();
+            inner = cf.getInnerAccessFlags();
+        }
+        else {
+            acc = h.getAccessFlags();
+            try {
+                inner = h.getInnerAccessFlags();
+            }
+            catch (IOException e) {
+                throw new RuntimeException(e.toString(), e);
+            }
+        }
+
         acc = AccessFlag.clear(acc, AccessFlag.SUPER);
-        int inner = cf.getInnerAccessFlags();
         if (inner != -1) {
             if ((inner & AccessFlag.STATIC) != 0)
                 acc |= AccessFlag.STATIC;
@@ -810,12 +905,28 @@ class CtClassType extends CtClass {
 
     @Override
     public CtClass getSuperclass() throws NotFoundException {
-        String supername = getClassFile2().getSuperclass();
+        String supername = getSuperclassName();
         if (supername == null)
             return null;
         return classPool.get(supername);
     }
 
+    private String getSuperclassName() {
+        ClassFileHeader h = getHeader();
+        if (h == null)
+            return getClassFile2().getSuperclass();
+        else
+            return h.getSuperclass();
+    }
+
+    private String[] getInterfaceNames() {
+        ClassFileHeader h = getHeader();
+        if (h == null)
+            return getClassFile2().getInterfaces();
+        else
+            return h.getInterfaces();
+    }
+
     @Override
     public void setSuperclass(CtClass clazz) throws CannotCompileException {
         checkModify();
@@ -823,11 +934,13 @@ class CtClassType extends CtClass {
             addInterface(clazz);
         else
             getClassFile2().setSuperclass(clazz.getName());
+
+        ClassHierarchy.changed(classPool);
     }
 
     @Override
     public CtClass[] getInterfaces() throws NotFoundException {
-        String[] ifs = getClassFile2().getInterfaces();
+        String[] ifs = getInterfaceNames();
         int num = ifs.length;
         CtClass[] ifc = new CtClass[num];
         for (int i = 0; i < num; ++i)
@@ -850,13 +963,16 @@ class CtClassType extends CtClass {
         }
 
         getClassFile2().setInterfaces(ifs);
+        ClassHierarchy.changed(classPool);
     }
 
     @Override
     public void addInterface(CtClass anInterface) {
         checkModify();
-        if (anInterface != null)
+        if (anInterface != null) {
             getClassFile2().addInterface(anInterface.getName());
+            ClassHierarchy.changed(classPool);
+        }
     }
 
     @Override
@@ -1083,11 +1199,7 @@ class CtClassType extends CtClass {
     }
 
     private CtField getDeclaredField2(String name, String desc) {
-        CtMember.Cache memCache = getMembers();
-        CtMember field = memCache.fieldHead();
-        CtMember tail = memCache.lastField();
-        while (field != tail) {
-            field = field.next();
+        for (CtMember field:getMembers().getFields(name)) {
             if (field.getName().equals(name)
                 && (desc == null || desc.equals(field.getSignature())))
                 return (CtField)field;
@@ -1266,15 +1378,10 @@ class CtClassType extends CtClass {
                                        String name, String desc) {
         if (cc instanceof CtClassType) {
             CtMember.Cache memCache = ((CtClassType)cc).getMembers();
-            CtMember mth = memCache.methodHead();
-            CtMember mthTail = memCache.lastMethod();
-
-            while (mth != mthTail) {
-                mth = mth.next();
+            for (CtMember mth:memCache.getMethods(name))
                 if (mth.getName().equals(name)
                         && ((CtMethod)mth).getMethodInfo2().getDescriptor().equals(desc))
                     return (CtMethod)mth;
-            }
         }
 
         try {
@@ -1315,12 +1422,8 @@ class CtClassType extends CtClass {
 
     @Override
     public CtMethod[] getDeclaredMethods(String name) throws NotFoundException {
-        CtMember.Cache memCache = getMembers();
-        CtMember mth = memCache.methodHead();
-        CtMember mthTail = memCache.lastMethod();
         List<CtMember> methods = new ArrayList<CtMember>();
-        while (mth != mthTail) {
-            mth = mth.next();
+        for (CtMember mth:getMembers().getMethods(name)) {
             if (mth.getName().equals(name))
                 methods.add(mth);
         }
@@ -1330,11 +1433,7 @@ class CtClassType extends CtClass {
 
     @Override
     public CtMethod getDeclaredMethod(String name) throws NotFoundException {
-        CtMember.Cache memCache = getMembers();
-        CtMember mth = memCache.methodHead();
-        CtMember mthTail = memCache.lastMethod();
-        while (mth != mthTail) {
-            mth = mth.next();
+        for (CtMember mth:getMembers().getMethods(name)) {
             if (mth.getName().equals(name))
                 return (CtMethod)mth;
         }
@@ -1348,12 +1447,7 @@ class CtClassType extends CtClass {
         throws NotFoundException
     {
         String desc = Descriptor.ofParameters(params);
-        CtMember.Cache memCache = getMembers();
-        CtMember mth = memCache.methodHead();
-        CtMember mthTail = memCache.lastMethod();
-
-        while (mth != mthTail) {
-            mth = mth.next();
+        for (CtMember mth:getMembers().getMethods(name)) {
             if (mth.getName().equals(name)
                     && ((CtMethod)mth).getMethodInfo2().getDescriptor().startsWith(desc))
                 return (CtMethod)mth;
@@ -1551,7 +1645,8 @@ class CtClassType extends CtClass {
         if (wasPruned)
             return;
 
-        wasPruned = wasFrozen = true;
+        wasPruned = true;
+        setFrozen();
         getClassFile2().prune();
     }
 
@@ -1559,31 +1654,61 @@ class CtClassType extends CtClass {
     public void rebuildClassFile() { gcConstPool = true; }
 
     @Override
-    public void toBytecode(DataOutputStream out)
+    public byte[] toBytecode() throws IOException, CannotCompileException {
+        if (!isModified())
+            return super.toBytecode();
+
+        try {
+            ClassFile cf = prepareBytecode();
+            byte[] bytes = cf.toBytes();
+            finishBytecode(cf);
+            return bytes;
+        }
+        catch (NotFoundException e) {
+            throw new CannotCompileException(e);
+        }
+        catch (BadBytecode e) {
+            throw new CannotCompileException(e);
+        }
+        catch (IOException e) {
+            throw new CannotCompileException(e);
+        }
+    }
+
+    @Override
+    public void toBytecode(ByteBuffer buf)
         throws CannotCompileException, IOException
     {
-        try {
-            if (isModified()) {
-                checkPruned("toBytecode");
-                ClassFile cf = getClassFile2();
-                if (gcConstPool) {
-                    cf.compact();
-                    gcConstPool = false;
-                }
+        if (!isModified()) {
+            super.toBytecode(buf);
+            return;
+        }
 
-                modifyClassConstructor(cf);
-                modifyConstructors(cf);
-                if (debugDump != null)
-                    dumpClassFile(cf);
+        try {
+            ClassFile cf = prepareBytecode();
+            cf.write(buf);
+            finishBytecode(cf);
+        }
+        catch (NotFoundException e) {
+            throw new CannotCompileException(e);
+        }
+        catch (BadBytecode e) {
+            throw new CannotCompileException(e);
+        }
+        catch (IOException e) {
+            throw new CannotCompileException(e);
+        }
+    }
 
+    @Override
+    public void toBytecode(DataOutputStream out)
+        throws CannotCompileException, IOException
+    {
+        try {
+            ClassFile cf = prepareBytecode();
+            if (cf != null) {
                 cf.write(out);
                 out.flush();
-                fieldInitializers = null;
-                if (doPruning) {
-                    // to save memory
-                    cf.prune();
-                    wasPruned = true;
-                }
             }
             else {
                 classPool.writeClassfile(getName(), out);
@@ -1591,17 +1716,60 @@ class CtClassType extends CtClass {
                 // classfile = null;
             }
 
-            getCount = 0;
-            wasFrozen = true;
+            finishBytecode(cf);
         }
         catch (NotFoundException e) {
             throw new CannotCompileException(e);
         }
+        catch (BadBytecode e) {
+            throw new CannotCompileException(e);
+        }
         catch (IOException e) {
             throw new CannotCompileException(e);
         }
     }
 
+    /* Makes the class file ready to be written.
+     * It returns null if this class is not modified.
+     * This is overridden by CtNewClass.
+     */
+    ClassFile prepareBytecode()
+        throws CannotCompileException, NotFoundException, BadBytecode,
+               IOException
+    {
+        if (!isModified())
+            return null;
+
+        checkPruned("toBytecode");
+        ClassFile cf = getClassFile2();
+        if (gcConstPool) {
+            cf.compact();
+            gcConstPool = false;
+        }
+
+        modifyClassConstructor(cf);
+        modifyConstructors(cf);
+        cf.flushStackMaps();
+        if (debugDump != null)
+            dumpClassFile(cf);
+
+        return cf;
+    }
+
+    private void finishBytecode(ClassFile cf) {
+        if (cf != null) {
+            fieldInitializers = null;
+            if (doPruning) {
+                // to save memory
+                cf.prune();
+                wasPruned = true;
+            }
+        }
+
+        getCount = 0;
+        setFrozen();
+    }
+
     private void dumpClassFile(ClassFile cf) throws IOException
     {
         DataOutputStream dump = makeFileOutput(debugDump);
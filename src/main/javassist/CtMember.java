@@ -16,6 +16,12 @@
 
 package javassist;
 
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import javassist.bytecode.ConstPool;
+
 /**
  * An instance of <code>CtMember</code> represents a field, a constructor,
  * or a method.
@@ -62,6 +68,14 @@ public abstract class CtMember {
         private CtMember consTail;     // constructor tail
         private CtMember fieldTail;
 
+        // indexes from a name to the methods or the fields.  null if not built.
+        private Map<String,CtMember[]> methodIndex, fieldIndex;
+
+        // the constant pool of the indexed members and its rename count
+        // when the indexes were built.  null if no member is indexed.
+        private ConstPool indexedPool;
+        private int renameCount;
+
         Cache(CtClassType decl) {
             super(decl);
             methodTail = this;
@@ -77,7 +91,76 @@ public abstract class CtMember {
         CtMember fieldHead() { return consTail; }
         CtMember lastField() { return fieldTail; }
 
+        /* Returns the methods that had the given name when the index
+         * was built.  The caller must check their current names.
+         */
+        synchronized CtMember[] getMethods(String name) {
+            checkRenamed();
+            if (methodIndex == null)
+                methodIndex = makeIndex(methodHead(), lastMethod());
+
+            CtMember[] found = methodIndex.get(name);
+            return found == null ? EMPTY : found;
+        }
+
+        /* Returns the fields that had the given name when the index
+         * was built.  The caller must check their current names.
+         */
+        synchronized CtMember[] getFields(String name) {
+            checkRenamed();
+            if (fieldIndex == null)
+                fieldIndex = makeIndex(fieldHead(), lastField());
+
+            CtMember[] found = fieldIndex.get(name);
+            return found == null ? EMPTY : found;
+        }
+
+        private static final CtMember[] EMPTY = new CtMember[0];
+
+        /* Discards the indexes if a member has been renamed by
+         * MethodInfo.setName() or FieldInfo.setName().
+         */
+        private void checkRenamed() {
+            if (indexedPool != null && indexedPool.getRenameCount() != renameCount)
+                flushIndex();
+        }
+
+        private Map<String,CtMember[]> makeIndex(CtMember head, CtMember tail) {
+            Map<String,CtMember[]> index = new HashMap<String,CtMember[]>();
+            while (head != tail) {
+                head = head.next();
+                if (indexedPool == null) {
+                    if (head instanceof CtField)
+                        indexedPool = ((CtField)head).getFieldInfo2().getConstPool();
+                    else
+                        indexedPool = ((CtBehavior)head).getMethodInfo2().getConstPool();
+
+                    renameCount = indexedPool.getRenameCount();
+                }
+
+                String name = head.getName();
+                CtMember[] found = index.get(name);
+                if (found == null)
+                    found = new CtMember[] { head };
+                else {
+                    found = Arrays.copyOf(found, found.length + 1);
+                    found[found.length - 1] = head;
+                }
+
+                index.put(name, found);
+            }
+
+            return index;
+        }
+
+        synchronized void flushIndex() {
+            methodIndex = null;
+            fieldIndex = null;
+            indexedPool = null;
+        }
+
         void addMethod(CtMember method) {
+            flushIndex();
             method.next = methodTail.next;
             methodTail.next = method;
             if (methodTail == consTail) {
@@ -92,6 +175,7 @@ public abstract class CtMember {
         /* Both constructors and a class initializer.
          */
         void addConstructor(CtMember cons) {
+            flushIndex();
             cons.next = consTail.next;
             consTail.next = cons;
             if (consTail == fieldTail)
@@ -101,6 +185,7 @@ public abstract class CtMember {
         }
 
         void addField(CtMember field) {
+            flushIndex();
             field.next = this; // or fieldTail.next
             fieldTail.next = field;
             fieldTail = field;
@@ -117,6 +202,7 @@ public abstract class CtMember {
         }
 
         void remove(CtMember mem) {
+            flushIndex();
             CtMember m = this;
             CtMember node;
             while ((node = m.next) != this) {
@@ -16,9 +16,9 @@
 
 package javassist;
 
-import java.io.DataOutputStream;
 import java.io.IOException;
 
+import javassist.bytecode.BadBytecode;
 import javassist.bytecode.ClassFile;
 
 class CtNewClass extends CtClassType {
@@ -37,6 +37,7 @@ class CtNewClass extends CtClassType {
             superName = superclass.getName();
 
         classfile = new ClassFile(isInterface, name, superName);
+        classfile.setStringTable(cp.getStringTable());
         if (isInterface && superclass != null)
             classfile.setInterfaces(new String[] { superclass.getName() });
 
@@ -61,19 +62,16 @@ class CtNewClass extends CtClassType {
     }
 
     @Override
-    public void toBytecode(DataOutputStream out)
-        throws CannotCompileException, IOException
+    ClassFile prepareBytecode()
+        throws CannotCompileException, NotFoundException, BadBytecode,
+               IOException
     {
-        if (!hasConstructor)
-            try {
-                inheritAllConstructors();
-                hasConstructor = true;
-            }
-            catch (NotFoundException e) {
-                throw new CannotCompileException(e);
-            }
+        if (!hasConstructor) {
+            inheritAllConstructors();
+            hasConstructor = true;
+        }
 
-        super.toBytecode(out);
+        return super.prepareBytecode();
     }
 
     /**
@@ -0,0 +1,56 @@
+/*
+ * Javassist, a Java-bytecode translator toolkit.
+ * Copyright (C) 1999- Shigeru Chiba. All Rights Reserved.
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with
+ * the License.  Alternatively, the contents of this file may be used under
+ * the terms of the GNU Lesser General Public License Version 2.1 or later,
+ * or the Apache License Version 2.0.
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ */
+
+package javassist.bytecode;
+
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * An output stream writing into a <code>ByteBuffer</code>.
+ * The bytes are directly put into the buffer without copying.
+ * If the buffer does not have enough space,
+ * a <code>java.nio.BufferOverflowException</code> is thrown.
+ *
+ * @see ClassFile#write(ByteBuffer)
+ * @since 3.25
+ */
+public final class ByteBufferOutputStream extends OutputStream {
+    private final ByteBuffer buf;
+
+    /**
+     * Constructs a stream.  The bytes are written from the current
+     * position of the buffer.
+     */
+    public ByteBufferOutputStream(ByteBuffer buf) {
+        this.buf = buf;
+    }
+
+    /**
+     * Returns the buffer.
+     */
+    public ByteBuffer getBuffer() { return buf; }
+
+    @Override
+    public void write(int b) {
+        buf.put((byte)b);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) {
+        buf.put(b, off, len);
+    }
+}
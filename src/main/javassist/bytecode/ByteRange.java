@@ -0,0 +1,42 @@
+/*
+ * Javassist, a Java-bytecode translator toolkit.
+ * Copyright (C) 1999- Shigeru Chiba. All Rights Reserved.
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with
+ * the License.  Alternatively, the contents of this file may be used under
+ * the terms of the GNU Lesser General Public License Version 2.1 or later,
+ * or the Apache License Version 2.0.
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ */
+
+package javassist.bytecode;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/* A range of the original class file from which a structure was read.
+ * It is written as is while the structure has not been changed.
+ * See ClassFile(byte[]).
+ */
+final class ByteRange {
+    private final byte[] bytes;
+    private final int offset;
+    private final int length;
+
+    ByteRange(byte[] bytes, int offset, int length) {
+        this.bytes = bytes;
+        this.offset = offset;
+        this.length = length;
+    }
+
+    int length() { return length; }
+
+    void write(DataOutputStream out) throws IOException {
+        out.write(bytes, offset, length);
+    }
+}
@@ -16,16 +16,27 @@
 
 package javassist.bytecode;
 
+import java.io.ByteArrayInputStream;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.ListIterator;
 import java.util.Map;
+import java.util.Set;
 
 import javassist.CannotCompileException;
+import javassist.ClassPool;
 
 /**
  * <code>ClassFile</code> represents a Java <code>.class</code> file, which
@@ -70,6 +81,12 @@ public final class ClassFile {
     String[] cachedInterfaces;
     String cachedSuperclass;
 
+    // an index from a method name to the methods.  null if not built yet.
+    private volatile MethodIndex methodIndex;
+
+    // the methods whose stack maps must be rebuilt.  null if not deferred.
+    private Map<MethodInfo,ClassPool> deferredStackMaps;
+
     /**
      * The major version number of class files
      * for JDK 1.1.
@@ -182,7 +199,41 @@ public final class ClassFile {
      * Constructs a class file from a byte stream.
      */
     public ClassFile(DataInputStream in) throws IOException {
-        read(in);
+        read(in, null);
+    }
+
+    /**
+     * Constructs a class file from a byte array.
+     *
+     * <p>Unlike the constructor taking a byte stream, this constructor
+     * records which part of the given array each field and method was
+     * read from.  When the class file is written, the fields and methods
+     * that have not been changed and the original entries of the
+     * constant pool are copied from the array instead of being
+     * serialized again.  New constant pool entries are appended.
+     * The cost of writing is thereby proportional to the changes.
+     * The array must not be modified later since this object refers to it.
+     *
+     * @param classfile     the class file.
+     * @see MethodInfo#isChanged()
+     * @see FieldInfo#isChanged()
+     * @since 3.25
+     */
+    public ClassFile(byte[] classfile) throws IOException {
+        Input src = new Input(classfile);
+        read(new DataInputStream(src), src);
+    }
+
+    /* An input stream that tells the current position.
+     */
+    private static final class Input extends ByteArrayInputStream {
+        Input(byte[] bytes) { super(bytes); }
+
+        int position() { return pos; }
+
+        ByteRange range(int start) {
+            return new ByteRange(buf, start, pos - start);
+        }
     }
 
     /**
@@ -208,7 +259,7 @@ public final class ClassFile {
         initSuperclass(superclass);
         interfaces = null;
         fields = new ArrayList<FieldInfo>();
-        methods = new ArrayList<MethodInfo>();
+        methods = new MemberList<MethodInfo>();
         thisclassname = classname;
 
         attributes = new ArrayList<AttributeInfo>();
@@ -310,6 +361,23 @@ public final class ClassFile {
         return constPool;
     }
 
+    /**
+     * Makes the constant pool table share strings with other
+     * class files.  The class names returned by <code>getName()</code>
+     * etc. are also taken from the given table.
+     *
+     * @param table     the shared table or null.
+     * @see ConstPool#setStringTable(StringTable)
+     * @since 3.25
+     */
+    public void setStringTable(StringTable table) {
+        constPool.setStringTable(table);
+        if (table != null) {
+            thisclassname = constPool.getClassInfo(thisClass);
+            cachedSuperclass = null;
+        }
+    }
+
     /**
      * Returns true if this is an interface.
      */
@@ -506,19 +574,20 @@ public final class ClassFile {
      * <code>CtClass.getRefClasses()</code> calls this method. 
      */
     public final void getRefClasses(Map<String,String> classnames) {
-        constPool.renameClass(classnames);
+        constPool.getRefClasses(classnames);
 
+        // getAttributes() would regard the members as changed.
         AttributeInfo.getRefClasses(attributes, classnames);
         for (MethodInfo minfo:methods) {
             String desc = minfo.getDescriptor();
             Descriptor.rename(desc, classnames);
-            AttributeInfo.getRefClasses(minfo.getAttributes(), classnames);
+            AttributeInfo.getRefClasses(minfo.attribute, classnames);
         }
 
         for (FieldInfo finfo:fields) {
             String desc = finfo.getDescriptor();
             Descriptor.rename(desc, classnames);
-            AttributeInfo.getRefClasses(finfo.getAttributes(), classnames);
+            AttributeInfo.getRefClasses(finfo.attribute, classnames);
         }
     }
 
@@ -635,10 +704,88 @@ public final class ClassFile {
      * @return null if no such method is found.
      */
     public MethodInfo getMethod(String name) {
-        for (MethodInfo minfo:methods)
-            if (minfo.getName().equals(name))
-                return minfo;
-        return null;
+        List<MethodInfo> list = getMethods(name);
+        return list.isEmpty() ? null : list.get(0);
+    }
+
+    /**
+     * Returns the methods with the specified name in the order they
+     * are declared.  The methods are looked up in an index from
+     * method names, which is rebuilt when the list returned by
+     * <code>getMethods()</code> is modified or a method is renamed
+     * by <code>MethodInfo.setName()</code>.
+     *
+     * @return an unmodifiable list of <code>MethodInfo</code>.
+     * @since 3.25
+     */
+    public List<MethodInfo> getMethods(String name) {
+        if (!(methods instanceof MemberList)) {
+            List<MethodInfo> list = new ArrayList<MethodInfo>();
+            for (MethodInfo minfo:methods)
+                if (minfo.getName().equals(name))
+                    list.add(minfo);
+
+            return list;
+        }
+
+        MemberList<MethodInfo> mlist = (MemberList<MethodInfo>)methods;
+        int renamed = constPool.getRenameCount();
+        MethodIndex index = methodIndex;
+        if (index == null || index.modCount != mlist.modCount()
+            || index.renamed != renamed)
+            methodIndex = index = new MethodIndex(mlist, renamed);
+
+        MethodInfo[] found = index.methods.get(name);
+        if (found == null)
+            return Collections.emptyList();
+        else
+            return Collections.unmodifiableList(Arrays.asList(found));
+    }
+
+    /* A list that makes the modification count available.
+     */
+    static final class MemberList<T> extends ArrayList<T> {
+        private static final long serialVersionUID = 1L;
+
+        /* the number of calls to set().  ArrayList.set() does not
+         * increment modCount, and incrementing it here would make
+         * ListIterator.set() followed by next() throw
+         * ConcurrentModificationException.
+         */
+        private int setCount = 0;
+
+        int modCount() { return modCount + setCount; }
+
+        @Override
+        public T set(int index, T element) {
+            setCount++;
+            return super.set(index, element);
+        }
+    }
+
+    /* An immutable index of methods.
+     */
+    static final class MethodIndex {
+        final int modCount, renamed;
+        final Map<String,MethodInfo[]> methods;
+
+        MethodIndex(MemberList<MethodInfo> list, int renamed) {
+            this.modCount = list.modCount();
+            this.renamed = renamed;
+            methods = new HashMap<String,MethodInfo[]>();
+            for (MethodInfo minfo:list) {
+                String name = minfo.getName();
+                MethodInfo[] found = methods.get(name);
+                if (found == null)
+                    found = new MethodInfo[] { minfo };
+                else {
+                    found = Arrays.copyOf(found, found.length + 1);
+                    found[found.length - 1] = minfo;
+                }
+
+                methods.put(name, found);
+            }
+        }
     }
 
     /**
@@ -783,7 +930,7 @@ public final class ClassFile {
         return sf.getFileName();
     }
 
-    private void read(DataInputStream in) throws IOException {
+    private void read(DataInputStream in, Input src) throws IOException {
         int i, n;
         int magic = in.readInt();
         if (magic != 0xCAFEBABE)
@@ -791,7 +938,11 @@ public final class ClassFile {
 
         minor = in.readUnsignedShort();
         major = in.readUnsignedShort();
+        int start = 10;
         constPool = new ConstPool(in);
+        if (src != null)
+            constPool.setOriginal(src.range(start));
+
         accessFlags = in.readUnsignedShort();
         thisClass = in.readUnsignedShort();
         constPool.setThisClassInfo(thisClass);
@@ -808,13 +959,29 @@ public final class ClassFile {
         ConstPool cp = constPool;
         n = in.readUnsignedShort();
         fields = new ArrayList<FieldInfo>();
-        for (i = 0; i < n; ++i)
-            addField2(new FieldInfo(cp, in));
+        for (i = 0; i < n; ++i) {
+            if (src != null)
+                start = src.position();
+
+            FieldInfo finfo = new FieldInfo(cp, in);
+            if (src != null)
+                finfo.setOriginal(src.range(start));
+
+            addField2(finfo);
+        }
 
         n = in.readUnsignedShort();
-        methods = new ArrayList<MethodInfo>();
-        for (i = 0; i < n; ++i)
-            addMethod2(new MethodInfo(cp, in));
+        methods = new MemberList<MethodInfo>();
+        for (i = 0; i < n; ++i) {
+            if (src != null)
+                start = src.position();
+
+            MethodInfo minfo = new MethodInfo(cp, in);
+            if (src != null)
+                minfo.setOriginal(src.range(start));
+
+            addMethod2(minfo);
+        }
 
         attributes = new ArrayList<AttributeInfo>();
         n = in.readUnsignedShort();
@@ -824,12 +991,100 @@ public final class ClassFile {
         thisclassname = constPool.getClassInfo(thisClass);
     }
 
+    /**
+     * Starts or stops deferring the rebuild of stack maps.
+     *
+     * <p>While the rebuild is deferred,
+     * {@link MethodInfo#rebuildStackMapIf6(ClassPool, ClassFile)} only
+     * records the method and the stack maps of the recorded methods are
+     * rebuilt together later.  Even if a method is modified several times,
+     * its stack map is rebuilt only once.  The stack maps are rebuilt
+     * when {@link #flushStackMaps()} or <code>write()</code> is called
+     * or when the deferring is stopped.
+     *
+     * @param defer     true if the rebuild is deferred.  If false,
+     *                  the stack maps of the recorded methods are rebuilt.
+     * @see #flushStackMaps()
+     * @since 3.25
+     */
+    public void deferStackMaps(boolean defer) throws BadBytecode {
+        if (defer) {
+            if (deferredStackMaps == null)
+                deferredStackMaps = new LinkedHashMap<MethodInfo,ClassPool>();
+        }
+        else if (deferredStackMaps != null) {
+            flushStackMaps();
+            deferredStackMaps = null;
+        }
+    }
+
+    /**
+     * Returns true if the rebuild of stack maps is deferred.
+     *
+     * @see #deferStackMaps(boolean)
+     * @since 3.25
+     */
+    public boolean isStackMapDeferred() {
+        return deferredStackMaps != null;
+    }
+
+    /**
+     * Rebuilds the stack maps of the methods recorded while
+     * the rebuild is deferred.  The rebuild is still deferred after
+     * this method returns.
+     *
+     * @see #deferStackMaps(boolean)
+     * @since 3.25
+     */
+    public void flushStackMaps() throws BadBytecode {
+        Map<MethodInfo,ClassPool> pending = deferredStackMaps;
+        if (pending == null || pending.isEmpty())
+            return;
+
+        deferredStackMaps = null;
+        try {
+            Set<MethodInfo> current
+                = Collections.newSetFromMap(new IdentityHashMap<MethodInfo,Boolean>());
+            current.addAll(methods);
+            Iterator<Map.Entry<MethodInfo,ClassPool>> it
+                = pending.entrySet().iterator();
+            while (it.hasNext()) {
+                Map.Entry<MethodInfo,ClassPool> e = it.next();
+                MethodInfo minfo = e.getKey();
+                // the method may have been removed.
+                if (current.contains(minfo))
+                    minfo.rebuildStackMapIf6(e.getValue(), this);
+
+                it.remove();
+            }
+        }
+        finally {
+            deferredStackMaps = pending;
+        }
+    }
+
+    /**
+     * Records the method if the rebuild of stack maps is deferred.
+     *
+     * @return false if the rebuild is not deferred.
+     */
+    boolean deferStackMap(MethodInfo minfo, ClassPool pool) {
+        if (deferredStackMaps == null)
+            return false;
+
+        deferredStackMaps.put(minfo, pool);
+        return true;
+    }
+
     /**
      * Writes a class file represented by this object into an output stream.
+     * If the rebuild of stack maps is deferred, the stack maps are
+     * rebuilt before writing.
      */
     public void write(DataOutputStream out) throws IOException {
         int i, n;
 
+        flushStackMapsForWrite();
         out.writeInt(0xCAFEBABE); // magic
         out.writeShort(minor); // minor version
         out.writeShort(major); // major version
@@ -862,6 +1117,74 @@ public final class ClassFile {
         AttributeInfo.writeAll(attributes, out);
     }
 
+    private void flushStackMapsForWrite() throws IOException {
+        try {
+            flushStackMaps();
+        }
+        catch (BadBytecode e) {
+            throw new IOException(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Returns the number of bytes of the class file written by
+     * <code>write()</code>.  If the rebuild of stack maps is deferred,
+     * the returned value does not reflect the rebuild.
+     *
+     * @since 3.25
+     */
+    public int length() {
+        int len = 8 + constPool.length() + 8;
+        if (interfaces != null)
+            len += interfaces.length * 2;
+
+        len += 2;
+        for (FieldInfo finfo:fields)
+            len += finfo.length();
+
+        len += 2;
+        for (MethodInfo minfo:methods)
+            len += minfo.length();
+
+        return len + 2 + AttributeInfo.getLength(attributes);
+    }
+
+    /**
+     * Writes a class file represented by this object into a buffer.
+     * The class file is directly written from the current position
+     * of the buffer and the position is advanced.
+     * If the rebuild of stack maps is deferred, the stack maps are
+     * rebuilt before writing.
+     *
+     * @param buf       the buffer.  It may be a direct buffer.
+     * @throws java.nio.BufferOverflowException     if the remaining space
+     *                  of the buffer is less than <code>length()</code>.
+     *                  Nothing is written.
+     * @since 3.25
+     */
+    public void write(ByteBuffer buf) throws IOException {
+        flushStackMapsForWrite();
+        if (buf.remaining() < length())
+            throw new BufferOverflowException();
+
+        write(new DataOutputStream(new ByteBufferOutputStream(buf)));
+    }
+
+    /**
+     * Converts this class file into a byte array.
+     * Unlike writing into a <code>ByteArrayOutputStream</code>,
+     * this method allocates an array of the exact size in advance
+     * and does not copy it.
+     *
+     * @since 3.25
+     */
+    public byte[] toBytes() throws IOException {
+        flushStackMapsForWrite();
+        byte[] bytes = new byte[length()];
+        write(ByteBuffer.wrap(bytes));
+        return bytes;
+    }
+
     /**
      * Get the Major version.
      * 
@@ -0,0 +1,149 @@
+/*
+ * Javassist, a Java-bytecode translator toolkit.
+ * Copyright (C) 1999- Shigeru Chiba. All Rights Reserved.
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with
+ * the License.  Alternatively, the contents of this file may be used under
+ * the terms of the GNU Lesser General Public License Version 2.1 or later,
+ * or the Apache License Version 2.0.
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ */
+
+package javassist.bytecode;
+
+import java.io.IOException;
+
+/**
+ * The header of a class file.
+ *
+ * <p>This class decodes only the class name, the super class,
+ * the interfaces, and the access flags of a class file.  It records
+ * the offsets of the constant pool entries but it does not construct
+ * a <code>ConstPool</code> object or the fields, methods, and attributes.
+ * It is much cheaper than <code>ClassFile</code> when only the class
+ * hierarchy is examined.
+ *
+ * @see ClassFile
+ * @since 3.25
+ */
+public final class ClassFileHeader {
+    private final byte[] bytes;
+    private final ClassFileReader reader;
+    private final int accessFlags;
+    private final String thisclassname;
+    private final String superclassname;
+    private final String[] interfaceNames;
+    private int innerAccessFlags;
+    private boolean innerAccessFlagsRead;
+
+    /**
+     * Decodes the header of the given class file.
+     *
+     * @param classfile         the class file.  It must not be modified
+     *                          later since this object refers to it.
+     * @throws IOException      if the class file is broken.
+     */
+    public ClassFileHeader(byte[] classfile) throws IOException {
+        bytes = classfile;
+        reader = new ClassFileReader(classfile);
+        try {
+            accessFlags = reader.getAccessFlags();
+            thisclassname = reader.getName();
+            superclassname = reader.getSuperclass();
+            interfaceNames = reader.getInterfaces();
+        }
+        catch (RuntimeException e) {
+            throw new IOException("broken class file", e);
+        }
+
+        innerAccessFlagsRead = false;
+    }
+
+    /**
+     * Returns the class file given to the constructor.
+     */
+    public byte[] getBytes() { return bytes; }
+
+    /**
+     * Returns the major version number.
+     */
+    public int getMajorVersion() { return reader.getMajorVersion(); }
+
+    /**
+     * Returns the minor version number.
+     */
+    public int getMinorVersion() { return reader.getMinorVersion(); }
+
+    /**
+     * Returns access flags.
+     *
+     * @see javassist.bytecode.AccessFlag
+     */
+    public int getAccessFlags() { return accessFlags; }
+
+    /**
+     * Returns true if this is an interface.
+     */
+    public boolean isInterface() {
+        return (accessFlags & AccessFlag.INTERFACE) != 0;
+    }
+
+    /**
+     * Returns the class name.
+     */
+    public String getName() { return thisclassname; }
+
+    /**
+     * Returns the super class name.  It is null if this is
+     * <code>java.lang.Object</code>.
+     */
+    public String getSuperclass() { return superclassname; }
+
+    /**
+     * Returns the names of the interfaces implemented by the class.
+     * The returned array must not be modified.
+     */
+    public String[] getInterfaces() { return interfaceNames; }
+
+    /**
+     * Returns the inner-class access flags of this class.
+     * It reads the <code>InnerClasses</code> attribute.
+     *
+     * @return -1 if this class is not a nested class.
+     * @see ClassFile#getInnerAccessFlags()
+     */
+    public synchronized int getInnerAccessFlags() throws IOException {
+        if (!innerAccessFlagsRead) {
+            try {
+                innerAccessFlags = readInnerAccessFlags();
+            }
+            catch (RuntimeException e) {
+                throw new IOException("broken class file", e);
+            }
+
+            innerAccessFlagsRead = true;
+        }
+
+        return innerAccessFlags;
+    }
+
+    private int readInnerAccessFlags() {
+        int pos = reader.findAttribute(InnerClassesAttribute.tag);
+        if (pos < 0)
+            return -1;
+
+        int m = reader.u2(pos);
+        for (int j = 0; j < m; j++) {
+            int entry = pos + 2 + j * 8;
+            if (thisclassname.equals(reader.getClassInfo(reader.u2(entry))))
+                return reader.u2(entry + 6);
+        }
+
+        return -1;
+    }
+}
@@ -0,0 +1,489 @@
+/*
+ * Javassist, a Java-bytecode translator toolkit.
+ * Copyright (C) 1999- Shigeru Chiba. All Rights Reserved.
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with
+ * the License.  Alternatively, the contents of this file may be used under
+ * the terms of the GNU Lesser General Public License Version 2.1 or later,
+ * or the Apache License Version 2.0.
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ */
+
+package javassist.bytecode;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * A reader of a class file that does not construct a <code>ClassFile</code>
+ * object.
+ *
+ * <p>It reads a class file in a byte array or a <code>ByteBuffer</code>
+ * in place and calls back a <code>ClassFileVisitor</code>.  The constructor
+ * only records the positions of the constant pool entries.  The strings
+ * in the constant pool are decoded when they are requested.
+ * For example, the following code prints the names of the methods
+ * with a <code>Code</code> attribute:
+ *
+ * <pre>
+ * final ClassFileReader reader = new ClassFileReader(bytes);
+ * reader.accept(new ClassFileVisitor() {
+ *     int name;
+ *     public boolean visitMethod(int acc, int nameIndex, int desc) {
+ *         name = nameIndex;
+ *         return true;
+ *     }
+ *     public void visitCode(int maxStack, int maxLocals, int pos, int len) {
+ *         System.out.println(reader.getUtf8(name));
+ *     }
+ * });</pre>
+ *
+ * <p>The position of the buffer is not changed.
+ *
+ * @see ClassFileVisitor
+ * @see ClassFile
+ * @since 3.25
+ */
+public final class ClassFileReader {
+    private final ByteBuffer buf;
+    private final int[] offsets;    // the offsets of the constant pool entries
+    private String[] strings;       // the decoded utf8 entries
+    private final int headerPos;    // the position of access_flags
+
+    /**
+     * Constructs a reader.
+     *
+     * @param classfile     a class file.  It must not be modified while
+     *                      this reader is used.
+     */
+    public ClassFileReader(byte[] classfile) throws IOException {
+        this(ByteBuffer.wrap(classfile));
+    }
+
+    /**
+     * Constructs a reader.  The class file starts at the current position
+     * of the given buffer.
+     *
+     * @param classfile     a class file.  It must not be modified while
+     *                      this reader is used.
+     */
+    public ClassFileReader(ByteBuffer classfile) throws IOException {
+        buf = classfile.slice();
+        try {
+            if (buf.getInt(0) != 0xCAFEBABE)
+                throw new IOException("bad magic number: "
+                                      + Integer.toHexString(buf.getInt(0)));
+
+            int n = u2(8);
+            offsets = new int[n];
+            int pos = 10;
+            for (int i = 1; i < n; i++) {
+                offsets[i] = pos;
+                int tag = u1(pos);
+                switch (tag) {
+                case ConstPool.CONST_Utf8 :
+                    pos += 3 + u2(pos + 1);
+                    break;
+                case ConstPool.CONST_Integer :
+                case ConstPool.CONST_Float :
+                case ConstPool.CONST_Fieldref :
+                case ConstPool.CONST_Methodref :
+                case ConstPool.CONST_InterfaceMethodref :
+                case ConstPool.CONST_NameAndType :
+                case ConstPool.CONST_InvokeDynamic :
+                    pos += 5;
+                    break;
+                case ConstPool.CONST_Long :
+                case ConstPool.CONST_Double :
+                    pos += 9;
+                    i++;    // a long or double value occupies two entries.
+                    break;
+                case ConstPool.CONST_Class :
+                case ConstPool.CONST_String :
+                case ConstPool.CONST_MethodType :
+                case ConstPool.CONST_Module :
+                case ConstPool.CONST_Package :
+                    pos += 3;
+                    break;
+                case ConstPool.CONST_MethodHandle :
+                    pos += 4;
+                    break;
+                default :
+                    throw new IOException("invalid constant type: "
+                                          + tag + " at " + i);
+                }
+            }
+
+            headerPos = pos;
+            u2(pos + 6);    // check the length
+        }
+        catch (IndexOutOfBoundsException e) {
+            throw new IOException("broken class file", e);
+        }
+    }
+
+    /**
+     * Returns the minor version number.
+     */
+    public int getMinorVersion() { return u2(4); }
+
+    /**
+     * Returns the major version number.
+     */
+    public int getMajorVersion() { return u2(6); }
+
+    /**
+     * Returns the access flags.
+     *
+     * @see AccessFlag
+     */
+    public int getAccessFlags() { return u2(headerPos); }
+
+    /**
+     * Returns the class name.
+     */
+    public String getName() { return getClassInfo(u2(headerPos + 2)); }
+
+    /**
+     * Returns the super class name.  It is null if the class is
+     * <code>java.lang.Object</code>.
+     */
+    public String getSuperclass() { return getClassInfo(u2(headerPos + 4)); }
+
+    /**
+     * Returns the names of the interfaces.
+     */
+    public String[] getInterfaces() {
+        int n = u2(headerPos + 6);
+        String[] names = new String[n];
+        for (int i = 0; i < n; i++)
+            names[i] = getClassInfo(u2(headerPos + 8 + i * 2));
+
+        return names;
+    }
+
+    /**
+     * Returns the number of the constant pool entries.
+     * The valid indexes are from 1 to this value minus 1.
+     */
+    public int getConstPoolSize() { return offsets.length; }
+
+    /**
+     * Returns the tag of the constant pool entry.
+     * It is 0 for the second slot of a long or double entry.
+     */
+    public int getTag(int index) {
+        int pos = offsets[index];
+        return pos == 0 ? 0 : u1(pos);
+    }
+
+    /**
+     * Returns the position of the constant pool entry in the class file.
+     * The byte at that position is the tag.
+     */
+    public int getConstPosition(int index) { return offsets[index]; }
+
+    /**
+     * Decodes a <code>CONSTANT_Utf8_info</code> entry.
+     * The decoded string is cached.
+     */
+    public String getUtf8(int index) {
+        String[] table = strings;
+        if (table == null)
+            strings = table = new String[offsets.length];
+
+        String s = table[index];
+        if (s == null) {
+            int pos = offsets[index];
+            checkTag(index, ConstPool.CONST_Utf8);
+            s = table[index] = decodeUtf8(pos + 3, u2(pos + 1));
+        }
+
+        return s;
+    }
+
+    /**
+     * Returns true if the <code>CONSTANT_Utf8_info</code> entry is equal
+     * to the given string.  It does not decode the entry if the given
+     * string consists of ASCII characters.
+     */
+    public boolean utf8Equals(int index, String s) {
+        int pos = offsets[index];
+        checkTag(index, ConstPool.CONST_Utf8);
+        int len = u2(pos + 1);
+        if (len != s.length())
+            return strings != null && strings[index] != null
+                   ? strings[index].equals(s) : getUtf8(index).equals(s);
+
+        pos += 3;
+        for (int i = 0; i < len; i++) {
+            int c = s.charAt(i);
+            if (c == 0 || c >= 0x80)
+                return getUtf8(index).equals(s);
+            else if (u1(pos + i) != c)
+                return false;
+        }
+
+        return true;
+    }
+
+    /**
+     * Returns the class name in a <code>CONSTANT_Class_info</code> entry.
+     * It is a Java name such as <code>java.lang.Object</code> or
+     * a descriptor of an array type.
+     *
+     * @return null if the index is 0.
+     */
+    public String getClassInfo(int index) {
+        if (index == 0)
+            return null;
+
+        checkTag(index, ConstPool.CONST_Class);
+        return Descriptor.toJavaName(getUtf8(u2(offsets[index] + 1)));
+    }
+
+    /**
+     * Returns the value of a <code>CONSTANT_Integer_info</code> entry.
+     */
+    public int getIntegerInfo(int index) {
+        checkTag(index, ConstPool.CONST_Integer);
+        return buf.getInt(offsets[index] + 1);
+    }
+
+    /**
+     * Returns the value of a <code>CONSTANT_Long_info</code> entry.
+     */
+    public long getLongInfo(int index) {
+        checkTag(index, ConstPool.CONST_Long);
+        return buf.getLong(offsets[index] + 1);
+    }
+
+    /**
+     * Returns the value of a <code>CONSTANT_String_info</code> entry.
+     */
+    public String getStringInfo(int index) {
+        checkTag(index, ConstPool.CONST_String);
+        return getUtf8(u2(offsets[index] + 1));
+    }
+
+    /**
+     * Reads an unsigned 8bit value at the given position.
+     */
+    public int u1(int pos) { return buf.get(pos) & 0xff; }
+
+    /**
+     * Reads an unsigned 16bit value at the given position.
+     */
+    public int u2(int pos) { return buf.getShort(pos) & 0xffff; }
+
+    /**
+     * Reads a 32bit value at the given position.
+     */
+    public int s4(int pos) { return buf.getInt(pos); }
+
+    /**
+     * Copies the bytes in the class file.
+     *
+     * @param pos       the position of the first byte.
+     * @param length    the number of bytes.
+     */
+    public byte[] getBytes(int pos, int length) {
+        byte[] bytes = new byte[length];
+        ByteBuffer dup = buf.duplicate();
+        dup.position(pos);
+        dup.get(bytes);
+        return bytes;
+    }
+
+    private void checkTag(int index, int tag) {
+        if (getTag(index) != tag)
+            throw new RuntimeException("bad constant pool entry: " + index);
+    }
+
+    private String decodeUtf8(int pos, int len) {
+        char[] chars = new char[len];
+        int n = 0;
+        int end = pos + len;
+        while (pos < end) {
+            int c = u1(pos++);
+            if (c < 0x80)
+                chars[n++] = (char)c;
+            else if ((c & 0xe0) == 0xc0)
+                chars[n++] = (char)(((c & 0x1f) << 6) | (u1(pos++) & 0x3f));
+            else {
+                int c2 = u1(pos++);
+                int c3 = u1(pos++);
+                chars[n++] = (char)(((c & 0x0f) << 12) | ((c2 & 0x3f) << 6)
+                                    | (c3 & 0x3f));
+            }
+        }
+
+        return new String(chars, 0, n);
+    }
+
+    /**
+     * Finds an attribute of the class.
+     *
+     * @param name      the attribute name.
+     * @return the position of the attribute contents (excluding
+     *          the name and the length) or -1 if not found.
+     */
+    public int findAttribute(String name) {
+        int pos = skipMembers(skipMembers(interfacesEnd()));
+        int n = u2(pos);
+        pos += 2;
+        for (int i = 0; i < n; i++) {
+            if (utf8Equals(u2(pos), name))
+                return pos + 6;
+
+            pos += 6 + s4(pos + 2);
+        }
+
+        return -1;
+    }
+
+    private int interfacesEnd() {
+        return headerPos + 8 + u2(headerPos + 6) * 2;
+    }
+
+    /* Skips the fields or the methods starting at pos.
+     */
+    private int skipMembers(int pos) {
+        int n = u2(pos);
+        pos += 2;
+        for (int i = 0; i < n; i++) {
+            int attrs = u2(pos + 6);
+            pos += 8;
+            for (int j = 0; j < attrs; j++)
+                pos += 6 + s4(pos + 2);
+        }
+
+        return pos;
+    }
+
+    /**
+     * Visits the class file.
+     *
+     * @throws IOException      if the class file is broken.
+     */
+    public void accept(ClassFileVisitor visitor) throws IOException {
+        try {
+            if (visitor.visit(this))
+                accept0(visitor);
+        }
+        catch (IndexOutOfBoundsException e) {
+            throw new IOException("broken class file", e);
+        }
+
+        visitor.visitEnd();
+    }
+
+    private void accept0(ClassFileVisitor visitor) {
+        if (visitor.visitsConstants())
+            for (int i = 1; i < offsets.length; i++)
+                if (offsets[i] != 0)
+                    visitor.visitConstant(i, u1(offsets[i]));
+
+        int pos = interfacesEnd();
+        for (int k = 0; k < 2; k++) {     // fields and then methods
+            int n = u2(pos);
+            pos += 2;
+            for (int i = 0; i < n; i++) {
+                int acc = u2(pos);
+                int name = u2(pos + 2);
+                int desc = u2(pos + 4);
+                boolean visit = k == 0 ? visitor.visitField(acc, name, desc)
+                                       : visitor.visitMethod(acc, name, desc);
+                if (visit)
+                    pos = visitAttributes(visitor, pos + 6);
+                else
+                    pos = skipAttributes(pos + 6);
+            }
+        }
+
+        visitAttributes(visitor, pos);
+    }
+
+    private int skipAttributes(int pos) {
+        int n = u2(pos);
+        pos += 2;
+        for (int i = 0; i < n; i++)
+            pos += 6 + s4(pos + 2);
+
+        return pos;
+    }
+
+    private int visitAttributes(ClassFileVisitor visitor, int pos) {
+        int n = u2(pos);
+        pos += 2;
+        for (int i = 0; i < n; i++) {
+            int name = u2(pos);
+            int len = s4(pos + 2);
+            pos += 6;
+            if (utf8Equals(name, CodeAttribute.tag))
+                visitor.visitCode(u2(pos), u2(pos + 2), pos + 8, s4(pos + 4));
+            else if (utf8Equals(name, AnnotationsAttribute.visibleTag))
+                visitAnnotations(visitor, true, pos);
+            else if (utf8Equals(name, AnnotationsAttribute.invisibleTag))
+                visitAnnotations(visitor, false, pos);
+            else
+                visitor.visitAttribute(name, pos, len);
+
+            pos += len;
+        }
+
+        return pos;
+    }
+
+    private void visitAnnotations(ClassFileVisitor visitor, boolean visible,
+                                  int pos) {
+        int n = u2(pos);
+        pos += 2;
+        for (int i = 0; i < n; i++) {
+            visitor.visitAnnotation(u2(pos), visible, pos);
+            pos = skipAnnotation(pos);
+        }
+    }
+
+    /**
+     * Returns the position following the annotation structure
+     * starting at the given position.
+     */
+    public int skipAnnotation(int pos) {
+        int n = u2(pos + 2);
+        pos += 4;
+        for (int i = 0; i < n; i++)
+            pos = skipElementValue(pos + 2);
+
+        return pos;
+    }
+
+    /**
+     * Returns the position following the <code>element_value</code>
+     * structure starting at the given position.
+     */
+    public int skipElementValue(int pos) {
+        int tag = u1(pos);
+        switch (tag) {
+        case 'e' :
+            return pos + 5;
+        case '@' :
+            return skipAnnotation(pos + 1);
+        case '[' : {
+            int n = u2(pos + 1);
+            pos += 3;
+            for (int i = 0; i < n; i++)
+                pos = skipElementValue(pos);
+
+            return pos;
+        }
+        default :   // const_value_index or class_info_index
+            return pos + 3;
+        }
+    }
+}
@@ -0,0 +1,134 @@
+/*
+ * Javassist, a Java-bytecode translator toolkit.
+ * Copyright (C) 1999- Shigeru Chiba. All Rights Reserved.
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with
+ * the License.  Alternatively, the contents of this file may be used under
+ * the terms of the GNU Lesser General Public License Version 2.1 or later,
+ * or the Apache License Version 2.0.
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ */
+
+package javassist.bytecode;
+
+/**
+ * A visitor called back by <code>ClassFileReader</code>.
+ *
+ * <p>The methods of this class do nothing.  A subclass overrides only
+ * the methods for the elements it is interested in.  The methods are
+ * called in the following order:
+ *
+ * <pre>
+ * visit
+ * visitConstant*
+ * (visitField (visitAnnotation | visitAttribute)*)*
+ * (visitMethod (visitAnnotation | visitAttribute | visitCode)*)*
+ * (visitAnnotation | visitAttribute)*
+ * visitEnd</pre>
+ *
+ * <p>Most parameters are the indexes of constant pool entries or
+ * the positions in the class file.  They are decoded by the methods of
+ * <code>ClassFileReader</code>, for example,
+ * {@link ClassFileReader#getUtf8(int)}, only when they are needed.
+ *
+ * @see ClassFileReader#accept(ClassFileVisitor)
+ * @since 3.25
+ */
+public class ClassFileVisitor {
+    /**
+     * Is called first.  The header of the class file is available
+     * through <code>getName()</code> etc. in the reader.
+     *
+     * @return false if the rest of the class file is not visited.
+     *          Only <code>visitEnd()</code> is called after that.
+     */
+    public boolean visit(ClassFileReader reader) { return true; }
+
+    /**
+     * Returns true if <code>visitConstant()</code> is called.
+     * The default implementation returns false.
+     */
+    public boolean visitsConstants() { return false; }
+
+    /**
+     * Is called for every constant pool entry if
+     * <code>visitsConstants()</code> returns true.
+     *
+     * @param index     the index of the entry.
+     * @param tag       the tag of the entry, such as
+     *                  <code>ConstPool.CONST_Utf8</code>.
+     */
+    public void visitConstant(int index, int tag) {}
+
+    /**
+     * Is called for every field.
+     *
+     * @param accessFlags       the access flags.
+     * @param nameIndex         the index of the field name.
+     * @param descriptorIndex   the index of the field descriptor.
+     * @return false if the attributes of the field are not visited.
+     */
+    public boolean visitField(int accessFlags, int nameIndex,
+                              int descriptorIndex) {
+        return true;
+    }
+
+    /**
+     * Is called for every method.
+     *
+     * @param accessFlags       the access flags.
+     * @param nameIndex         the index of the method name.
+     * @param descriptorIndex   the index of the method descriptor.
+     * @return false if the attributes of the method are not visited.
+     */
+    public boolean visitMethod(int accessFlags, int nameIndex,
+                               int descriptorIndex) {
+        return true;
+    }
+
+    /**
+     * Is called for every annotation in the
+     * <code>RuntimeVisibleAnnotations</code> and
+     * <code>RuntimeInvisibleAnnotations</code> attributes of the class
+     * or the current field or method.
+     *
+     * @param typeIndex     the index of the annotation type descriptor.
+     * @param visible       true if it is a runtime-visible annotation.
+     * @param pos           the position of the annotation structure
+     *                      in the class file.
+     */
+    public void visitAnnotation(int typeIndex, boolean visible, int pos) {}
+
+    /**
+     * Is called for the <code>Code</code> attribute of the current method.
+     *
+     * @param maxStack      the maximum stack depth.
+     * @param maxLocals     the maximum number of local variables.
+     * @param pos           the position of the bytecode in the class file.
+     * @param length        the length of the bytecode.
+     */
+    public void visitCode(int maxStack, int maxLocals, int pos, int length) {}
+
+    /**
+     * Is called for every other attribute of the class or the current
+     * field or method.  It is not called for the attributes of
+     * a <code>Code</code> attribute.
+     *
+     * @param nameIndex     the index of the attribute name.
+     * @param pos           the position of the attribute contents
+     *                      (excluding the name and the length)
+     *                      in the class file.
+     * @param length        the length of the contents.
+     */
+    public void visitAttribute(int nameIndex, int pos, int length) {}
+
+    /**
+     * Is called last.
+     */
+    public void visitEnd() {}
+}
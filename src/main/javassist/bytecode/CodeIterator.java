@@ -17,6 +17,8 @@
 package javassist.bytecode;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
 import java.util.List;
 
 /**
@@ -41,6 +43,12 @@ import java.util.List;
  * <code>CodeIterator</code> will break the other
  * <code>CodeIterator</code>.
  *
+ * <p>When a number of instructions are replaced in a single pass,
+ * {@link #deferReplace(int, int, byte[], ExceptionTable)} records an edit
+ * without changing the code.  The recorded edits are applied together by
+ * {@link #applyDeferredEdits()}, which relocates branch offsets, the exception
+ * table, and the other attributes only once.
+ *
  * <p>This iterator does not provide <code>remove()</code>.
  * If a piece of code in a <code>Code_attribute</code> is unnecessary,
  * it should be overwritten with <code>NOP</code>.
@@ -54,6 +62,11 @@ public class CodeIterator implements Opcode {
     protected int currentPos;
     protected int mark;
 
+    /* the edits recorded by deferReplace() and deferInsert().
+     * null if there are no such edits.
+     */
+    private List<Patch> patches;
+
     protected CodeIterator(CodeAttribute ca) {
         codeAttr = ca;
         bytecode = ca.getCode();
@@ -617,6 +630,9 @@ public class CodeIterator implements Opcode {
          * cursorPos indicates the next bytecode whichever exclusive is
          * true or false.
          */
+        if (patches != null)
+            throw new IllegalStateException("deferred edits must be applied first");
+
         Gap gap = new Gap();
         if (length <= 0) {
             gap.position = pos;
@@ -658,6 +674,9 @@ public class CodeIterator implements Opcode {
     /**
      * Is called when a gap is inserted.  The default implementation is empty.
      * A subclass can override this method so that cursors will be updated.
+     * When deferred edits are applied, it is called for every gap in
+     * descending order of the positions.  The positions are the ones
+     * before the edits are applied.
      *
      * @param pos           the position where a gap is inserted.
      * @param length        the length of the gap.
@@ -666,6 +685,169 @@ public class CodeIterator implements Opcode {
         // empty
     }
 
+    /**
+     * Records that the bytes in <code>[pos, pos + length)</code>
+     * are replaced with the given bytecode sequence.  The code is not
+     * changed until {@link #applyDeferredEdits()} is called.
+     * If the given sequence is longer than <code>length</code>,
+     * an inclusive gap is inserted at <code>pos</code>.  If it is shorter,
+     * the rest of the replaced bytes are filled with <code>NOP</code>.
+     *
+     * <p>The positions given to this method are always the positions
+     * in the code before the recorded edits are applied.  The replaced
+     * ranges must not overlap each other and must not contain a branch
+     * instruction.  While recorded edits exist, the methods inserting
+     * a gap such as <code>insertGapAt()</code> throw an
+     * <code>IllegalStateException</code>.
+     *
+     * @param pos       the index of the first replaced byte.
+     * @param length    the number of the replaced bytes.
+     * @param code      the new bytecode sequence.
+     * @param et        the exception table for <code>code</code> or null.
+     *                  The code positions in it are relative
+     *                  to the beginning of <code>code</code>.
+     *                  Its entries are inserted at the beginning of
+     *                  the exception table in the code attribute.
+     * @see #insert(ExceptionTable, int)
+     * @since 3.25
+     */
+    public void deferReplace(int pos, int length, byte[] code, ExceptionTable et) {
+        deferEdit(new Patch(pos, length, code, false, et));
+    }
+
+    /**
+     * Records that the given bytecode sequence is inserted
+     * before the instruction at the given index <code>pos</code>.
+     * The code is not changed until {@link #applyDeferredEdits()} is called.
+     * The sequences inserted at the same position are placed in the
+     * order they are recorded.
+     *
+     * @param pos       the index at which a byte sequence is inserted.
+     *                  It is a position in the code before the recorded
+     *                  edits are applied.
+     * @param code      inserted bytecode sequence.
+     * @param exclusive true if the sequence is excluded from the
+     *                  block statement beginning at <code>pos</code>.
+     * @see #deferReplace(int, int, byte[], ExceptionTable)
+     * @since 3.25
+     */
+    public void deferInsert(int pos, byte[] code, boolean exclusive) {
+        deferEdit(new Patch(pos, 0, code, exclusive, null));
+    }
+
+    private void deferEdit(Patch p) {
+        if (p.pos < 0 || p.length < 0 || p.pos + p.length > bytecode.length)
+            throw new ArrayIndexOutOfBoundsException(p.pos);
+
+        if (patches == null)
+            patches = new ArrayList<Patch>();
+
+        patches.add(p);
+    }
+
+    /**
+     * Returns true if there are edits recorded by
+     * <code>deferReplace()</code> or <code>deferInsert()</code>
+     * but not applied yet.
+     *
+     * @since 3.25
+     */
+    public boolean hasDeferredEdits() {
+        return patches != null;
+    }
+
+    /**
+     * Applies all the edits recorded by <code>deferReplace()</code>
+     * and <code>deferInsert()</code>.  The code is copied only once
+     * and the branch offsets, the exception table, and the other
+     * attributes are updated in a single pass.
+     * The cursor and the mark are also moved so that they indicate
+     * the same instructions.
+     *
+     * @throws BadBytecode      if the replaced ranges overlap or
+     *                          contain a branch instruction.
+     * @since 3.25
+     */
+    public void applyDeferredEdits() throws BadBytecode {
+        if (patches == null)
+            return;
+
+        List<Patch> recorded = patches;
+        patches = null;
+        Patch[] edits = recorded.toArray(new Patch[recorded.size()]);
+        // Arrays.sort() is stable.  It keeps the order of the insertions at the same position.
+        Arrays.sort(edits, new Comparator<Patch>() {
+            public int compare(Patch p1, Patch p2) {
+                return p1.pos < p2.pos ? -1 : (p1.pos == p2.pos ? 0 : 1);
+            }
+        });
+
+        for (int i = 1; i < edits.length; i++)
+            if (edits[i - 1].pos + edits[i - 1].length > edits[i].pos)
+                throw new BadBytecode("overlapping edits at " + edits[i].pos);
+
+        byte[] code = bytecode;
+        int cur = currentPos;
+        Pointers pointers = new Pointers(cur, mark, 0, get().getExceptionTable(), codeAttr);
+        List<Branch> jumps = makeJumpList(code, code.length, pointers);
+        int curGap = 0;
+        for (int i = edits.length - 1; i >= 0; i--) {
+            Patch p = edits[i];
+            int gapLength = p.gapLength();
+            if (gapLength > 0) {
+                pointers.shiftPc(p.pos, gapLength, p.exclusive);
+                for (Branch b:jumps)
+                    b.shift(p.pos, gapLength, p.exclusive);
+
+                if (p.pos == cur && !p.exclusive)
+                    curGap += gapLength;
+            }
+        }
+
+        expandBranches(jumps, pointers);
+        byte[] newcode = makeExpandedCode(code, jumps, edits);
+        for (Patch p: recorded) {
+            int len = p.code.length;
+            System.arraycopy(p.code, 0, newcode, p.newPos, len);
+            for (int j = len; j < p.length; j++)
+                newcode[p.newPos + j] = NOP;
+
+            if (p.etable != null)
+                insert(p.etable, p.newPos);
+        }
+
+        codeAttr.setCode(newcode);
+        bytecode = newcode;
+        endPos = getCodeLength();
+        currentPos = pointers.cursor + curGap;
+        mark = pointers.mark;
+        for (int i = edits.length - 1; i >= 0; i--) {
+            int gapLength = edits[i].gapLength();
+            if (gapLength > 0)
+                updateCursors(edits[i].pos, gapLength);
+        }
+    }
+
+    static class Patch {
+        final int pos, length;
+        final byte[] code;
+        final boolean exclusive;
+        final ExceptionTable etable;
+        int newPos;
+
+        Patch(int pos, int length, byte[] code, boolean exclusive, ExceptionTable et) {
+            this.pos = pos;
+            this.length = length;
+            this.code = code;
+            this.exclusive = exclusive;
+            this.etable = et;
+        }
+
+        int gapLength() {
+            return Math.max(0, code.length - length);
+        }
+    }
+
     /**
      * Copies and inserts the entries in the given exception table
      * at the beginning of the exception table in the code attribute
@@ -1145,6 +1327,16 @@ public class CodeIterator implements Opcode {
                 b.shift(where, gapLength, exclusive);
         }
 
+        expandBranches(jumps, ptrs);
+        return makeExapndedCode(code, jumps, where, gapLength);
+    }
+
+    /* widens the branch instructions whose offsets do not fit
+     * and adjusts the padding of switch instructions.
+     */
+    private static void expandBranches(List<Branch> jumps, Pointers ptrs)
+        throws BadBytecode
+    {
         boolean unstable = true;
         do {
             while (unstable) {
@@ -1172,8 +1364,6 @@ public class CodeIterator implements Opcode {
                 }
             }
         } while (unstable);
-
-        return makeExapndedCode(code, jumps, where, gapLength);
     }
 
     private static List<Branch> makeJumpList(byte[] code, int endPos, Pointers ptrs)
@@ -1287,6 +1477,79 @@ public class CodeIterator implements Opcode {
         return newcode;
     }
 
+    /* makes the code in which a gap is inserted for every edit.
+     * The edits must be sorted by their positions.
+     * The index of each gap in the new code is stored in Patch.newPos.
+     */
+    private static byte[] makeExpandedCode(byte[] code, List<Branch> jumps,
+                                           Patch[] edits)
+        throws BadBytecode
+    {
+        int n = jumps.size();
+        int size = code.length;
+        for (Patch p:edits)
+            size += p.gapLength();
+
+        for (Branch b:jumps)
+            size += b.deltaSize();
+
+        byte[] newcode = new byte[size];
+        int src = 0, dest = 0, bindex = 0, eindex = 0;
+        int len = code.length;
+        int replacedEnd = 0;
+        Branch b;
+        int bpos;
+        if (0 < n) {
+            b = jumps.get(0);
+            bpos = b.orgPos;
+        }
+        else {
+            b = null;
+            bpos = len;  // src will be never equal to bpos
+        }
+
+        while (src < len) {
+            while (eindex < edits.length && edits[eindex].pos == src) {
+                Patch p = edits[eindex++];
+                p.newPos = dest;
+                replacedEnd = src + p.length;
+                int pos2 = dest + p.gapLength();
+                while (dest < pos2)
+                    newcode[dest++] = NOP;
+            }
+
+            if (src != bpos)
+                newcode[dest++] = code[src++];
+            else {
+                if (src < replacedEnd)
+                    throw new BadBytecode("a branch instruction is replaced at " + src);
+
+                int s = b.write(src, code, dest, newcode);
+                src += s;
+                dest += s + b.deltaSize();
+                if (++bindex < n) {
+                    b = jumps.get(bindex);
+                    bpos = b.orgPos;
+                }
+                else  {
+                    b = null;
+                    bpos = len;
+                }
+            }
+        }
+
+        // inserted at the end of the code.
+        while (eindex < edits.length) {
+            Patch p = edits[eindex++];
+            p.newPos = dest;
+            int pos2 = dest + p.gapLength();
+            while (dest < pos2)
+                newcode[dest++] = NOP;
+        }
+
+        return newcode;
+    }
+
     static abstract class Branch {
         int pos, orgPos;
         Branch(int p) { pos = orgPos = p; }
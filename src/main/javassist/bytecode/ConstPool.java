@@ -21,7 +21,6 @@ import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
 import java.io.PrintWriter;
-import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
@@ -33,10 +32,48 @@ import javassist.CtClass;
  */
 public final class ConstPool
 {
-    LongVector items;
+    /* The entries are stored in the parallel arrays below instead of
+     * being ConstInfo objects.  tags[i] is the tag of the i-th entry.
+     * The meaning of data1[i] and data2[i] depends on the tag:
+     *
+     *   Class, String, MethodType,
+     *   Module, Package      data1: the index of the name/descriptor.
+     *   Fieldref, Methodref,
+     *   InterfaceMethodref   data1: class_index, data2: name_and_type_index.
+     *   NameAndType          data1: name_index, data2: descriptor_index.
+     *   Integer, Float       data1: the value (the bits of the float).
+     *   Long, Double         data1: the high 32 bits, data2: the low ones.
+     *   MethodHandle         data1: reference_kind, data2: reference_index.
+     *   InvokeDynamic        data1: bootstrap_method_attr_index,
+     *                        data2: name_and_type_index.
+     *   Utf8                 strings[i]: the string.
+     *
+     * The tag of index 0 and the padding following Long and Double is 0.
+     */
+    private byte[] tags;
+    private int[] data1, data2;
+    private String[] strings;
     int numOfItems;
     int thisClassInfo;
-    Map<ConstInfo,ConstInfo> itemsCache;
+
+    /* an open-addressing hash table for finding an existing entry
+     * in addItem().  It contains the indexes of the entries,
+     * 0 (empty) or DELETED.  null if it has not been constructed yet.
+     */
+    private int[] hashTable;
+    private int hashUsed;       // the number of non-empty slots
+    private static final int DELETED = -1;
+
+    // the table shared with other ConstPools or null.
+    private StringTable stringTable;
+
+    // the original bytes of the entries read from a class file.
+    // null if the entries have been changed.
+    private ByteRange original;
+    private int originalItems;
+
+    // the number of times the members using this table have been renamed.
+    private int renameCount;
 
     /**
      * <code>CONSTANT_Class</code>
@@ -177,10 +214,8 @@ public final class ConstPool
      */
     public ConstPool(String thisclass)
     {
-        items = new LongVector();
-        itemsCache = null;
-        numOfItems = 0;
-        addItem0(null);          // index 0 is reserved by the JVM.
+        allocate(64);
+        numOfItems = 1;         // index 0 is reserved by the JVM.
         thisClassInfo = addClassInfo(thisclass);
     }
 
@@ -191,16 +226,76 @@ public final class ConstPool
      */
     public ConstPool(DataInputStream in) throws IOException
     {
-        itemsCache = null;
         thisClassInfo = 0;
-        /* read() initializes items and numOfItems, and do addItem(null).
+        /* read() initializes the entries and numOfItems.
          */
         read(in);
     }
 
+    /**
+     * Records the original bytes of the entries.  They are written as is
+     * unless the entries are changed.
+     */
+    void setOriginal(ByteRange range)
+    {
+        original = range;
+        originalItems = numOfItems;
+    }
+
+    /**
+     * Makes this constant pool table share the strings of
+     * <code>CONSTANT_Utf8_info</code> entries with other tables.
+     * The strings of the existing entries are replaced with the equal
+     * ones in the given table, and the strings of the entries added later
+     * are recorded in the table.
+     *
+     * @param table     the shared table or null.
+     * @since 3.25
+     */
+    public void setStringTable(StringTable table)
+    {
+        stringTable = table;
+        if (table != null) {
+            int size = numOfItems;
+            for (int i = 1; i < size; i++)
+                if (tags[i] == Utf8Info.tag)
+                    strings[i] = table.intern(strings[i]);
+        }
+    }
+
+    /**
+     * Returns the table of the strings shared with other
+     * constant pool tables.  It may be null.
+     *
+     * @see #setStringTable(StringTable)
+     * @since 3.25
+     */
+    public StringTable getStringTable()
+    {
+        return stringTable;
+    }
+
+    /**
+     * Returns the number of times <code>setName()</code> has been called
+     * on the <code>MethodInfo</code> and <code>FieldInfo</code> objects
+     * using this constant pool table.  It is used to check whether
+     * an index of the members by their names is up to date.
+     *
+     * @since 3.25
+     */
+    public int getRenameCount()
+    {
+        return renameCount;
+    }
+
+    void memberRenamed()
+    {
+        renameCount++;
+    }
+
     void prune()
     {
-        itemsCache = null;
+        hashTable = null;
     }
 
     /**
@@ -233,9 +328,60 @@ public final class ConstPool
         thisClassInfo = i;
     }
 
+    /* Returns a ConstInfo object representing the n-th entry.
+     * It is a copy; changing it does not change this table.
+     * This returns null if the entry does not exist.
+     */
     ConstInfo getItem(int n)
     {
-        return items.elementAt(n);
+        if (!exists(n))
+            return null;
+
+        switch (tags[n]) {
+        case 0 :
+            return new ConstInfoPadding(n);
+        case Utf8Info.tag :
+            return new Utf8Info(strings[n], n);
+        case IntegerInfo.tag :
+            return new IntegerInfo(data1[n], n);
+        case FloatInfo.tag :
+            return new FloatInfo(getFloatInfo(n), n);
+        case LongInfo.tag :
+            return new LongInfo(getLongInfo(n), n);
+        case DoubleInfo.tag :
+            return new DoubleInfo(getDoubleInfo(n), n);
+        case ClassInfo.tag :
+            return new ClassInfo(data1[n], n);
+        case StringInfo.tag :
+            return new StringInfo(data1[n], n);
+        case FieldrefInfo.tag :
+            return new FieldrefInfo(data1[n], data2[n], n);
+        case MethodrefInfo.tag :
+            return new MethodrefInfo(data1[n], data2[n], n);
+        case InterfaceMethodrefInfo.tag :
+            return new InterfaceMethodrefInfo(data1[n], data2[n], n);
+        case NameAndTypeInfo.tag :
+            return new NameAndTypeInfo(data1[n], data2[n], n);
+        case MethodHandleInfo.tag :
+            return new MethodHandleInfo(data1[n], data2[n], n);
+        case MethodTypeInfo.tag :
+            return new MethodTypeInfo(data1[n], n);
+        case InvokeDynamicInfo.tag :
+            return new InvokeDynamicInfo(data1[n], data2[n], n);
+        case ModuleInfo.tag :
+            return new ModuleInfo(data1[n], n);
+        case PackageInfo.tag :
+            return new PackageInfo(data1[n], n);
+        default :
+            return null;
+        }
+    }
+
+    /* Returns true if the n-th entry exists.  Index 0 is not an entry.
+     */
+    private boolean exists(int n)
+    {
+        return 0 < n && n < numOfItems;
     }
 
     /**
@@ -247,7 +393,7 @@ public final class ConstPool
      */
     public int getTag(int index)
     {
-        return getItem(index).getTag();
+        return tags[index];
     }
 
     /**
@@ -263,10 +409,14 @@ public final class ConstPool
      */
     public String getClassInfo(int index)
     {
-        ClassInfo c = (ClassInfo)getItem(index);
-        if (c == null)
+        if (!exists(index))
             return null;
-        return Descriptor.toJavaName(getUtf8Info(c.name));
+
+        String name = getUtf8Info(data1[index]);
+        if (stringTable == null)
+            return Descriptor.toJavaName(name);
+        else
+            return stringTable.toJavaName(name);
     }
 
     /**
@@ -280,10 +430,9 @@ public final class ConstPool
      */
     public String getClassInfoByDescriptor(int index)
     {
-        ClassInfo c = (ClassInfo)getItem(index);
-        if (c == null)
+        if (!exists(index))
             return null;
-        String className = getUtf8Info(c.name);
+        String className = getUtf8Info(data1[index]);
         if (className.charAt(0) == '[')
             return className;
         return Descriptor.of(className);
@@ -296,8 +445,7 @@ public final class ConstPool
      */
     public int getNameAndTypeName(int index)
     {
-        NameAndTypeInfo ntinfo = (NameAndTypeInfo)getItem(index);
-        return ntinfo.memberName;
+        return data1[index];
     }
 
     /**
@@ -307,8 +455,7 @@ public final class ConstPool
      */
     public int getNameAndTypeDescriptor(int index)
     {
-        NameAndTypeInfo ntinfo = (NameAndTypeInfo)getItem(index);
-        return ntinfo.typeDescriptor;
+        return data2[index];
     }
 
     /**
@@ -322,8 +469,7 @@ public final class ConstPool
      */
     public int getMemberClass(int index)
     {
-        MemberrefInfo minfo = (MemberrefInfo)getItem(index);
-        return minfo.classIndex;
+        return data1[index];
     }
 
     /**
@@ -337,8 +483,7 @@ public final class ConstPool
      */
     public int getMemberNameAndType(int index)
     {
-        MemberrefInfo minfo = (MemberrefInfo)getItem(index);
-        return minfo.nameAndTypeIndex;
+        return data2[index];
     }
 
     /**
@@ -348,8 +493,7 @@ public final class ConstPool
      */
     public int getFieldrefClass(int index)
     {
-        FieldrefInfo finfo = (FieldrefInfo)getItem(index);
-        return finfo.classIndex;
+        return data1[index];
     }
 
     /**
@@ -361,10 +505,9 @@ public final class ConstPool
      */
     public String getFieldrefClassName(int index)
     {
-        FieldrefInfo f = (FieldrefInfo)getItem(index);
-        if (f == null)
+        if (!exists(index))
             return null;
-        return getClassInfo(f.classIndex);
+        return getClassInfo(data1[index]);
     }
 
     /**
@@ -374,8 +517,7 @@ public final class ConstPool
      */
     public int getFieldrefNameAndType(int index)
     {
-        FieldrefInfo finfo = (FieldrefInfo)getItem(index);
-        return finfo.nameAndTypeIndex;
+        return data2[index];
     }
 
     /**
@@ -388,13 +530,7 @@ public final class ConstPool
      */
     public String getFieldrefName(int index)
     {
-        FieldrefInfo f = (FieldrefInfo)getItem(index);
-        if (f == null)
-            return null;
-        NameAndTypeInfo n = (NameAndTypeInfo)getItem(f.nameAndTypeIndex);
-        if(n == null)
-            return null;
-        return getUtf8Info(n.memberName);
+        return getNameAndTypeUtf8(index, data1);
     }
 
     /**
@@ -407,13 +543,7 @@ public final class ConstPool
      */
     public String getFieldrefType(int index)
     {
-        FieldrefInfo f = (FieldrefInfo)getItem(index);
-        if (f == null)
-            return null;
-        NameAndTypeInfo n = (NameAndTypeInfo)getItem(f.nameAndTypeIndex);
-        if(n == null)
-            return null;
-        return getUtf8Info(n.typeDescriptor);
+        return getNameAndTypeUtf8(index, data2);
     }
 
     /**
@@ -423,8 +553,7 @@ public final class ConstPool
      */
     public int getMethodrefClass(int index)
     {
-        MemberrefInfo minfo = (MemberrefInfo)getItem(index);
-        return minfo.classIndex;
+        return data1[index];
     }
 
     /**
@@ -436,10 +565,9 @@ public final class ConstPool
      */
     public String getMethodrefClassName(int index)
     {
-        MemberrefInfo minfo = (MemberrefInfo)getItem(index);
-        if (minfo == null)
+        if (!exists(index))
             return null;
-        return getClassInfo(minfo.classIndex);
+        return getClassInfo(data1[index]);
     }
 
     /**
@@ -449,8 +577,7 @@ public final class ConstPool
      */
     public int getMethodrefNameAndType(int index)
     {
-        MemberrefInfo minfo = (MemberrefInfo)getItem(index);
-        return minfo.nameAndTypeIndex;
+        return data2[index];
     }
 
     /**
@@ -463,14 +590,7 @@ public final class ConstPool
      */
     public String getMethodrefName(int index)
     {
-        MemberrefInfo minfo = (MemberrefInfo)getItem(index);
-        if (minfo == null)
-            return null;
-        NameAndTypeInfo n
-            = (NameAndTypeInfo)getItem(minfo.nameAndTypeIndex);
-        if(n == null)
-            return null;
-        return getUtf8Info(n.memberName);
+        return getNameAndTypeUtf8(index, data1);
     }
 
     /**
@@ -483,14 +603,7 @@ public final class ConstPool
      */
     public String getMethodrefType(int index)
     {
-        MemberrefInfo minfo = (MemberrefInfo)getItem(index);
-        if (minfo == null)
-            return null;
-        NameAndTypeInfo n
-            = (NameAndTypeInfo)getItem(minfo.nameAndTypeIndex);
-        if(n == null)
-            return null;
-        return getUtf8Info(n.typeDescriptor);
+        return getNameAndTypeUtf8(index, data2);
     }
 
     /**
@@ -500,8 +613,7 @@ public final class ConstPool
      */
     public int getInterfaceMethodrefClass(int index)
     {
-        MemberrefInfo minfo = (MemberrefInfo)getItem(index);
-        return minfo.classIndex;
+        return data1[index];
     }
 
     /**
@@ -513,8 +625,7 @@ public final class ConstPool
      */
     public String getInterfaceMethodrefClassName(int index)
     {
-        MemberrefInfo minfo = (MemberrefInfo)getItem(index);
-        return getClassInfo(minfo.classIndex);
+        return getClassInfo(data1[index]);
     }
 
     /**
@@ -524,8 +635,7 @@ public final class ConstPool
      */
     public int getInterfaceMethodrefNameAndType(int index)
     {
-        MemberrefInfo minfo = (MemberrefInfo)getItem(index);
-        return minfo.nameAndTypeIndex;
+        return data2[index];
     }
 
     /**
@@ -539,14 +649,7 @@ public final class ConstPool
      */
     public String getInterfaceMethodrefName(int index)
     {
-        MemberrefInfo minfo = (MemberrefInfo)getItem(index);
-        if (minfo == null)
-            return null;
-        NameAndTypeInfo n
-            = (NameAndTypeInfo)getItem(minfo.nameAndTypeIndex);
-        if(n == null)
-            return null;
-        return getUtf8Info(n.memberName);
+        return getNameAndTypeUtf8(index, data1);
     }
 
     /**
@@ -560,14 +663,7 @@ public final class ConstPool
      */
     public String getInterfaceMethodrefType(int index)
     {
-        MemberrefInfo minfo = (MemberrefInfo)getItem(index);
-        if (minfo == null)
-            return null;
-        NameAndTypeInfo n
-            = (NameAndTypeInfo)getItem(minfo.nameAndTypeIndex);
-        if(n == null)
-            return null;
-        return getUtf8Info(n.typeDescriptor);
+        return getNameAndTypeUtf8(index, data2);
     }
     /**
      * Reads <code>CONSTANT_Integer_info</code>, <code>_Float_info</code>,
@@ -580,20 +676,23 @@ public final class ConstPool
      */
     public Object getLdcValue(int index)
     {
-        ConstInfo constInfo = this.getItem(index);
-        Object value = null;
-        if (constInfo instanceof StringInfo)
-            value = this.getStringInfo(index);
-        else if (constInfo instanceof FloatInfo)
-            value = Float.valueOf(getFloatInfo(index));
-        else if (constInfo instanceof IntegerInfo)
-            value = Integer.valueOf(getIntegerInfo(index));
-        else if (constInfo instanceof LongInfo)
-            value = Long.valueOf(getLongInfo(index));
-        else if (constInfo instanceof DoubleInfo)
-            value = Double.valueOf(getDoubleInfo(index));
+        if (!exists(index))
+            return null;
 
-        return value;
+        switch (tags[index]) {
+        case StringInfo.tag :
+            return getStringInfo(index);
+        case FloatInfo.tag :
+            return Float.valueOf(getFloatInfo(index));
+        case IntegerInfo.tag :
+            return Integer.valueOf(getIntegerInfo(index));
+        case LongInfo.tag :
+            return Long.valueOf(getLongInfo(index));
+        case DoubleInfo.tag :
+            return Double.valueOf(getDoubleInfo(index));
+        default :
+            return null;
+        }
     }
 
     /**
@@ -604,8 +703,7 @@ public final class ConstPool
      */
     public int getIntegerInfo(int index)
     {
-        IntegerInfo i = (IntegerInfo)getItem(index);
-        return i.value;
+        return data1[index];
     }
 
     /**
@@ -616,8 +714,7 @@ public final class ConstPool
      */
     public float getFloatInfo(int index)
     {
-        FloatInfo i = (FloatInfo)getItem(index);
-        return i.value;
+        return Float.intBitsToFloat(data1[index]);
     }
 
     /**
@@ -628,8 +725,7 @@ public final class ConstPool
      */
     public long getLongInfo(int index)
     {
-        LongInfo i = (LongInfo)getItem(index);
-        return i.value;
+        return ((long)data1[index] << 32) | (data2[index] & 0xffffffffL);
     }
 
     /**
@@ -640,8 +736,7 @@ public final class ConstPool
      */
     public double getDoubleInfo(int index)
     {
-        DoubleInfo i = (DoubleInfo)getItem(index);
-        return i.value;
+        return Double.longBitsToDouble(getLongInfo(index));
     }
 
     /**
@@ -652,8 +747,7 @@ public final class ConstPool
      */
     public String getStringInfo(int index)
     {
-        StringInfo si = (StringInfo)getItem(index);
-        return getUtf8Info(si.string);
+        return getUtf8Info(data1[index]);
     }
 
     /**
@@ -664,8 +758,7 @@ public final class ConstPool
      */
     public String getUtf8Info(int index)
     {
-        Utf8Info utf = (Utf8Info)getItem(index);
-        return utf.string;
+        return strings[index];
     }
 
     /**
@@ -686,8 +779,7 @@ public final class ConstPool
      */
     public int getMethodHandleKind(int index)
     {
-        MethodHandleInfo mhinfo = (MethodHandleInfo)getItem(index);
-        return mhinfo.refKind;
+        return data1[index];
     }
 
     /**
@@ -699,8 +791,7 @@ public final class ConstPool
      */
     public int getMethodHandleIndex(int index)
     {
-        MethodHandleInfo mhinfo = (MethodHandleInfo)getItem(index);
-        return mhinfo.refIndex;
+        return data2[index];
     }
 
     /**
@@ -712,8 +803,7 @@ public final class ConstPool
      */
     public int getMethodTypeInfo(int index)
     {
-        MethodTypeInfo mtinfo = (MethodTypeInfo)getItem(index);
-        return mtinfo.descriptor;
+        return data1[index];
     }
 
     /**
@@ -725,8 +815,7 @@ public final class ConstPool
      */
     public int getInvokeDynamicBootstrap(int index)
     {
-        InvokeDynamicInfo iv = (InvokeDynamicInfo)getItem(index);
-        return iv.bootstrap;
+        return data1[index];
     }
 
     /**
@@ -738,8 +827,7 @@ public final class ConstPool
      */
     public int getInvokeDynamicNameAndType(int index)
     {
-        InvokeDynamicInfo iv = (InvokeDynamicInfo)getItem(index);
-        return iv.nameAndType;
+        return data2[index];
     }
 
     /**
@@ -753,13 +841,20 @@ public final class ConstPool
      */
     public String getInvokeDynamicType(int index)
     {
-        InvokeDynamicInfo iv = (InvokeDynamicInfo)getItem(index);
-        if (iv == null)
+        return getNameAndTypeUtf8(index, data2);
+    }
+
+    /* Reads the name or the descriptor of the NameAndType entry
+     * referred to by the second field of the entry at the given index.
+     */
+    private String getNameAndTypeUtf8(int index, int[] field)
+    {
+        if (!exists(index))
             return null;
-        NameAndTypeInfo n = (NameAndTypeInfo)getItem(iv.nameAndType);
-        if(n == null)
+        int nt = data2[index];
+        if (!exists(nt))
             return null;
-        return getUtf8Info(n.typeDescriptor);
+        return getUtf8Info(field[nt]);
     }
 
     /**
@@ -771,8 +866,7 @@ public final class ConstPool
      */
     public String getModuleInfo(int index)
     {
-        ModuleInfo mi = (ModuleInfo)getItem(index);
-        return getUtf8Info(mi.name);
+        return getUtf8Info(data1[index]);
     }
 
     /**
@@ -785,8 +879,7 @@ public final class ConstPool
      */
     public String getPackageInfo(int index)
     {
-        PackageInfo mi = (PackageInfo)getItem(index);
-        return getUtf8Info(mi.name);
+        return getUtf8Info(data1[index]);
     }
 
     /**
@@ -822,12 +915,10 @@ public final class ConstPool
      */
     public int isMember(String classname, String membername, int index)
     {
-        MemberrefInfo minfo = (MemberrefInfo)getItem(index);
-        if (getClassInfo(minfo.classIndex).equals(classname)) {
-            NameAndTypeInfo ntinfo
-                = (NameAndTypeInfo)getItem(minfo.nameAndTypeIndex);
-            if (getUtf8Info(ntinfo.memberName).equals(membername))
-                return ntinfo.typeDescriptor;
+        if (getClassInfo(data1[index]).equals(classname)) {
+            int nt = data2[index];
+            if (getUtf8Info(data1[nt]).equals(membername))
+                return data2[nt];
         }
 
         return 0;       // false
@@ -852,34 +943,193 @@ public final class ConstPool
      */
     public String eqMember(String membername, String desc, int index)
     {
-        MemberrefInfo minfo = (MemberrefInfo)getItem(index);
-        NameAndTypeInfo ntinfo
-                = (NameAndTypeInfo)getItem(minfo.nameAndTypeIndex);
-        if (getUtf8Info(ntinfo.memberName).equals(membername)
-            && getUtf8Info(ntinfo.typeDescriptor).equals(desc))
-            return getClassInfo(minfo.classIndex);
+        int nt = data2[index];
+        if (getUtf8Info(data1[nt]).equals(membername)
+            && getUtf8Info(data2[nt]).equals(desc))
+            return getClassInfo(data1[index]);
         return null;       // false
     }
 
-    private int addItem0(ConstInfo info)
+    private void allocate(int capacity)
     {
-        items.addElement(info);
-        return numOfItems++;
+        tags = new byte[capacity];
+        data1 = new int[capacity];
+        data2 = new int[capacity];
+        strings = new String[capacity];
     }
 
-    private int addItem(ConstInfo info)
+    private void ensureCapacity(int size)
     {
-        if (itemsCache == null)
-            itemsCache = makeItemsCache(items);
+        int capacity = tags.length;
+        if (size <= capacity)
+            return;
 
-        ConstInfo found = itemsCache.get(info);
-        if (found != null)
-            return found.index;
-        items.addElement(info);
-        itemsCache.put(info, info);
+        do {
+            capacity *= 2;
+        } while (capacity < size);
+
+        byte[] newTags = new byte[capacity];
+        int[] newData1 = new int[capacity];
+        int[] newData2 = new int[capacity];
+        String[] newStrings = new String[capacity];
+        int n = numOfItems;
+        System.arraycopy(tags, 0, newTags, 0, n);
+        System.arraycopy(data1, 0, newData1, 0, n);
+        System.arraycopy(data2, 0, newData2, 0, n);
+        System.arraycopy(strings, 0, newStrings, 0, n);
+        tags = newTags;
+        data1 = newData1;
+        data2 = newData2;
+        strings = newStrings;
+    }
+
+    private int addItem0(int tag, int value1, int value2, String str)
+    {
+        int n = numOfItems;
+        ensureCapacity(n + 1);
+        tags[n] = (byte)tag;
+        data1[n] = value1;
+        data2[n] = value2;
+        strings[n] = str;
         return numOfItems++;
     }
 
+    /* Adds an entry unless the same entry already exists.
+     * The entry is first appended and then it is compared with
+     * the existing ones.  It is removed if it is found.
+     */
+    private int addItem(int tag, int value1, int value2, String str)
+    {
+        if (hashTable == null)
+            makeHashTable();
+
+        int n = addItem0(tag, value1, value2, str);
+        int found = findOrInsert(n);
+        if (found != n) {
+            strings[n] = null;
+            numOfItems--;
+        }
+        else if (str != null && stringTable != null)
+            strings[n] = stringTable.intern(str);
+
+        return found;
+    }
+
+    private void makeHashTable()
+    {
+        int size = 64;
+        while (size < numOfItems * 2)
+            size *= 2;
+
+        hashTable = new int[size];
+        hashUsed = 0;
+        for (int i = 1; i < numOfItems; i++)
+            if (tags[i] != 0)
+                findOrInsert(i);
+    }
+
+    private int hashOf(int i)
+    {
+        int h;
+        if (tags[i] == Utf8Info.tag)
+            h = strings[i].hashCode();
+        else
+            h = (tags[i] * 31 + data1[i]) * 31 + data2[i];
+
+        h *= 0x9e3779b9;
+        return h ^ (h >>> 16);
+    }
+
+    private boolean isSameItem(int i, int j)
+    {
+        if (tags[i] != tags[j])
+            return false;
+        else if (tags[i] == Utf8Info.tag)
+            return strings[i].equals(strings[j]);
+        else
+            return data1[i] == data1[j] && data2[i] == data2[j];
+    }
+
+    /* Returns the index of the entry equivalent to the i-th entry.
+     * If it is not found, this records the i-th entry in the hash table
+     * and returns i.
+     */
+    private int findOrInsert(int i)
+    {
+        int[] table = hashTable;
+        int mask = table.length - 1;
+        int slot = hashOf(i) & mask;
+        int free = -1;
+        int k;
+        while ((k = table[slot]) != 0) {
+            if (k == DELETED) {
+                if (free < 0)
+                    free = slot;
+            }
+            else if (k == i || isSameItem(k, i))
+                return k;
+
+            slot = (slot + 1) & mask;
+        }
+
+        if (free >= 0)
+            table[free] = i;
+        else {
+            table[slot] = i;
+            if (++hashUsed * 2 > table.length)
+                makeHashTable();
+        }
+
+        return i;
+    }
+
+    /* Removes the i-th entry from the hash table.
+     * This must be called before the entry is changed.
+     */
+    private void removeFromHashTable(int i)
+    {
+        int[] table = hashTable;
+        int mask = table.length - 1;
+        int slot = hashOf(i) & mask;
+        int k;
+        while ((k = table[slot]) != 0) {
+            if (k == i) {
+                table[slot] = DELETED;
+                return;
+            }
+
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    /* Changes the index recorded in the first field (data1) of
+     * the i-th entry.  The hash table is updated as well.
+     */
+    private void setData1(int i, int value)
+    {
+        if (hashTable == null)
+            data1[i] = value;
+        else {
+            removeFromHashTable(i);
+            data1[i] = value;
+            findOrInsert(i);
+        }
+    }
+
+    /* Changes the index recorded in the second field (data2) of
+     * the i-th entry.  The hash table is updated as well.
+     */
+    private void setData2(int i, int value)
+    {
+        if (hashTable == null)
+            data2[i] = value;
+        else {
+            removeFromHashTable(i);
+            data2[i] = value;
+            findOrInsert(i);
+        }
+    }
+
     /**
      * Copies the n-th item in this ConstPool object into the destination
      * ConstPool object.
@@ -896,12 +1146,72 @@ public final class ConstPool
         if (n == 0)
             return 0;
 
-        ConstInfo info = getItem(n);
-        return info.copy(this, dest, classnames);
+        // ** classnames is a mapping between JVM names.
+        switch (tags[n]) {
+        case 0 :
+            return dest.addConstInfoPadding();
+        case Utf8Info.tag :
+            return dest.addUtf8Info(strings[n]);
+        case IntegerInfo.tag :
+            return dest.addIntegerInfo(data1[n]);
+        case FloatInfo.tag :
+            return dest.addItem(FloatInfo.tag, data1[n], 0, null);
+        case LongInfo.tag :
+            return dest.addLongInfo(getLongInfo(n));
+        case DoubleInfo.tag :
+            return dest.addDoubleInfo(getDoubleInfo(n));
+        case ClassInfo.tag : {
+            String classname = getUtf8Info(data1[n]);
+            if (classnames != null) {
+                String newname = classnames.get(classname);
+                if (newname != null)
+                    classname = newname;
+            }
+
+            return dest.addClassInfo(classname);
+        }
+        case StringInfo.tag :
+            return dest.addStringInfo(getUtf8Info(data1[n]));
+        case FieldrefInfo.tag :
+            return dest.addFieldrefInfo(copy(data1[n], dest, classnames),
+                                        copy(data2[n], dest, classnames));
+        case MethodrefInfo.tag :
+            return dest.addMethodrefInfo(copy(data1[n], dest, classnames),
+                                         copy(data2[n], dest, classnames));
+        case InterfaceMethodrefInfo.tag :
+            return dest.addInterfaceMethodrefInfo(
+                                copy(data1[n], dest, classnames),
+                                copy(data2[n], dest, classnames));
+        case NameAndTypeInfo.tag : {
+            String mname = getUtf8Info(data1[n]);
+            String tdesc = getUtf8Info(data2[n]);
+            tdesc = Descriptor.rename(tdesc, classnames);
+            return dest.addNameAndTypeInfo(dest.addUtf8Info(mname),
+                                           dest.addUtf8Info(tdesc));
+        }
+        case MethodHandleInfo.tag :
+            return dest.addMethodHandleInfo(data1[n],
+                                    copy(data2[n], dest, classnames));
+        case MethodTypeInfo.tag : {
+            String desc = getUtf8Info(data1[n]);
+            desc = Descriptor.rename(desc, classnames);
+            return dest.addMethodTypeInfo(dest.addUtf8Info(desc));
+        }
+        case InvokeDynamicInfo.tag :
+            return dest.addInvokeDynamicInfo(data1[n],
+                                    copy(data2[n], dest, classnames));
+        case ModuleInfo.tag :
+            return dest.addModuleInfo(dest.addUtf8Info(getUtf8Info(data1[n])));
+        case PackageInfo.tag :
+            return dest.addPackageInfo(dest.addUtf8Info(getUtf8Info(data1[n])));
+        default :
+            throw new RuntimeException("invalid constant type: "
+                                       + tags[n] + " at " + n);
+        }
     }
 
     int addConstInfoPadding() {
-        return addItem0(new ConstInfoPadding(numOfItems));
+        return addItem0(0, 0, 0, null);
     }
 
     /**
@@ -940,8 +1250,14 @@ public final class ConstPool
      */
     public int addClassInfo(String qname)
     {
-        int utf8 = addUtf8Info(Descriptor.toJvmName(qname));
-        return addItem(new ClassInfo(utf8, numOfItems));
+        String name;
+        if (stringTable == null)
+            name = Descriptor.toJvmName(qname);
+        else
+            name = stringTable.toJvmName(qname);
+
+        int utf8 = addUtf8Info(name);
+        return addItem(ClassInfo.tag, utf8, 0, null);
     }
 
     /**
@@ -967,7 +1283,7 @@ public final class ConstPool
      */
     public int addNameAndTypeInfo(int name, int type)
     {
-        return addItem(new NameAndTypeInfo(name, type, numOfItems));
+        return addItem(NameAndTypeInfo.tag, name, type, null);
     }
 
     /**
@@ -998,8 +1314,8 @@ public final class ConstPool
      */
     public int addFieldrefInfo(int classInfo, int nameAndTypeInfo) 
     {
-        return addItem(new FieldrefInfo(classInfo, nameAndTypeInfo,
-                                        numOfItems));
+        return addItem(FieldrefInfo.tag, classInfo, nameAndTypeInfo,
+                       null);
     }
 
     /**
@@ -1030,8 +1346,8 @@ public final class ConstPool
      */
     public int addMethodrefInfo(int classInfo, int nameAndTypeInfo)
     {
-         return addItem(new MethodrefInfo(classInfo,
-                 nameAndTypeInfo, numOfItems));
+        return addItem(MethodrefInfo.tag, classInfo, nameAndTypeInfo,
+                       null);
     }
 
     /**
@@ -1067,9 +1383,8 @@ public final class ConstPool
     public int addInterfaceMethodrefInfo(int classInfo,
                                          int nameAndTypeInfo)
     {
-        return addItem(new InterfaceMethodrefInfo(classInfo,
-                                                  nameAndTypeInfo,
-                                                  numOfItems));
+        return addItem(InterfaceMethodrefInfo.tag, classInfo,
+                       nameAndTypeInfo, null);
     }
 
     /**
@@ -1084,7 +1399,7 @@ public final class ConstPool
     public int addStringInfo(String str)
     {
         int utf = addUtf8Info(str);
-        return addItem(new StringInfo(utf, numOfItems));
+        return addItem(StringInfo.tag, utf, 0, null);
     }
 
     /**
@@ -1095,7 +1410,7 @@ public final class ConstPool
      */
     public int addIntegerInfo(int i)
     {
-        return addItem(new IntegerInfo(i, numOfItems));
+        return addItem(IntegerInfo.tag, i, 0, null);
     }
 
     /**
@@ -1106,7 +1421,7 @@ public final class ConstPool
      */
     public int addFloatInfo(float f)
     {
-        return addItem(new FloatInfo(f, numOfItems));
+        return addItem(FloatInfo.tag, Float.floatToIntBits(f), 0, null);
     }
 
     /**
@@ -1117,7 +1432,7 @@ public final class ConstPool
      */
     public int addLongInfo(long l)
     {
-        int i = addItem(new LongInfo(l, numOfItems));
+        int i = addItem(LongInfo.tag, (int)(l >>> 32), (int)l, null);
         if (i == numOfItems - 1)    // if not existing
             addConstInfoPadding();
 
@@ -1132,7 +1447,8 @@ public final class ConstPool
      */
     public int addDoubleInfo(double d)
     {
-        int i = addItem(new DoubleInfo(d, numOfItems));
+        long l = Double.doubleToLongBits(d);
+        int i = addItem(DoubleInfo.tag, (int)(l >>> 32), (int)l, null);
         if (i == numOfItems - 1)    // if not existing
             addConstInfoPadding();
 
@@ -1147,7 +1463,7 @@ public final class ConstPool
      */
     public int addUtf8Info(String utf8)
     {
-        return addItem(new Utf8Info(utf8, numOfItems));
+        return addItem(Utf8Info.tag, 0, 0, utf8);
     }
 
     /**
@@ -1163,7 +1479,7 @@ public final class ConstPool
      */
     public int addMethodHandleInfo(int kind, int index)
     {
-        return addItem(new MethodHandleInfo(kind, index, numOfItems));
+        return addItem(MethodHandleInfo.tag, kind, index, null);
     }
 
     /**
@@ -1177,7 +1493,7 @@ public final class ConstPool
      */
     public int addMethodTypeInfo(int desc)
     {
-        return addItem(new MethodTypeInfo(desc, numOfItems));
+        return addItem(MethodTypeInfo.tag, desc, 0, null);
     }
 
     /**
@@ -1192,7 +1508,7 @@ public final class ConstPool
      */
     public int addInvokeDynamicInfo(int bootstrap, int nameAndType)
     {
-        return addItem(new InvokeDynamicInfo(bootstrap, nameAndType, numOfItems));
+        return addItem(InvokeDynamicInfo.tag, bootstrap, nameAndType, null);
     }
 
     /**
@@ -1203,7 +1519,7 @@ public final class ConstPool
      */
     public int addModuleInfo(int nameIndex)
     {
-        return addItem(new ModuleInfo(nameIndex, numOfItems));
+        return addItem(ModuleInfo.tag, nameIndex, 0, null);
     }
 
     /**
@@ -1214,7 +1530,7 @@ public final class ConstPool
      */
     public int addPackageInfo(int nameIndex)
     {
-        return addItem(new PackageInfo(nameIndex, numOfItems));
+        return addItem(PackageInfo.tag, nameIndex, 0, null);
     }
 
     /**
@@ -1225,13 +1541,11 @@ public final class ConstPool
     public Set<String> getClassNames()
     {
         Set<String> result = new HashSet<String>();
-        LongVector v = items;
         int size = numOfItems;
-        for (int i = 1; i < size; ++i) {
-            String className = v.elementAt(i).getClassName(this);
-            if (className != null)
-               result.add(className);
-        }
+        for (int i = 1; i < size; ++i)
+            if (tags[i] == ClassInfo.tag)
+               result.add(getUtf8Info(data1[i]));
+
         return result;
     }
 
@@ -1243,11 +1557,43 @@ public final class ConstPool
      */
     public void renameClass(String oldName, String newName)
     {
-        LongVector v = items;
+        original = null;
         int size = numOfItems;
         for (int i = 1; i < size; ++i) {
-            ConstInfo ci = v.elementAt(i);
-            ci.renameClass(this, oldName, newName, itemsCache);
+            switch (tags[i]) {
+            case ClassInfo.tag : {
+                String nameStr = getUtf8Info(data1[i]);
+                String newNameStr = null;
+                if (nameStr.equals(oldName))
+                    newNameStr = newName;
+                else if (nameStr.charAt(0) == '[') {
+                    String s = Descriptor.rename(nameStr, oldName, newName);
+                    if (nameStr != s)
+                        newNameStr = s;
+                }
+
+                if (newNameStr != null)
+                    setData1(i, addUtf8Info(newNameStr));
+
+                break;
+            }
+            case NameAndTypeInfo.tag : {
+                String type = getUtf8Info(data2[i]);
+                String type2 = Descriptor.rename(type, oldName, newName);
+                if (type != type2)
+                    setData2(i, addUtf8Info(type2));
+
+                break;
+            }
+            case MethodTypeInfo.tag : {
+                String desc = getUtf8Info(data1[i]);
+                String desc2 = Descriptor.rename(desc, oldName, newName);
+                if (desc != desc2)
+                    setData1(i, addUtf8Info(desc2));
+
+                break;
+            }
+            }
         }
     }
 
@@ -1259,11 +1605,59 @@ public final class ConstPool
      */
     public void renameClass(Map<String,String> classnames)
     {
-        LongVector v = items;
+        original = null;
+        renameClass0(classnames);
+    }
+
+    /* Collects class names.  The given map must not substitute any name.
+     * See ClassFile#getRefClasses().
+     */
+    void getRefClasses(Map<String,String> classnames)
+    {
+        renameClass0(classnames);
+    }
+
+    private void renameClass0(Map<String,String> map)
+    {
         int size = numOfItems;
         for (int i = 1; i < size; ++i) {
-            ConstInfo ci = v.elementAt(i);
-            ci.renameClass(this, classnames, itemsCache);
+            switch (tags[i]) {
+            case ClassInfo.tag : {
+                String oldName = getUtf8Info(data1[i]);
+                String newName = null;
+                if (oldName.charAt(0) == '[') {
+                    String s = Descriptor.rename(oldName, map);
+                    if (oldName != s)
+                        newName = s;
+                }
+                else {
+                    String s = map.get(oldName);
+                    if (s != null && !s.equals(oldName))
+                        newName = s;
+                }
+
+                if (newName != null)
+                    setData1(i, addUtf8Info(newName));
+
+                break;
+            }
+            case NameAndTypeInfo.tag : {
+                String type = getUtf8Info(data2[i]);
+                String type2 = Descriptor.rename(type, map);
+                if (type != type2)
+                    setData2(i, addUtf8Info(type2));
+
+                break;
+            }
+            case MethodTypeInfo.tag : {
+                String desc = getUtf8Info(data1[i]);
+                String desc2 = Descriptor.rename(desc, map);
+                if (desc != desc2)
+                    setData1(i, addUtf8Info(desc2));
+
+                break;
+            }
+            }
         }
     }
 
@@ -1271,9 +1665,8 @@ public final class ConstPool
     {
         int n = in.readUnsignedShort();
 
-        items = new LongVector(n);
-        numOfItems = 0;
-        addItem0(null);          // index 0 is reserved by the JVM.
+        allocate(Math.max(n, 1) + 16);
+        numOfItems = 1;         // index 0 is reserved by the JVM.
 
         while (--n > 0) {       // index 0 is reserved by JVM
             int tag = readOne(in);
@@ -1284,79 +1677,49 @@ public final class ConstPool
         }
     }
 
-    private static Map<ConstInfo,ConstInfo> makeItemsCache(LongVector items)
-    {
-        Map<ConstInfo,ConstInfo> cache = new HashMap<ConstInfo,ConstInfo>();
-        int i = 1;
-        while (true) {
-            ConstInfo info = items.elementAt(i++);
-            if (info == null)
-                break;
-            cache.put(info, info);
-        }
-
-        return cache;
-    }
-
     private int readOne(DataInputStream in) throws IOException
     {
-        ConstInfo info;
         int tag = in.readUnsignedByte();
+        int value1 = 0, value2 = 0;
+        String str = null;
         switch (tag) {
         case Utf8Info.tag :                     // 1
-            info = new Utf8Info(in, numOfItems);
+            str = in.readUTF();
             break;
         case IntegerInfo.tag :                  // 3
-            info = new IntegerInfo(in, numOfItems);
-            break;
         case FloatInfo.tag :                    // 4
-            info = new FloatInfo(in, numOfItems);
+            value1 = in.readInt();
             break;
         case LongInfo.tag :                     // 5
-            info = new LongInfo(in, numOfItems);
-            break;
         case DoubleInfo.tag :                   // 6
-            info = new DoubleInfo(in, numOfItems);
+            value1 = in.readInt();
+            value2 = in.readInt();
             break;
         case ClassInfo.tag :                    // 7
-            info = new ClassInfo(in, numOfItems);
-            break;
         case StringInfo.tag :                   // 8
-            info = new StringInfo(in, numOfItems);
+        case MethodTypeInfo.tag :               // 16
+        case ModuleInfo.tag :                   // 19
+        case PackageInfo.tag :                  // 20
+            value1 = in.readUnsignedShort();
             break;
         case FieldrefInfo.tag :                 // 9
-            info = new FieldrefInfo(in, numOfItems);
-            break;
         case MethodrefInfo.tag :                // 10
-            info = new MethodrefInfo(in, numOfItems);
-            break;
         case InterfaceMethodrefInfo.tag :       // 11
-            info = new InterfaceMethodrefInfo(in, numOfItems);
-            break;
         case NameAndTypeInfo.tag :              // 12
-            info = new NameAndTypeInfo(in, numOfItems);
-            break;
-        case MethodHandleInfo.tag :             // 15
-            info = new MethodHandleInfo(in, numOfItems);
-            break;
-        case MethodTypeInfo.tag :               // 16
-            info = new MethodTypeInfo(in, numOfItems);
-            break;
         case InvokeDynamicInfo.tag :            // 18
-            info = new InvokeDynamicInfo(in, numOfItems);
+            value1 = in.readUnsignedShort();
+            value2 = in.readUnsignedShort();
             break;
-        case ModuleInfo.tag :                   // 19
-            info = new ModuleInfo(in, numOfItems);
-            break;
-        case PackageInfo.tag :                  // 20
-            info = new PackageInfo(in, numOfItems);
+        case MethodHandleInfo.tag :             // 15
+            value1 = in.readUnsignedByte();
+            value2 = in.readUnsignedShort();
             break;
         default :
             throw new IOException("invalid constant type: " 
                                 + tag + " at " + numOfItems);
         }
 
-        addItem0(info);
+        addItem0(tag, value1, value2, str);
         return tag;
     }
 
@@ -1366,10 +1729,120 @@ public final class ConstPool
     public void write(DataOutputStream out) throws IOException
     {
         out.writeShort(numOfItems);
-        LongVector v = items;
+        int i = 1;
+        ByteRange range = original;
+        if (range != null) {
+            range.write(out);
+            i = originalItems;
+        }
+
+        byte[] tags = this.tags;
+        int[] data1 = this.data1;
+        int[] data2 = this.data2;
         int size = numOfItems;
-        for (int i = 1; i < size; ++i)
-            v.elementAt(i).write(out);
+        for (; i < size; ++i) {
+            int tag = tags[i];
+            switch (tag) {
+            case 0 :            // padding
+                break;
+            case Utf8Info.tag :
+                out.writeByte(tag);
+                out.writeUTF(strings[i]);
+                break;
+            case IntegerInfo.tag :
+            case FloatInfo.tag :
+                out.writeByte(tag);
+                out.writeInt(data1[i]);
+                break;
+            case LongInfo.tag :
+            case DoubleInfo.tag :
+                out.writeByte(tag);
+                out.writeInt(data1[i]);
+                out.writeInt(data2[i]);
+                break;
+            case FieldrefInfo.tag :
+            case MethodrefInfo.tag :
+            case InterfaceMethodrefInfo.tag :
+            case NameAndTypeInfo.tag :
+            case InvokeDynamicInfo.tag :
+                out.writeByte(tag);
+                out.writeShort(data1[i]);
+                out.writeShort(data2[i]);
+                break;
+            case MethodHandleInfo.tag :
+                out.writeByte(tag);
+                out.writeByte(data1[i]);
+                out.writeShort(data2[i]);
+                break;
+            default :
+                out.writeByte(tag);
+                out.writeShort(data1[i]);
+            }
+        }
+    }
+
+    /**
+     * Returns the number of bytes written by <code>write()</code>.
+     * It includes the two bytes of <code>constant_pool_count</code>.
+     *
+     * @since 3.25
+     */
+    public int length()
+    {
+        int len = 2;
+        int i = 1;
+        ByteRange range = original;
+        if (range != null) {
+            len += range.length();
+            i = originalItems;
+        }
+
+        int size = numOfItems;
+        for (; i < size; ++i) {
+            switch (tags[i]) {
+            case 0 :            // padding
+                break;
+            case CONST_Utf8 :
+                len += 3 + utf8Length(strings[i]);
+                break;
+            case CONST_Long :
+            case CONST_Double :
+                len += 9;
+                break;
+            case CONST_Integer :
+            case CONST_Float :
+            case CONST_Fieldref :
+            case CONST_Methodref :
+            case CONST_InterfaceMethodref :
+            case CONST_NameAndType :
+            case CONST_InvokeDynamic :
+                len += 5;
+                break;
+            case CONST_MethodHandle :
+                len += 4;
+                break;
+            default :
+                len += 3;
+            }
+        }
+
+        return len;
+    }
+
+    /* the length of the string in modified UTF-8.
+     */
+    private static int utf8Length(String s) {
+        int n = s.length();
+        int len = n;
+        for (int i = 0; i < n; i++) {
+            int c = s.charAt(i);
+            if (c > 0x7ff)
+                len += 2;
+            else if (c == 0 || c > 0x7f)
+                len++;
+        }
+
+        return len;
     }
 
     /**
@@ -1389,11 +1862,14 @@ public final class ConstPool
         for (int i = 1; i < size; ++i) {
             out.print(i);
             out.print(" ");
-            items.elementAt(i).print(out);
+            getItem(i).print(out);
         }
     }
 }
 
+/* A snapshot of a constant pool entry.  The entries are not stored
+ * as ConstInfo objects; ConstPool.getItem() constructs them on demand.
+ */
 abstract class ConstInfo
 {
     int index;
@@ -1402,16 +1878,6 @@ abstract class ConstInfo
 
     public abstract int getTag();
 
-    public String getClassName(ConstPool cp) { return null; }
-    public void renameClass(ConstPool cp, String oldName, String newName,
-            Map<ConstInfo,ConstInfo> cache) {}
-    public void renameClass(ConstPool cp, Map<String,String> classnames,
-            Map<ConstInfo,ConstInfo> cache) {}
-    public abstract int copy(ConstPool src, ConstPool dest,
-            Map<String, String> classnames);
-        // ** classnames is a mapping between JVM names.
-
-    public abstract void write(DataOutputStream out) throws IOException;
     public abstract void print(PrintWriter out);
 
     @Override
@@ -1432,15 +1898,6 @@ class ConstInfoPadding extends ConstInfo
     @Override
     public int getTag() { return 0; }
 
-    @Override
-    public int copy(ConstPool src, ConstPool dest, Map<String,String> map)
-    {
-        return dest.addConstInfoPadding();
-    }
-
-    @Override
-    public void write(DataOutputStream out) throws IOException {}
-
     @Override
     public void print(PrintWriter out)
     {
@@ -1459,12 +1916,6 @@ class ClassInfo extends ConstInfo
         name = className;
     }
 
-    public ClassInfo(DataInputStream in, int index) throws IOException
-    {
-        super(index);
-        name = in.readUnsignedShort();
-    }
-
     @Override
     public int hashCode() { return name; }
 
@@ -1477,84 +1928,6 @@ class ClassInfo extends ConstInfo
     @Override
     public int getTag() { return tag; }
 
-    @Override
-    public String getClassName(ConstPool cp)
-    {
-        return cp.getUtf8Info(name);
-    }
-
-    @Override
-    public void renameClass(ConstPool cp, String oldName, String newName,
-            Map<ConstInfo,ConstInfo> cache)
-    {
-        String nameStr = cp.getUtf8Info(name);
-        String newNameStr = null;
-        if (nameStr.equals(oldName))
-            newNameStr = newName;
-        else if (nameStr.charAt(0) == '[') {
-            String s = Descriptor.rename(nameStr, oldName, newName);
-            if (nameStr != s)
-                newNameStr = s;
-        }
-
-        if (newNameStr != null)
-            if (cache == null)
-                name = cp.addUtf8Info(newNameStr);
-            else {
-                cache.remove(this);
-                name = cp.addUtf8Info(newNameStr);
-                cache.put(this, this);
-            }
-    }
-
-    @Override
-    public void renameClass(ConstPool cp, Map<String,String> map,
-            Map<ConstInfo,ConstInfo> cache)
-    {
-        String oldName = cp.getUtf8Info(name);
-        String newName = null;
-        if (oldName.charAt(0) == '[') {
-            String s = Descriptor.rename(oldName, map);
-            if (oldName != s)
-                newName = s;
-        }
-        else {
-            String s = map.get(oldName);
-            if (s != null && !s.equals(oldName))
-                newName = s;
-        }
-
-        if (newName != null) {
-            if (cache == null)
-                name = cp.addUtf8Info(newName);
-            else {
-                cache.remove(this);
-                name = cp.addUtf8Info(newName);
-                cache.put(this, this);
-            }
-        }
-    }
-
-    @Override
-    public int copy(ConstPool src, ConstPool dest, Map<String,String> map)
-    {
-        String classname = src.getUtf8Info(name);
-        if (map != null) {
-            String newname = map.get(classname);
-            if (newname != null)
-                classname = newname;
-        }
-
-        return dest.addClassInfo(classname);
-    }
-
-    @Override
-    public void write(DataOutputStream out) throws IOException
-    {
-        out.writeByte(tag);
-        out.writeShort(name);
-    }
-
     @Override
     public void print(PrintWriter out)
     {
@@ -1576,13 +1949,6 @@ class NameAndTypeInfo extends ConstInfo
         typeDescriptor = type;
     }
 
-    public NameAndTypeInfo(DataInputStream in, int index) throws IOException
-    {
-        super(index);
-        memberName = in.readUnsignedShort();
-        typeDescriptor = in.readUnsignedShort();
-    }
-
     @Override
     public int hashCode() { return (memberName << 16) ^ typeDescriptor; }
 
@@ -1600,55 +1966,6 @@ class NameAndTypeInfo extends ConstInfo
     @Override
     public int getTag() { return tag; }
 
-    @Override
-    public void renameClass(ConstPool cp, String oldName, String newName,
-            Map<ConstInfo,ConstInfo> cache)
-    {
-        String type = cp.getUtf8Info(typeDescriptor);
-        String type2 = Descriptor.rename(type, oldName, newName);
-        if (type != type2)
-            if (cache == null)
-                typeDescriptor = cp.addUtf8Info(type2);
-            else {
-                cache.remove(this);
-                typeDescriptor = cp.addUtf8Info(type2);
-                cache.put(this, this);
-            }
-    }
-
-    @Override
-    public void renameClass(ConstPool cp, Map<String,String> map,
-            Map<ConstInfo,ConstInfo> cache)
-    {
-        String type = cp.getUtf8Info(typeDescriptor);
-        String type2 = Descriptor.rename(type, map);
-        if (type != type2)
-            if (cache == null)
-                typeDescriptor = cp.addUtf8Info(type2);
-            else {
-                cache.remove(this);
-                typeDescriptor = cp.addUtf8Info(type2);
-                cache.put(this, this);
-            }
-    }
-
-    @Override
-    public int copy(ConstPool src, ConstPool dest, Map<String,String> map)
-    {
-        String mname = src.getUtf8Info(memberName);
-        String tdesc = src.getUtf8Info(typeDescriptor);
-        tdesc = Descriptor.rename(tdesc, map);
-        return dest.addNameAndTypeInfo(dest.addUtf8Info(mname),
-                                       dest.addUtf8Info(tdesc));
-    }
-
-    @Override
-    public void write(DataOutputStream out) throws IOException {
-        out.writeByte(tag);
-        out.writeShort(memberName);
-        out.writeShort(typeDescriptor);
-    }
-
     @Override
     public void print(PrintWriter out) {
         out.print("NameAndType #");
@@ -1670,14 +1987,6 @@ abstract class MemberrefInfo extends ConstInfo
         nameAndTypeIndex = ntindex;
     }
 
-    public MemberrefInfo(DataInputStream in, int thisIndex)
-            throws IOException
-    {
-        super(thisIndex);
-        classIndex = in.readUnsignedShort();
-        nameAndTypeIndex = in.readUnsignedShort();
-    }
-
     @Override
     public int hashCode() { return (classIndex << 16) ^ nameAndTypeIndex; }
 
@@ -1692,24 +2001,6 @@ abstract class MemberrefInfo extends ConstInfo
         return false;
     }
 
-    @Override
-    public int copy(ConstPool src, ConstPool dest, Map<String,String> map)
-    {
-        int classIndex2 = src.getItem(classIndex).copy(src, dest, map);
-        int ntIndex2 = src.getItem(nameAndTypeIndex).copy(src, dest, map);
-        return copy2(dest, classIndex2, ntIndex2);
-    }
-
-    abstract protected int copy2(ConstPool dest, int cindex, int ntindex);
-
-    @Override
-    public void write(DataOutputStream out) throws IOException
-    {
-        out.writeByte(getTag());
-        out.writeShort(classIndex);
-        out.writeShort(nameAndTypeIndex);
-    }
-
     @Override
     public void print(PrintWriter out)
     {
@@ -1731,23 +2022,11 @@ class FieldrefInfo extends MemberrefInfo
         super(cindex, ntindex, thisIndex);
     }
 
-    public FieldrefInfo(DataInputStream in, int thisIndex)
-            throws IOException
-    {
-        super(in, thisIndex);
-    }
-
     @Override
     public int getTag() { return tag; }
 
     @Override
     public String getTagName() { return "Field"; }
-
-    @Override
-    protected int copy2(ConstPool dest, int cindex, int ntindex)
-    {
-        return dest.addFieldrefInfo(cindex, ntindex);
-    }
 }
 
 class MethodrefInfo extends MemberrefInfo
@@ -1759,23 +2038,11 @@ class MethodrefInfo extends MemberrefInfo
         super(cindex, ntindex, thisIndex);
     }
 
-    public MethodrefInfo(DataInputStream in, int thisIndex)
-            throws IOException
-    {
-        super(in, thisIndex);
-    }
-
     @Override
     public int getTag() { return tag; }
 
     @Override
     public String getTagName() { return "Method"; }
-
-    @Override
-    protected int copy2(ConstPool dest, int cindex, int ntindex)
-    {
-        return dest.addMethodrefInfo(cindex, ntindex);
-    }
 }
 
 class InterfaceMethodrefInfo extends MemberrefInfo
@@ -1787,23 +2054,11 @@ class InterfaceMethodrefInfo extends MemberrefInfo
         super(cindex, ntindex, thisIndex);
     }
 
-    public InterfaceMethodrefInfo(DataInputStream in, int thisIndex)
-            throws IOException
-    {
-        super(in, thisIndex);
-    }
-
     @Override
     public int getTag() { return tag; }
 
     @Override
     public String getTagName() { return "Interface"; }
-
-    @Override
-    protected int copy2(ConstPool dest, int cindex, int ntindex)
-    {
-        return dest.addInterfaceMethodrefInfo(cindex, ntindex);
-    }
 }
 
 class StringInfo extends ConstInfo
@@ -1817,12 +2072,6 @@ class StringInfo extends ConstInfo
         string = str;
     }
 
-    public StringInfo(DataInputStream in, int index) throws IOException
-    {
-        super(index);
-        string = in.readUnsignedShort();
-    }
-
     @Override
     public int hashCode() { return string; }
 
@@ -1835,19 +2084,6 @@ class StringInfo extends ConstInfo
     @Override
     public int getTag() { return tag; }
 
-    @Override
-    public int copy(ConstPool src, ConstPool dest, Map<String,String> map)
-    {
-        return dest.addStringInfo(src.getUtf8Info(string));
-    }
-
-    @Override
-    public void write(DataOutputStream out) throws IOException
-    {
-        out.writeByte(tag);
-        out.writeShort(string);
-    }
-
     @Override
     public void print(PrintWriter out)
     {
@@ -1867,12 +2103,6 @@ class IntegerInfo extends ConstInfo
         value = v;
     }
 
-    public IntegerInfo(DataInputStream in, int index) throws IOException
-    {
-        super(index);
-        value = in.readInt();
-    }
-
     @Override
     public int hashCode() { return value; }
 
@@ -1885,19 +2115,6 @@ class IntegerInfo extends ConstInfo
     @Override
     public int getTag() { return tag; }
 
-    @Override
-    public int copy(ConstPool src, ConstPool dest, Map<String,String> map)
-    {
-        return dest.addIntegerInfo(value);
-    }
-
-    @Override
-    public void write(DataOutputStream out) throws IOException
-    {
-        out.writeByte(tag);
-        out.writeInt(value);
-    }
-
     @Override
     public void print(PrintWriter out)
     {
@@ -1917,12 +2134,6 @@ class FloatInfo extends ConstInfo
         value = f;
     }
 
-    public FloatInfo(DataInputStream in, int index) throws IOException
-    {
-        super(index);
-        value = in.readFloat();
-    }
-
     @Override
     public int hashCode() { return Float.floatToIntBits(value); }
 
@@ -1935,19 +2146,6 @@ class FloatInfo extends ConstInfo
     @Override
     public int getTag() { return tag; }
 
-    @Override
-    public int copy(ConstPool src, ConstPool dest, Map<String,String> map)
-    {
-        return dest.addFloatInfo(value);
-    }
-
-    @Override
-    public void write(DataOutputStream out) throws IOException
-    {
-        out.writeByte(tag);
-        out.writeFloat(value);
-    }
-
     @Override
     public void print(PrintWriter out)
     {
@@ -1967,12 +2165,6 @@ class LongInfo extends ConstInfo
         value = l;
     }
 
-    public LongInfo(DataInputStream in, int index) throws IOException
-    {
-        super(index);
-        value = in.readLong();
-    }
-
     @Override
     public int hashCode() { return (int)(value ^ (value >>> 32)); }
 
@@ -1984,19 +2176,6 @@ class LongInfo extends ConstInfo
     @Override
     public int getTag() { return tag; }
 
-    @Override
-    public int copy(ConstPool src, ConstPool dest, Map<String,String> map)
-    {
-        return dest.addLongInfo(value);
-    }
-
-    @Override
-    public void write(DataOutputStream out) throws IOException
-    {
-        out.writeByte(tag);
-        out.writeLong(value);
-    }
-
     @Override
     public void print(PrintWriter out)
     {
@@ -2016,12 +2195,6 @@ class DoubleInfo extends ConstInfo
         value = d;
     }
 
-    public DoubleInfo(DataInputStream in, int index) throws IOException
-    {
-        super(index);
-        value = in.readDouble();
-    }
-
     @Override
     public int hashCode() {
         long v = Double.doubleToLongBits(value);
@@ -2038,19 +2211,6 @@ class DoubleInfo extends ConstInfo
     @Override
     public int getTag() { return tag; }
 
-    @Override
-    public int copy(ConstPool src, ConstPool dest, Map<String,String> map)
-    {
-        return dest.addDoubleInfo(value);
-    }
-
-    @Override
-    public void write(DataOutputStream out) throws IOException
-    {
-        out.writeByte(tag);
-        out.writeDouble(value);
-    }
-
     @Override
     public void print(PrintWriter out)
     {
@@ -2070,13 +2230,6 @@ class Utf8Info extends ConstInfo
         string = utf8;
     }
 
-    public Utf8Info(DataInputStream in, int index)
-            throws IOException
-    {
-        super(index);
-        string = in.readUTF();
-    }
-
     @Override
     public int hashCode() {
         return string.hashCode();
@@ -2091,21 +2244,6 @@ class Utf8Info extends ConstInfo
     @Override
     public int getTag() { return tag; }
 
-    @Override
-    public int copy(ConstPool src, ConstPool dest,
-            Map<String,String> map)
-    {
-        return dest.addUtf8Info(string);
-    }
-
-    @Override
-    public void write(DataOutputStream out)
-            throws IOException
-    {
-        out.writeByte(tag);
-        out.writeUTF(string);
-    }
-
     @Override
     public void print(PrintWriter out) {
         out.print("UTF8 \"");
@@ -2124,14 +2262,6 @@ class MethodHandleInfo extends ConstInfo {
         refIndex = referenceIndex;
     }
 
-    public MethodHandleInfo(DataInputStream in, int index)
-            throws IOException
-    {
-        super(index);
-        refKind = in.readUnsignedByte();
-        refIndex = in.readUnsignedShort();
-    }
-
     @Override
     public int hashCode() { return (refKind << 16) ^ refIndex; }
 
@@ -2148,22 +2278,6 @@ class MethodHandleInfo extends ConstInfo {
     @Override
     public int getTag() { return tag; }
 
-    @Override
-    public int copy(ConstPool src, ConstPool dest,
-            Map<String,String> map)
-    {
-       return dest.addMethodHandleInfo(refKind,
-                   src.getItem(refIndex).copy(src, dest, map));
-    }
-
-    @Override
-    public void write(DataOutputStream out) throws IOException
-    {
-        out.writeByte(tag);
-        out.writeByte(refKind);
-        out.writeShort(refIndex);
-    }
-
     @Override
     public void print(PrintWriter out) {
         out.print("MethodHandle #");
@@ -2184,13 +2298,6 @@ class MethodTypeInfo extends ConstInfo
         descriptor = desc;
     }
 
-    public MethodTypeInfo(DataInputStream in, int index)
-            throws IOException
-    {
-        super(index);
-        descriptor = in.readUnsignedShort();
-    }
-
     @Override
     public int hashCode() { return descriptor; }
 
@@ -2205,53 +2312,6 @@ class MethodTypeInfo extends ConstInfo
     @Override
     public int getTag() { return tag; }
 
-    @Override
-    public void renameClass(ConstPool cp, String oldName, String newName,
-            Map<ConstInfo,ConstInfo> cache)
-    {
-        String desc = cp.getUtf8Info(descriptor);
-        String desc2 = Descriptor.rename(desc, oldName, newName);
-        if (desc != desc2)
-            if (cache == null)
-                descriptor = cp.addUtf8Info(desc2);
-            else {
-                cache.remove(this);
-                descriptor = cp.addUtf8Info(desc2);
-                cache.put(this, this);
-            }
-    }
-
-    @Override
-    public void renameClass(ConstPool cp, Map<String,String> map,
-            Map<ConstInfo,ConstInfo> cache)
-    {
-        String desc = cp.getUtf8Info(descriptor);
-        String desc2 = Descriptor.rename(desc, map);
-        if (desc != desc2)
-            if (cache == null)
-                descriptor = cp.addUtf8Info(desc2);
-            else {
-                cache.remove(this);
-                descriptor = cp.addUtf8Info(desc2);
-                cache.put(this, this);
-            }
-    }
-
-    @Override
-    public int copy(ConstPool src, ConstPool dest, Map<String,String> map)
-    {
-        String desc = src.getUtf8Info(descriptor);
-        desc = Descriptor.rename(desc, map);
-        return dest.addMethodTypeInfo(dest.addUtf8Info(desc));
-    }
-
-    @Override
-    public void write(DataOutputStream out) throws IOException
-    {
-        out.writeByte(tag);
-        out.writeShort(descriptor);
-    }
-
     @Override
     public void print(PrintWriter out) {
         out.print("MethodType #");
@@ -2272,14 +2332,6 @@ class InvokeDynamicInfo extends ConstInfo
         nameAndType = ntIndex;
     }
 
-    public InvokeDynamicInfo(DataInputStream in, int index)
-            throws IOException
-    {
-        super(index);
-        bootstrap = in.readUnsignedShort();
-        nameAndType = in.readUnsignedShort();
-    }
-
     @Override
     public int hashCode() { return (bootstrap << 16) ^ nameAndType; }
 
@@ -2297,22 +2349,6 @@ class InvokeDynamicInfo extends ConstInfo
     @Override
     public int getTag() { return tag; }
 
-    @Override
-    public int copy(ConstPool src, ConstPool dest,
-            Map<String,String> map)
-    {
-       return dest.addInvokeDynamicInfo(bootstrap,
-            src.getItem(nameAndType).copy(src, dest, map));
-    }
-
-    @Override
-    public void write(DataOutputStream out) throws IOException
-    {
-        out.writeByte(tag);
-        out.writeShort(bootstrap);
-        out.writeShort(nameAndType);
-    }
-
     @Override
     public void print(PrintWriter out) {
         out.print("InvokeDynamic #");
@@ -2333,13 +2369,6 @@ class ModuleInfo extends ConstInfo
         name = moduleName;
     }
 
-    public ModuleInfo(DataInputStream in, int index)
-            throws IOException
-    {
-        super(index);
-        name = in.readUnsignedShort();
-    }
-
     @Override
     public int hashCode() { return name; }
 
@@ -2353,27 +2382,6 @@ class ModuleInfo extends ConstInfo
     @Override
     public int getTag() { return tag; }
 
-    public String getModuleName(ConstPool cp)
-    {
-        return cp.getUtf8Info(name);
-    }
-
-    @Override
-    public int copy(ConstPool src, ConstPool dest,
-            Map<String,String> map)
-    {
-        String moduleName = src.getUtf8Info(name);
-        int newName = dest.addUtf8Info(moduleName);
-        return dest.addModuleInfo(newName);
-    }
-
-    @Override
-    public void write(DataOutputStream out) throws IOException
-    {
-        out.writeByte(tag);
-        out.writeShort(name);
-    }
-
     @Override
     public void print(PrintWriter out) {
         out.print("Module #");
@@ -2392,13 +2400,6 @@ class PackageInfo extends ConstInfo
         name = moduleName;
     }
 
-    public PackageInfo(DataInputStream in, int index)
-            throws IOException
-    {
-        super(index);
-        name = in.readUnsignedShort();
-    }
-
     @Override
     public int hashCode() { return name; }
 
@@ -2411,27 +2412,6 @@ class PackageInfo extends ConstInfo
     @Override
     public int getTag() { return tag; }
 
-    public String getPackageName(ConstPool cp)
-    {
-        return cp.getUtf8Info(name);
-    }
-
-    @Override
-    public int copy(ConstPool src, ConstPool dest,
-            Map<String,String> map)
-    {
-        String packageName = src.getUtf8Info(name);
-        int newName = dest.addUtf8Info(packageName);
-        return dest.addModuleInfo(newName);
-    }
-
-    @Override
-    public void write(DataOutputStream out) throws IOException
-    {
-        out.writeByte(tag);
-        out.writeShort(name);
-    }
-
     @Override
     public void print(PrintWriter out)
     {
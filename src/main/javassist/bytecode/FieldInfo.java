@@ -45,6 +45,9 @@ public final class FieldInfo {
     int descriptor;
     List<AttributeInfo> attribute;       // may be null.
 
+    // the original bytes if this has not been changed since it was read.
+    private ByteRange original;
+
     private FieldInfo(ConstPool cp) {
         constPool = cp;
         accessFlags = 0;
@@ -89,6 +92,7 @@ public final class FieldInfo {
      * @param cp    the destination
      */
     void compact(ConstPool cp) {
+        changed();
         name = cp.addUtf8Info(getName());
         descriptor = cp.addUtf8Info(getDescriptor());
         attribute = AttributeInfo.copyAll(attribute, cp);
@@ -96,6 +100,7 @@ public final class FieldInfo {
     }
 
     void prune(ConstPool cp) {
+        changed();
         List<AttributeInfo> newAttributes = new ArrayList<AttributeInfo>();
         AttributeInfo invisibleAnnotations
             = getAttribute(AnnotationsAttribute.invisibleTag);
@@ -152,8 +157,10 @@ public final class FieldInfo {
      * Sets the field name.
      */
     public void setName(String newName) {
+        changed();
         name = constPool.addUtf8Info(newName);
         cachedName = newName;
+        constPool.memberRenamed();
     }
 
     /**
@@ -171,6 +178,7 @@ public final class FieldInfo {
      * @see AccessFlag
      */
     public void setAccessFlags(int acc) {
+        changed();
         accessFlags = acc;
     }
 
@@ -189,8 +197,49 @@ public final class FieldInfo {
      * @see Descriptor
      */
     public void setDescriptor(String desc) {
-        if (!desc.equals(getDescriptor()))
+        if (!desc.equals(getDescriptor())) {
+            changed();
             descriptor = constPool.addUtf8Info(desc);
+        }
+    }
+
+    /**
+     * Returns true if this field may have been changed since it was read
+     * from a class file.  It also returns true if this field was not read
+     * from a class file or the class file was not given as a byte array.
+     * Once the attributes are obtained through <code>getAttributes()</code>,
+     * <code>getAttribute()</code>, etc., this field is regarded as
+     * changed since the attributes may be modified later.
+     *
+     * <p>If this method returns false, the original bytes of this
+     * field are copied when the class file is written.
+     *
+     * @see ClassFile#ClassFile(byte[])
+     * @since 3.25
+     */
+    public boolean isChanged() {
+        return original == null;
+    }
+
+    void changed() {
+        original = null;
+    }
+
+    void setOriginal(ByteRange range) {
+        original = range;
+    }
+
+    /* Returns the length of this field_info structure.
+     */
+    int length() {
+        ByteRange range = original;
+        if (range != null)
+            return range.length();
+
+        if (attribute == null)
+            return 8;
+
+        return 8 + AttributeInfo.getLength(attribute);
     }
 
     /**
@@ -204,7 +253,7 @@ public final class FieldInfo {
             return 0;
 
         ConstantAttribute attr
-            = (ConstantAttribute)getAttribute(ConstantAttribute.tag);
+            = (ConstantAttribute)AttributeInfo.lookup(attribute, ConstantAttribute.tag);
         if (attr == null)
             return 0;
         return attr.getConstantValue();
@@ -221,6 +270,7 @@ public final class FieldInfo {
      * @see AttributeInfo
      */
     public List<AttributeInfo> getAttributes() {
+        changed();
         if (attribute == null)
             attribute = new ArrayList<AttributeInfo>();
 
@@ -240,6 +290,7 @@ public final class FieldInfo {
      * @see #getAttributes()
      */
     public AttributeInfo getAttribute(String name) {
+        changed();
         return AttributeInfo.lookup(attribute, name);
     }
 
@@ -251,6 +302,7 @@ public final class FieldInfo {
      * @since 3.21
      */
     public AttributeInfo removeAttribute(String name) {
+        changed();
         return AttributeInfo.remove(attribute, name);
     }
 
@@ -261,6 +313,7 @@ public final class FieldInfo {
      * @see #getAttributes()
      */
     public void addAttribute(AttributeInfo info) {
+        changed();
         if (attribute == null)
             attribute = new ArrayList<AttributeInfo>();
 
@@ -279,6 +332,12 @@ public final class FieldInfo {
     }
 
     void write(DataOutputStream out) throws IOException {
+        ByteRange range = original;
+        if (range != null) {
+            range.write(out);
+            return;
+        }
+
         out.writeShort(accessFlags);
         out.writeShort(name);
         out.writeShort(descriptor);
@@ -61,6 +61,9 @@ public class MethodInfo {
     int descriptor;
     List<AttributeInfo> attribute; // may be null
 
+    // the original bytes if this has not been changed since it was read.
+    private ByteRange original;
+
     /**
      * If this value is true, Javassist maintains a <code>StackMap</code> attribute
      * generated by the <code>preverify</code> tool of J2ME (CLDC).  The initial
@@ -152,6 +155,7 @@ public class MethodInfo {
      * @param cp    the destination
      */
     void compact(ConstPool cp) {
+        changed();
         name = cp.addUtf8Info(getName());
         descriptor = cp.addUtf8Info(getDescriptor());
         attribute = AttributeInfo.copyAll(attribute, cp);
@@ -159,6 +163,7 @@ public class MethodInfo {
     }
 
     void prune(ConstPool cp) {
+        changed();
         List<AttributeInfo> newAttributes = new ArrayList<AttributeInfo>();
 
         AttributeInfo invisibleAnnotations
@@ -225,8 +230,10 @@ public class MethodInfo {
      * Sets a method name.
      */
     public void setName(String newName) {
+        changed();
         name = constPool.addUtf8Info(newName);
         cachedName = newName;
+        constPool.memberRenamed();
     }
 
     /**
@@ -274,6 +281,7 @@ public class MethodInfo {
      * @see AccessFlag
      */
     public void setAccessFlags(int acc) {
+        changed();
         accessFlags = acc;
     }
 
@@ -292,8 +300,49 @@ public class MethodInfo {
      * @see Descriptor
      */
     public void setDescriptor(String desc) {
-        if (!desc.equals(getDescriptor()))
+        if (!desc.equals(getDescriptor())) {
+            changed();
             descriptor = constPool.addUtf8Info(desc);
+        }
+    }
+
+    /**
+     * Returns true if this method may have been changed since it was read
+     * from a class file.  It also returns true if this method was not read
+     * from a class file or the class file was not given as a byte array.
+     * Once the attributes are obtained through <code>getAttributes()</code>,
+     * <code>getAttribute()</code>, etc., this method is regarded as
+     * changed since the attributes may be modified later.
+     *
+     * <p>If this method returns false, the original bytes of this
+     * method are copied when the class file is written.
+     *
+     * @see ClassFile#ClassFile(byte[])
+     * @since 3.25
+     */
+    public boolean isChanged() {
+        return original == null;
+    }
+
+    void changed() {
+        original = null;
+    }
+
+    void setOriginal(ByteRange range) {
+        original = range;
+    }
+
+    /* Returns the length of this method_info structure.
+     */
+    int length() {
+        ByteRange range = original;
+        if (range != null)
+            return range.length();
+
+        if (attribute == null)
+            return 8;
+
+        return 8 + AttributeInfo.getLength(attribute);
     }
 
     /**
@@ -307,6 +356,7 @@ public class MethodInfo {
      * @see AttributeInfo
      */
     public List<AttributeInfo> getAttributes() {
+        changed();
         if (attribute == null)
             attribute = new ArrayList<AttributeInfo>();
 
@@ -327,6 +377,7 @@ public class MethodInfo {
      * @see #getAttributes()
      */
     public AttributeInfo getAttribute(String name) {
+        changed();
         return AttributeInfo.lookup(attribute, name);
     }
 
@@ -338,6 +389,7 @@ public class MethodInfo {
      * @since 3.21
      */
     public AttributeInfo removeAttribute(String name) {
+        changed();
         return AttributeInfo.remove(attribute, name);
     }
 
@@ -348,6 +400,7 @@ public class MethodInfo {
      * @see #getAttributes()
      */
     public void addAttribute(AttributeInfo info) {
+        changed();
         if (attribute == null)
             attribute = new ArrayList<AttributeInfo>();
 
@@ -361,6 +414,7 @@ public class MethodInfo {
      * @return an Exceptions attribute or null if it is not specified.
      */
     public ExceptionsAttribute getExceptionsAttribute() {
+        changed();
         AttributeInfo info = AttributeInfo.lookup(attribute,
                 ExceptionsAttribute.tag);
         return (ExceptionsAttribute)info;
@@ -372,6 +426,7 @@ public class MethodInfo {
      * @return a Code attribute or null if it is not specified.
      */
     public CodeAttribute getCodeAttribute() {
+        changed();
         AttributeInfo info = AttributeInfo.lookup(attribute, CodeAttribute.tag);
         return (CodeAttribute)info;
     }
@@ -380,6 +435,7 @@ public class MethodInfo {
      * Removes an Exception attribute.
      */
     public void removeExceptionsAttribute() {
+        changed();
         AttributeInfo.remove(attribute, ExceptionsAttribute.tag);
     }
 
@@ -391,6 +447,7 @@ public class MethodInfo {
      * <code>method_info</code> structure.
      */
     public void setExceptionsAttribute(ExceptionsAttribute cattr) {
+        changed();
         removeExceptionsAttribute();
         if (attribute == null)
             attribute = new ArrayList<AttributeInfo>();
@@ -402,6 +459,7 @@ public class MethodInfo {
      * Removes a Code attribute.
      */
     public void removeCodeAttribute() {
+        changed();
         AttributeInfo.remove(attribute, CodeAttribute.tag);
     }
 
@@ -413,6 +471,7 @@ public class MethodInfo {
      * <code>method_info</code> structure.
      */
     public void setCodeAttribute(CodeAttribute cattr) {
+        changed();
         removeCodeAttribute();
         if (attribute == null)
             attribute = new ArrayList<AttributeInfo>();
@@ -425,17 +484,23 @@ public class MethodInfo {
      * or later.  Java 5 or older Java VMs do not recognize a stack
      * map table.  If <code>doPreverify</code> is true, this method
      * also rebuilds a stack map for J2ME (CLDC).  
+     * If the rebuild is deferred by the class file, this method only
+     * records this method in the class file.
      *
      * @param pool          used for making type hierarchy.
      * @param cf            rebuild if this class file is for Java 6 or later.
      * @see #rebuildStackMap(ClassPool)
      * @see #rebuildStackMapForME(ClassPool)
      * @see #doPreverify
+     * @see ClassFile#deferStackMaps(boolean)
      * @since 3.6
      */
     public void rebuildStackMapIf6(ClassPool pool, ClassFile cf)
         throws BadBytecode
     {
+        if (cf.deferStackMap(this, pool))
+            return;
+
         if (cf.getMajorVersion() >= ClassFile.JAVA_6)
             rebuildStackMap(pool);
 
@@ -487,7 +552,9 @@ public class MethodInfo {
      * @return -1 if this information is not available.
      */
     public int getLineNumber(int pos) {
-        CodeAttribute ca = getCodeAttribute();
+        // getCodeAttribute() would regard this method as changed.
+        CodeAttribute ca
+            = (CodeAttribute)AttributeInfo.lookup(attribute, CodeAttribute.tag);
         if (ca == null)
             return -1;
 
@@ -569,6 +636,12 @@ public class MethodInfo {
     }
 
     void write(DataOutputStream out) throws IOException {
+        ByteRange range = original;
+        if (range != null) {
+            range.write(out);
+            return;
+        }
+
         out.writeShort(accessFlags);
         out.writeShort(name);
         out.writeShort(descriptor);
@@ -0,0 +1,117 @@
+/*
+ * Javassist, a Java-bytecode translator toolkit.
+ * Copyright (C) 1999- Shigeru Chiba. All Rights Reserved.
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with
+ * the License.  Alternatively, the contents of this file may be used under
+ * the terms of the GNU Lesser General Public License Version 2.1 or later,
+ * or the Apache License Version 2.0.
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ */
+
+package javassist.bytecode;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A table of strings shared among constant pool tables.
+ *
+ * <p>If constant pool tables share this table, the equal
+ * <code>CONSTANT_Utf8_info</code> entries of those tables refer to
+ * the same <code>String</code> object.  Class names, member names,
+ * and descriptors such as <code>java/lang/String</code> are therefore
+ * kept only once in memory.  This table also caches the class names
+ * converted by <code>Descriptor.toJavaName()</code> and
+ * <code>toJvmName()</code>.
+ *
+ * <p>The strings are never removed from this table unless
+ * <code>clear()</code> is called.  This class is thread-safe.
+ *
+ * @see javassist.ClassPool#setStringTable(StringTable)
+ * @see ConstPool#setStringTable(StringTable)
+ * @since 3.25
+ */
+public final class StringTable {
+    private final ConcurrentHashMap<String,String> strings;
+    private final ConcurrentHashMap<String,String> javaNames;
+    private final ConcurrentHashMap<String,String> jvmNames;
+
+    /**
+     * Constructs an empty table.
+     */
+    public StringTable() {
+        strings = new ConcurrentHashMap<String,String>();
+        javaNames = new ConcurrentHashMap<String,String>();
+        jvmNames = new ConcurrentHashMap<String,String>();
+    }
+
+    /**
+     * Returns the string in this table equal to the given string.
+     * If there is no such a string, the given string is recorded
+     * and returned.
+     *
+     * @param s         the string or null.
+     */
+    public String intern(String s) {
+        if (s == null)
+            return null;
+
+        String t = strings.putIfAbsent(s, s);
+        return t == null ? s : t;
+    }
+
+    /**
+     * Converts a class name in the JVM-internal representation
+     * into the normal one.  The returned string is recorded
+     * in this table.
+     *
+     * @see Descriptor#toJavaName(String)
+     */
+    public String toJavaName(String jvmName) {
+        String name = javaNames.get(jvmName);
+        if (name == null) {
+            name = intern(Descriptor.toJavaName(jvmName));
+            javaNames.put(intern(jvmName), name);
+        }
+
+        return name;
+    }
+
+    /**
+     * Converts a class name into the JVM-internal representation.
+     * The returned string is recorded in this table.
+     *
+     * @see Descriptor#toJvmName(String)
+     */
+    public String toJvmName(String javaName) {
+        String name = jvmNames.get(javaName);
+        if (name == null) {
+            name = intern(Descriptor.toJvmName(javaName));
+            jvmNames.put(intern(javaName), name);
+        }
+
+        return name;
+    }
+
+    /**
+     * Returns the number of the strings in this table.
+     */
+    public int size() {
+        return strings.size();
+    }
+
+    /**
+     * Removes all the strings from this table.
+     * The constant pool tables sharing this table are not changed.
+     */
+    public void clear() {
+        strings.clear();
+        javaNames.clear();
+        jvmNames.clear();
+    }
+}
@@ -129,7 +129,7 @@ public class Analyzer implements Opcode {
         int codeLength = codeAttribute.getCodeLength();
 
         CodeIterator iter = codeAttribute.iterator();
-        IntQueue queue = new IntQueue();
+        IntQueue queue = new IntQueue(codeLength);
 
         exceptions = buildExceptionInfo(method);
         subroutines = scanner.scan(method);
@@ -17,41 +17,48 @@ package javassist.bytecode.analysis;
 
 import java.util.NoSuchElementException;
 
+/* A queue of the positions of instructions.  Since every value is
+ * smaller than the size given to the constructor, a value is not added
+ * again while it is in the queue.  The frame at that position is
+ * analyzed only once even if it has been merged several times.
+ */
 class IntQueue {
-    private static class Entry {
-        private IntQueue.Entry next;
-        private int value;
-        private Entry(int value) {
-            this.value = value;
-        }
-    }
-    private IntQueue.Entry head;
+    private final int[] values;
+    private final boolean[] queued;
+    private int head, size;
 
-    private IntQueue.Entry tail;
+    IntQueue(int limit) {
+        values = new int[limit];
+        queued = new boolean[limit];
+        head = size = 0;
+    }
 
     void add(int value) {
-        IntQueue.Entry entry = new Entry(value);
-        if (tail != null)
-            tail.next = entry;
-        tail = entry;
+        if (queued[value])
+            return;
+
+        queued[value] = true;
+        int i = head + size++;
+        if (i >= values.length)
+            i -= values.length;
 
-        if (head == null)
-            head = entry;
+        values[i] = value;
     }
 
     boolean isEmpty() {
-        return head == null;
+        return size == 0;
     }
 
     int take() {
-        if (head == null)
+        if (size == 0)
             throw new NoSuchElementException();
 
-        int value = head.value;
-        head = head.next;
-        if (head == null)
-            tail = null;
+        int value = values[head++];
+        if (head == values.length)
+            head = 0;
 
+        size--;
+        queued[value] = false;
         return value;
     }
 }
@@ -262,7 +262,18 @@ public class Type {
         if (clazz == null || clazz.isPrimitive())
             return false;
 
+        if (type.clazz == null)
+            return false;
+
+        // Fast path: the same class
+        if (eq(clazz, type.clazz))
+            return true;
+
         try {
+            ClassPool cp = type.clazz.getClassPool();
+            if (cp != null)
+                return cp.getClassHierarchy().subtypeOf(type.clazz, clazz);
+
             return type.clazz.subtypeOf(clazz);
         } catch (Exception e) {
             throw new RuntimeException(e);
@@ -298,6 +309,11 @@ public class Type {
         if (type instanceof MultiType)
             return type.merge(this);
 
+        // Fast path: the same class, which is the most common case
+        if (getClass() == Type.class && type.getClass() == Type.class
+            && eq(clazz, type.clazz))
+            return this;
+
         if (type.isArray() && this.isArray())
             return mergeArray(type);
 
@@ -388,6 +404,10 @@ public class Type {
     }
 
     private static CtClass findCommonSuperClass(CtClass one, CtClass two) throws NotFoundException {
+        ClassPool cp = one.getClassPool();
+        if (cp != null)
+            return cp.getClassHierarchy().commonSuperClass(one, two);
+
         CtClass deep = one;
         CtClass shallow = two;
         CtClass backupShallow = shallow;
@@ -519,8 +539,18 @@ public class Type {
     }
 
     Map<String,CtClass> getAllInterfaces(CtClass clazz, Map<String,CtClass> map) {
-        if (map == null)
+        if (map == null) {
+            ClassPool cp = clazz.getClassPool();
+            if (cp != null)
+                try {
+                    return cp.getClassHierarchy().getAllInterfaces(clazz);
+                }
+                catch (NotFoundException e) {
+                    throw new RuntimeException(e);
+                }
+
             map = new HashMap<String,CtClass>();
+        }
 
         if (clazz.isInterface())
             map.put(clazz.getName(), clazz);
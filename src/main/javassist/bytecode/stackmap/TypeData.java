@@ -521,9 +521,24 @@ public abstract class TypeData {
 
     /**
      * Finds the most specific common super class of the given classes.
-     * This method is a copy from javassist.bytecode.analysis.Type.
+     * The result is cached by the <code>ClassHierarchy</code> of
+     * the class pool.
+     *
+     * @see javassist.ClassHierarchy#commonSuperClass(CtClass, CtClass)
      */
     public static CtClass commonSuperClass(CtClass one, CtClass two) throws NotFoundException {
+        ClassPool cp = one.getClassPool();
+        if (cp != null)
+            return cp.getClassHierarchy().commonSuperClass(one, two);
+        else
+            return commonSuperClass0(one, two);
+    }
+
+    /**
+     * Finds the most specific common super class of the given classes.
+     * This method is a copy from javassist.bytecode.analysis.Type.
+     */
+    static CtClass commonSuperClass0(CtClass one, CtClass two) throws NotFoundException {
         CtClass deep = one;
         CtClass shallow = two;
         CtClass backupShallow = shallow;
@@ -99,7 +99,9 @@ public class Javac {
         try {
             if (mem instanceof FieldDecl)
                 return compileField((FieldDecl)mem);
+            gen.discardHolders();
             CtBehavior cb = compileMethod(p, (MethodDecl)mem);
+            gen.addHolders();
             CtClass decl = cb.getDeclaringClass();
             cb.getMethodInfo2()
               .rebuildStackMapIf6(decl.getClassPool(),
@@ -197,6 +199,7 @@ public class Javac {
         throws CompileError
     {
         try {
+            gen.discardHolders();
             int mod = method.getModifiers();
             recordParams(method.getParameterTypes(), Modifier.isStatic(mod));
 
@@ -228,6 +231,7 @@ public class Javac {
                 gen.atMethodBody(s, callSuper, isVoid);
             }
 
+            gen.addHolders();
             return bytecode;
         }
         catch (NotFoundException e) {
@@ -568,15 +572,17 @@ public class Javac {
      * <p>Local variables that are not declared
      * in the compiled source text might not be accessible within that
      * source text.  Fields and method parameters ($0, $1, ..) are available.
+     *
+     * <p>The parsed statements are cached.  If the same source text is
+     * compiled again with the same set of visible variables, it is not
+     * parsed again.
      */
     public void compileStmnt(String src) throws CompileError {
-        Parser p = new Parser(new Lex(src));
-        SymbolTable stb = new SymbolTable(stable);
-        while (p.hasMore()) {
-            Stmnt s = p.parseStatement(stb);
-            if (s != null)
-                s.accept(gen);
-        }
+        gen.discardHolders();
+        for (Stmnt s: StmntCache.getInstance().parse(src, stable))
+            s.accept(gen);
+
+        gen.addHolders();
     }
 
     /**
@@ -613,7 +619,10 @@ public class Javac {
      * have been invoked.
      */
     public void compileExpr(ASTree e) throws CompileError {
-        if (e != null)
+        if (e != null) {
+            gen.discardHolders();
             gen.compileExpr(e);
+            gen.addHolders();
+        }
     }
 }
@@ -16,10 +16,16 @@
 
 package javassist.compiler;
 
+import java.util.ArrayList;
+import java.util.List;
+
+import javassist.CannotCompileException;
 import javassist.ClassPool;
 import javassist.CtClass;
+import javassist.CtField;
 import javassist.CtPrimitiveType;
 import javassist.NotFoundException;
+import javassist.bytecode.AccessFlag;
 import javassist.bytecode.Bytecode;
 import javassist.bytecode.Descriptor;
 import javassist.compiler.ast.ASTList;
@@ -31,6 +37,7 @@ import javassist.compiler.ast.Expr;
 import javassist.compiler.ast.Member;
 import javassist.compiler.ast.Stmnt;
 import javassist.compiler.ast.Symbol;
+import javassist.runtime.Desc;
 
 /* Code generator accepting extended Java syntax for Javassist.
  */
@@ -54,6 +61,7 @@ public class JvstCodeGen extends MemberCodeGen {
     String proceedName = null;
     public static final String cflowName = "$cflow";
     ProceedHandler procHandler = null;  // null if not used.
+    private List<CtField> holders = new ArrayList<CtField>();
 
     public JvstCodeGen(Bytecode b, CtClass cc, ClassPool cp) {
         super(b, cc, cp);
@@ -101,9 +109,15 @@ public class JvstCodeGen extends MemberCodeGen {
             className = jvmJavaLangObject;
         }
         else if (name.equals(sigName)) {
-            bytecode.addLdc(Descriptor.ofMethod(returnType, paramTypeList));
-            bytecode.addInvokestatic("javassist/runtime/Desc", "getParams",
-                                "(Ljava/lang/String;)[Ljava/lang/Class;");
+            String desc = Descriptor.ofMethod(returnType, paramTypeList);
+            if (useStaticHolder())
+                loadHolder(desc, "getParams", "[Ljava/lang/Class;");
+            else {
+                bytecode.addLdc(desc);
+                bytecode.addInvokestatic("javassist/runtime/Desc", "getParams",
+                                         "(Ljava/lang/String;)[Ljava/lang/Class;");
+            }
+
             exprType = CLASS;
             arrayDim = 1;
             className = "java/lang/Class";
@@ -112,28 +126,105 @@ public class JvstCodeGen extends MemberCodeGen {
             if (dollarType == null)
                 throw new CompileError(dollarTypeName + " is not available");
 
-            bytecode.addLdc(Descriptor.of(dollarType));
-            callGetType("getType");
+            callGetType(Descriptor.of(dollarType), "getType");
         }
         else if (name.equals(clazzName)) {
             if (param0Type == null)
                 throw new CompileError(clazzName + " is not available");
 
-            bytecode.addLdc(param0Type);
-            callGetType("getClazz");
+            callGetType(param0Type, "getClazz");
         }
         else
             super.atMember(mem);
     }
 
-    private void callGetType(String method) {
-        bytecode.addInvokestatic("javassist/runtime/Desc", method,
-                                "(Ljava/lang/String;)Ljava/lang/Class;");
+    private void callGetType(String desc, String method) throws CompileError {
+        if (useStaticHolder())
+            loadHolder(desc, method, "Ljava/lang/Class;");
+        else {
+            bytecode.addLdc(desc);
+            bytecode.addInvokestatic("javassist/runtime/Desc", method,
+                                     "(Ljava/lang/String;)Ljava/lang/Class;");
+        }
+
         exprType = CLASS;
         arrayDim = 0;
         className = "java/lang/Class";
     }
 
+    private boolean useStaticHolder() {
+        return Desc.useStaticHolders && thisClass != null
+               && !thisClass.isInterface();
+    }
+
+    /* Makes a static field holding the value of $sig, $type, or $class
+     * and loads the value.  The field is initialized when it is first read.
+     * If it is $sig, a copy of the array is loaded.
+     * The field is added to the class by addHolders() only after
+     * the source text is successfully compiled.
+     */
+    private void loadHolder(String desc, String method, String type)
+        throws CompileError
+    {
+        String fname;
+        try {
+            CtClass ftype = thisClass.getClassPool().get(
+                                        Descriptor.toClassName(type));
+            // the prefix differs from the names of the fields not added yet.
+            fname = thisClass.makeUniqueName("_desc$" + holders.size() + "_");
+            CtField f = new CtField(ftype, fname, thisClass);
+            f.getFieldInfo2().setAccessFlags(AccessFlag.PRIVATE
+                    | AccessFlag.STATIC | AccessFlag.VOLATILE
+                    | AccessFlag.SYNTHETIC);
+            holders.add(f);
+        }
+        catch (NotFoundException e) {
+            throw new CompileError(e);
+        }
+        catch (CannotCompileException e) {
+            throw new CompileError(e);
+        }
+
+        bytecode.addGetstatic(thisClass, fname, type);
+        bytecode.addOpcode(DUP);
+        bytecode.addOpcode(IFNONNULL);
+        int pc = bytecode.currentPc();
+        bytecode.addIndex(0);
+        bytecode.addOpcode(POP);
+        bytecode.addLdc(desc);
+        bytecode.addInvokestatic("javassist/runtime/Desc", method,
+                                 "(Ljava/lang/String;)" + type);
+        bytecode.addOpcode(DUP);
+        bytecode.addPutstatic(thisClass, fname, type);
+        bytecode.write16bit(pc, bytecode.currentPc() - pc + 1);
+        if (type.charAt(0) == '[') {
+            bytecode.addInvokevirtual(type, "clone", "()Ljava/lang/Object;");
+            bytecode.addCheckcast(type);
+        }
+    }
+
+    /* Adds the fields made by loadHolder() to the class.
+     */
+    void addHolders() throws CompileError {
+        try {
+            for (CtField f: holders)
+                thisClass.addField(f);
+        }
+        catch (CannotCompileException e) {
+            throw new CompileError(e);
+        }
+        finally {
+            holders.clear();
+        }
+    }
+
+    /* Discards the fields made by loadHolder() for the source text
+     * that has failed to be compiled.
+     */
+    void discardHolders() {
+        holders.clear();
+    }
+
     @Override
     protected void atFieldAssign(Expr expr, int op, ASTree left,
                         ASTree right, boolean doDup) throws CompileError
@@ -111,10 +111,9 @@ public class MemberResolver implements TokenId {
         // If the class is an array type, the class file is null.
         // If so, search the super class java.lang.Object for clone() etc.
         if (cf != null) {
-            List<MethodInfo> list = cf.getMethods();
+            List<MethodInfo> list = cf.getMethods(methodName);
             for (MethodInfo minfo:list) {
-                if (minfo.getName().equals(methodName)
-                    && (minfo.getAccessFlags() & AccessFlag.BRIDGE) == 0) {
+                if ((minfo.getAccessFlags() & AccessFlag.BRIDGE) == 0) {
                     int res = compareSignature(minfo.getDescriptor(),
                                            argTypes, argDims, argClassNames);
                     if (res != NO) {
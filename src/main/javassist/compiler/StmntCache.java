@@ -0,0 +1,137 @@
+/*
+ * Javassist, a Java-bytecode translator toolkit.
+ * Copyright (C) 1999- Shigeru Chiba. All Rights Reserved.
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with
+ * the License.  Alternatively, the contents of this file may be used under
+ * the terms of the GNU Lesser General Public License Version 2.1 or later,
+ * or the Apache License Version 2.0.
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ */
+
+package javassist.compiler;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+import javassist.compiler.ast.ASTree;
+import javassist.compiler.ast.Declarator;
+import javassist.compiler.ast.Stmnt;
+
+/**
+ * A cache of the statements parsed by <code>Javac.compileStmnt()</code>.
+ *
+ * <p>The result of parsing depends only on the source text and on
+ * the names of the variables declared in the symbol table.
+ * A cached tree is never compiled; the compiler receives a copy of it,
+ * in which the variables declared outside of the source text refer to
+ * the declarators in the current symbol table.
+ *
+ * <p>This class is thread-safe.
+ */
+final class StmntCache {
+    static final int DEFAULT_CAPACITY = 256;
+
+    private static final StmntCache instance = new StmntCache(DEFAULT_CAPACITY);
+
+    static StmntCache getInstance() { return instance; }
+
+    static final class Parsed {
+        final Stmnt[] stmnts;
+        final String[] names;
+        final Declarator[] decls;   // the declarators of names when parsed
+
+        Parsed(Stmnt[] s, String[] n, Declarator[] d) {
+            stmnts = s;
+            names = n;
+            decls = d;
+        }
+    }
+
+    private final Map<String,Parsed> entries;
+
+    StmntCache(final int capacity) {
+        entries = new LinkedHashMap<String,Parsed>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String,Parsed> e) {
+                return size() > capacity;
+            }
+        };
+    }
+
+    /**
+     * Parses the given source text and returns the statements.
+     * The returned statements can be modified by the caller.
+     *
+     * @param src       the source text.
+     * @param tbl       the symbol table.  The variables declared
+     *                  in the source text are not recorded in it.
+     */
+    Stmnt[] parse(String src, SymbolTable tbl) throws CompileError {
+        TreeSet<String> visible = new TreeSet<String>();
+        for (SymbolTable t = tbl; t != null; t = t.getParent())
+            visible.addAll(t.keySet());
+
+        String[] names = visible.toArray(new String[visible.size()]);
+        StringBuilder sbuf = new StringBuilder(src);
+        sbuf.append('\0');
+        for (String name: names)
+            sbuf.append(name).append(',');
+
+        String key = sbuf.toString();
+        Parsed e;
+        synchronized (entries) {
+            e = entries.get(key);
+        }
+
+        if (e == null) {
+            Declarator[] decls = new Declarator[names.length];
+            for (int i = 0; i < names.length; i++)
+                decls[i] = tbl.lookup(names[i]);
+
+            List<Stmnt> list = new ArrayList<Stmnt>();
+            Parser p = new Parser(new Lex(src));
+            SymbolTable stb = new SymbolTable(tbl);
+            while (p.hasMore()) {
+                Stmnt s = p.parseStatement(stb);
+                if (s != null)
+                    list.add(s);
+            }
+
+            e = new Parsed(list.toArray(new Stmnt[list.size()]), names, decls);
+            synchronized (entries) {
+                entries.put(key, e);
+            }
+        }
+
+        Map<ASTree,ASTree> copied = new IdentityHashMap<ASTree,ASTree>();
+        for (int i = 0; i < e.names.length; i++)
+            copied.put(e.decls[i], tbl.lookup(e.names[i]));
+
+        Stmnt[] stmnts = new Stmnt[e.stmnts.length];
+        for (int i = 0; i < stmnts.length; i++)
+            stmnts[i] = (Stmnt)e.stmnts[i].copy(copied);
+
+        return stmnts;
+    }
+
+    /**
+     * Removes all the cached statements.
+     */
+    void clear() {
+        synchronized (entries) {
+            entries.clear();
+        }
+    }
+}
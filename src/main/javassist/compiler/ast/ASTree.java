@@ -17,6 +17,7 @@
 package javassist.compiler.ast;
 
 import java.io.Serializable;
+import java.util.Map;
 
 import javassist.compiler.CompileError;
 
@@ -25,7 +26,7 @@ import javassist.compiler.CompileError;
  * a binary tree.  If the node is a leaf node, both <code>getLeft()</code>
  * and <code>getRight()</code> returns null.
  */
-public abstract class ASTree implements Serializable {
+public abstract class ASTree implements Serializable, Cloneable {
     /** default serialVersionUID */
     private static final long serialVersionUID = 1L;
 
@@ -37,6 +38,41 @@ public abstract class ASTree implements Serializable {
 
     public void setRight(ASTree _right) {}
 
+    /**
+     * Makes a deep copy of this tree.
+     * Since the compiler modifies a tree while compiling it,
+     * a copy must be made before a tree is compiled again.
+     *
+     * @param copied    the nodes already copied.  It maps an original
+     *                  node to its copy.  If a <code>Declarator</code> of
+     *                  a variable declared outside of this tree is mapped
+     *                  to another <code>Declarator</code>, the copy refers
+     *                  to the latter one.
+     */
+    public ASTree copy(Map<ASTree,ASTree> copied) {
+        ASTree t = copied.get(this);
+        if (t != null)
+            return t;
+
+        try {
+            t = (ASTree)clone();
+        }
+        catch (CloneNotSupportedException e) {
+            throw new RuntimeException(e);
+        }
+
+        copied.put(this, t);
+        ASTree left = getLeft();
+        if (left != null)
+            t.setLeft(left.copy(copied));
+
+        ASTree right = getRight();
+        if (right != null)
+            t.setRight(right.copy(copied));
+
+        return t;
+    }
+
     /**
      * Is a method for the visitor pattern.  It calls
      * <code>atXXX()</code> on the given visitor, where
@@ -16,6 +16,8 @@
 
 package javassist.compiler.ast;
 
+import java.util.Map;
+
 import javassist.compiler.CompileError;
 
 /**
@@ -33,6 +35,15 @@ public class Variable extends Symbol {
 
     public Declarator getDeclarator() { return declarator; }
 
+    @Override
+    public ASTree copy(Map<ASTree,ASTree> copied) {
+        Variable v = (Variable)super.copy(copied);
+        if (declarator != null)
+            v.declarator = (Declarator)declarator.copy(copied);
+
+        return v;
+    }
+
     @Override
     public String toString() {
         return identifier + ":" + declarator.getType();
@@ -282,19 +282,14 @@ public abstract class Expr implements Opcode {
             runEditor(recursive, iterator);
     }
 
+    /* The replacement is deferred.  ExprEditor applies all the
+     * replacements in a method body together.
+     */
     protected void replace0(int pos, Bytecode bytecode, int size)
             throws BadBytecode {
-        byte[] code = bytecode.get();
         edited = true;
-        int gap = code.length - size;
-        for (int i = 0; i < size; ++i)
-            iterator.writeByte(NOP, pos + i);
-
-        if (gap > 0)
-            pos = iterator.insertGapAt(pos, gap, false).position;
-
-        iterator.write(code, pos);
-        iterator.insert(bytecode.getExceptionTable(), pos);
+        iterator.deferReplace(pos, size, bytecode.get(),
+                              bytecode.getExceptionTable());
         maxLocals = bytecode.getMaxLocals();
         maxStack = bytecode.getMaxStack();
     }
@@ -302,6 +297,20 @@ public abstract class Expr implements Opcode {
     protected void runEditor(ExprEditor ed, CodeIterator oldIterator)
         throws CannotCompileException
     {
+        int pos = currentPos;
+        if (oldIterator.hasDeferredEdits())
+            try {
+                // the mark tracks the position of this expression.
+                int mark = oldIterator.getMark();
+                oldIterator.setMark(pos);
+                oldIterator.applyDeferredEdits();
+                pos = oldIterator.getMark();
+                oldIterator.setMark(mark);
+            }
+            catch (BadBytecode e) {
+                throw new CannotCompileException(e);
+            }
+
         CodeAttribute codeAttr = oldIterator.get();
         int orgLocals = codeAttr.getMaxLocals();
         int orgStack = codeAttr.getMaxStack();
@@ -312,7 +321,7 @@ public abstract class Expr implements Opcode {
             = new ExprEditor.LoopContext(newLocals);
         int size = oldIterator.getCodeLength();
         int endPos = oldIterator.lookAhead();
-        oldIterator.move(currentPos);
+        oldIterator.move(pos);
         if (ed.doit(thisClass, thisMethod, context, oldIterator, endPos))
             edited = true;
 
@@ -16,6 +16,9 @@
 
 package javassist.expr;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import javassist.CannotCompileException;
 import javassist.CtClass;
 import javassist.bytecode.BadBytecode;
@@ -88,14 +91,22 @@ public class ExprEditor {
         if (codeAttr == null)
             return false;
 
-        CodeIterator iterator = codeAttr.iterator();
+        LoopIterator iterator = new LoopIterator(codeAttr);
         boolean edited = false;
         LoopContext context = new LoopContext(codeAttr.getMaxLocals());
+        iterator.contexts.add(context);
 
         while (iterator.hasNext())
             if (loopBody(iterator, clazz, minfo, context))
                 edited = true;
 
+        try {
+            iterator.applyDeferredEdits();
+        }
+        catch (BadBytecode b) {
+            throw new CannotCompileException(b);
+        }
+
         ExceptionTable et = codeAttr.getExceptionTable();
         int n = et.size();
         for (int i = 0; i < n; ++i) {
@@ -133,19 +144,51 @@ public class ExprEditor {
         throws CannotCompileException
     {
         boolean edited = false;
-        while (iterator.hasNext() && iterator.lookAhead() < endPos) {
-            int size = iterator.getCodeLength();
-            if (loopBody(iterator, clazz, minfo, context)) {
-                edited = true;
-                int size2 = iterator.getCodeLength();
-                if (size != size2)  // the body was modified.
-                    endPos += size2 - size;
+        List<LoopContext> contexts = null;
+        if (iterator instanceof LoopIterator) {
+            contexts = ((LoopIterator)iterator).contexts;
+            contexts.add(context);
+        }
+
+        try {
+            while (iterator.hasNext() && iterator.lookAhead() < endPos) {
+                int size = iterator.getCodeLength();
+                if (loopBody(iterator, clazz, minfo, context)) {
+                    edited = true;
+                    int size2 = iterator.getCodeLength();
+                    if (size != size2)  // the body was modified.
+                        endPos += size2 - size;
+                }
             }
         }
+        finally {
+            if (contexts != null)
+                contexts.remove(context);
+        }
 
         return edited;
     }
 
+    /* An iterator updating the positions of NEW recorded in the loop
+     * contexts when a gap is inserted, for example, when the deferred
+     * edits are applied for a recursive replacement (see Expr.runEditor()).
+     */
+    final static class LoopIterator extends CodeIterator {
+        final List<LoopContext> contexts = new ArrayList<LoopContext>();
+
+        LoopIterator(CodeAttribute ca) {
+            super(ca);
+        }
+
+        @Override
+        protected void updateCursors(int pos, int length) {
+            for (LoopContext context:contexts)
+                for (NewOp op = context.newList; op != null; op = op.next)
+                    if (op.pos >= pos)
+                        op.pos += length;
+        }
+    }
+
     final static class NewOp {
         NewOp next;
         int pos;
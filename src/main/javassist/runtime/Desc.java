@@ -16,11 +16,23 @@
 
 package javassist.runtime;
 
+import java.lang.ref.Reference;
+import java.lang.ref.WeakReference;
+import java.util.Collections;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+
 /**
  * A support class for implementing <code>$sig</code> and
  * <code>$type</code>.
  * This support class is required at runtime
  * only if <code>$sig</code> or <code>$type</code> is used.
+ *
+ * <p>The <code>Class</code> objects obtained from a descriptor are cached.
+ * If <code>useContextClassLoader</code> is true, the cache is kept
+ * for each context class loader and it does not prevent the class loader
+ * from being garbage-collected.
  */
 public class Desc {
 
@@ -34,6 +46,113 @@ public class Desc {
      */
     public static boolean useContextClassLoader = false;
 
+    /**
+     * Specifies whether the compiler stores the values of
+     * <code>$sig</code>, <code>$type</code>, and <code>$class</code>
+     * in static fields.
+     *
+     * <p>If true, the compiler adds a private static field to the class
+     * for every occurrence of those identifiers.  The value is computed
+     * when the code is first executed and the following executions
+     * read the field.  <code>$sig</code> returns a copy of the array
+     * stored in the field.
+     * Note that the value is not computed again even if
+     * <code>useContextClassLoader</code> is true and the context class loader
+     * is changed.
+     * This flag is not used at runtime.  It is read when the source code
+     * is compiled.  The default value is false.
+     *
+     * @since 3.25
+     */
+    public static boolean useStaticHolders = false;
+
+    private static final TypeCache paramsCache = new TypeCache();
+    private static final TypeCache typeCache = new TypeCache();
+    private static final TypeCache nameCache = new TypeCache();
+
+    /**
+     * A cache from a type descriptor or a class name
+     * to the <code>Class</code> objects.
+     */
+    private static final class TypeCache {
+        // the classes found by Class.forName() in Desc.  They are never
+        // unloaded while this class is not unloaded.
+        private final ConcurrentHashMap<String,Class<?>[]> table
+            = new ConcurrentHashMap<String,Class<?>[]>();
+
+        // the classes found by the context class loaders.
+        private final Map<ClassLoader,Map<String,Reference<?>[]>> contextTables
+            = Collections.synchronizedMap(
+                new WeakHashMap<ClassLoader,Map<String,Reference<?>[]>>());
+
+        /**
+         * Returns the cached classes or null.  The returned array
+         * must not be modified.
+         */
+        Class<?>[] get(String key) {
+            if (!useContextClassLoader)
+                return table.get(key);
+
+            Map<String,Reference<?>[]> map
+                = contextTables.get(Thread.currentThread().getContextClassLoader());
+            if (map == null)
+                return null;
+
+            Reference<?>[] refs = map.get(key);
+            if (refs == null)
+                return null;
+
+            Class<?>[] types = new Class<?>[refs.length];
+            for (int i = 0; i < refs.length; i++)
+                if ((types[i] = (Class<?>)refs[i].get()) == null)
+                    return null;
+
+            return types;
+        }
+
+        void put(String key, Class<?>[] types) {
+            if (!useContextClassLoader) {
+                table.put(key, types);
+                return;
+            }
+
+            /* The classes are weakly referenced since they may be loaded
+             * by the class loader used as a key.
+             */
+            Reference<?>[] refs = new Reference<?>[types.length];
+            for (int i = 0; i < types.length; i++)
+                refs[i] = new WeakReference<Class<?>>(types[i]);
+
+            ClassLoader loader = Thread.currentThread().getContextClassLoader();
+            Map<String,Reference<?>[]> map;
+            synchronized (contextTables) {
+                map = contextTables.get(loader);
+                if (map == null) {
+                    map = new ConcurrentHashMap<String,Reference<?>[]>();
+                    contextTables.put(loader, map);
+                }
+            }
+
+            map.put(key, refs);
+        }
+
+        void clear() {
+            table.clear();
+            contextTables.clear();
+        }
+    }
+
+    /**
+     * Discards the cached <code>Class</code> objects.
+     *
+     * @since 3.25
+     */
+    public static void clearCache() {
+        paramsCache.clear();
+        typeCache.clear();
+        nameCache.clear();
+    }
+
     private static Class<?> getClassObject(String name)
         throws ClassNotFoundException
     {
@@ -47,8 +166,14 @@ public class Desc {
      * It is used for implementing <code>$class</code>.
      */
     public static Class<?> getClazz(String name) {
+        Class<?>[] cached = nameCache.get(name);
+        if (cached != null)
+            return cached[0];
+
         try {
-            return getClassObject(name);
+            Class<?> clazz = getClassObject(name);
+            nameCache.put(name, new Class<?>[] { clazz });
+            return clazz;
         }
         catch (ClassNotFoundException e) {
             throw new RuntimeException(
@@ -63,10 +188,16 @@ public class Desc {
      * signature.  It is used for implementing <code>$sig</code>.
      */
     public static Class<?>[] getParams(String desc) {
+        Class<?>[] cached = paramsCache.get(desc);
+        if (cached != null)
+            return cached.clone();
+
         if (desc.charAt(0) != '(')
             throw new RuntimeException("$sig: internal error");
 
-        return getType(desc, desc.length(), 1, 0);
+        Class<?>[] params = getType(desc, desc.length(), 1, 0);
+        paramsCache.put(desc, params.clone());
+        return params;
     }
 
     /**
@@ -74,10 +205,15 @@ public class Desc {
      * It is used for implementing <code>$type</code>.
      */
     public static Class<?> getType(String desc) {
+        Class<?>[] cached = typeCache.get(desc);
+        if (cached != null)
+            return cached[0];
+
         Class<?>[] result = getType(desc, desc.length(), 0, 0);
         if (result == null || result.length != 1)
             throw new RuntimeException("$type: internal error");
 
+        typeCache.put(desc, result);
         return result[0];
     }
 
@@ -20,6 +20,7 @@ import java.lang.ref.Reference;
 import java.lang.ref.WeakReference;
 import java.security.ProtectionDomain;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import javassist.CannotCompileException;
 import javassist.ClassPool;
 import javassist.CtClass;
@@ -42,6 +43,12 @@ public class ScopedClassPool extends ClassPool {
     protected LoaderClassPath classPath;
 
     protected Map<String,CtClass> softcache = new SoftValueHashMap<String,CtClass>();
+
+    /* whether the class loader finds the class file.  It maps a class name to the result.
+     * It is cleared when it records MAX_LOCAL_RESOURCES names.
+     */
+    private final Map<String,Boolean> localResources = new ConcurrentHashMap<String,Boolean>();
+    static final int MAX_LOCAL_RESOURCES = 4096;
     
     boolean isBootstrapCl = true;
 
@@ -121,6 +128,7 @@ public class ScopedClassPool extends ClassPool {
         this.removeClassPath(classPath);
         classes.clear();
         softcache.clear();
+        localResources.clear();
     }
 
     /**
@@ -132,6 +140,8 @@ public class ScopedClassPool extends ClassPool {
     public synchronized void flushClass(String classname) {
         classes.remove(classname);
         softcache.remove(classname);
+        localResources.remove(classname);
+        repository.classFlushed(classname, this);
     }
 
     /**
@@ -171,43 +181,35 @@ public class ScopedClassPool extends ClassPool {
 
             ClassLoader dcl = getClassLoader0();
             if (dcl != null) {
-                final int lastIndex = classname.lastIndexOf('$');
-                String classResourceName = null;
-                if (lastIndex < 0) {
-                    classResourceName = classname.replaceAll("[\\.]", "/")
-                            + ".class";
-                }
-                else {
-                    classResourceName = classname.substring(0, lastIndex)
-                            .replaceAll("[\\.]", "/")
-                            + classname.substring(lastIndex) + ".class";
+                Boolean found = localResources.get(classname);
+                if (found == null) {
+                    found = dcl.getResource(toResourceName(classname)) != null;
+                    if (localResources.size() >= MAX_LOCAL_RESOURCES)
+                        localResources.clear();
+
+                    localResources.put(classname, found);
                 }
 
-                isLocal = dcl.getResource(classResourceName) != null;
+                isLocal = found;
             }
 
             if (!isLocal) {
-                Map<ClassLoader,ScopedClassPool> registeredCLs = repository.getRegisteredCLs();
-                synchronized (registeredCLs) {
-                    for (ScopedClassPool pool:registeredCLs.values()) {
-                        if (pool.isUnloadedClassLoader()) {
-                            repository.unregisterClassLoader(pool
-                                    .getClassLoader());
-                            continue;
-                        }
-
-                        clazz = pool.getCachedLocally(classname);
-                        if (clazz != null) {
-                            return clazz;
-                        }
-                    }
-                }
+                return repository.getCachedClass(classname);
             }
         }
         // *NOTE* NEED TO TEST WHEN SUPERCLASS IS IN ANOTHER UCL!!!!!!
         return clazz;
     }
 
+    private static String toResourceName(String classname) {
+        final int lastIndex = classname.lastIndexOf('$');
+        if (lastIndex < 0)
+            return classname.replace('.', '/') + ".class";
+        else
+            return classname.substring(0, lastIndex).replace('.', '/')
+                   + classname.substring(lastIndex) + ".class";
+    }
+
     /**
      * Cache a class
      * 
@@ -227,6 +229,8 @@ public class ScopedClassPool extends ClassPool {
                 c.prune();
             softcache.put(classname, c);
         }
+
+        repository.classCached(classname, this);
     }
 
     /**
@@ -237,6 +241,7 @@ public class ScopedClassPool extends ClassPool {
      */
     public void lockInCache(CtClass c) {
         super.cacheCtClass(c.getName(), c, false);
+        repository.classCached(c.getName(), this);
     }
 
     /**
@@ -273,6 +278,7 @@ public class ScopedClassPool extends ClassPool {
             if (clazz == null)
                 throw new NotFoundException(classname);
             super.cacheCtClass(classname, clazz, false);
+            repository.classCached(classname, this);
         }
 
         return clazz;
@@ -16,9 +16,12 @@
 
 package javassist.scopedpool;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 
 import javassist.ClassPool;
+import javassist.CtClass;
 
 /**
  * An interface to <code>ScopedClassPoolRepositoryImpl</code>.
@@ -89,6 +92,62 @@ public interface ScopedClassPoolRepository {
      */
     void clearUnregisteredClassLoaders();
 
+    /**
+     * Returns the class cached by one of the registered class pools.
+     * The default implementation searches all the registered pools.
+     *
+     * @param classname     the class name.
+     * @return the cached class or null if no pool caches it.
+     * @since 3.25
+     */
+    default CtClass getCachedClass(String classname) {
+        Map<ClassLoader,ScopedClassPool> registeredCLs = getRegisteredCLs();
+        CtClass found = null;
+        List<ScopedClassPool> unloaded = null;
+        synchronized (registeredCLs) {
+            for (ScopedClassPool pool:registeredCLs.values()) {
+                if (pool.isUnloadedClassLoader()) {
+                    if (unloaded == null)
+                        unloaded = new ArrayList<ScopedClassPool>();
+
+                    unloaded.add(pool);
+                    continue;
+                }
+
+                found = pool.getCachedLocally(classname);
+                if (found != null)
+                    break;
+            }
+        }
+
+        // unregisterClassLoader() modifies the map.
+        if (unloaded != null)
+            for (ScopedClassPool pool:unloaded)
+                unregisterClassLoader(pool.getClassLoader());
+
+        return found;
+    }
+
+    /**
+     * Is called when a registered class pool caches a class.
+     * The default implementation does nothing.
+     *
+     * @param classname     the class name.
+     * @param pool          the class pool.
+     * @since 3.25
+     */
+    default void classCached(String classname, ScopedClassPool pool) {}
+
+    /**
+     * Is called when a registered class pool flushes a class.
+     * The default implementation does nothing.
+     *
+     * @param classname     the class name.
+     * @param pool          the class pool.
+     * @since 3.25
+     */
+    default void classFlushed(String classname, ScopedClassPool pool) {}
+
     /**
      * Unregisters a classpool and unregisters its classloader.
      * 
@@ -16,19 +16,31 @@
 
 package javassist.scopedpool;
 
-import java.util.ArrayList;
+import java.lang.ref.ReferenceQueue;
+import java.lang.reflect.Constructor;
+import java.lang.ref.WeakReference;
 import java.util.Collections;
-import java.util.List;
+import java.util.Iterator;
 import java.util.Map;
 import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
 
 import javassist.ClassPool;
+import javassist.CtClass;
 import javassist.LoaderClassPath;
 
 /**
  * An implementation of <code>ScopedClassPoolRepository</code>.
  * It is an singleton.
  *
+ * <p>When a registered class loader is garbage collected, its class pool
+ * is closed by a daemon thread watching a reference queue.
+ * The thread also checks every ten seconds whether the registered
+ * class loaders have been undeployed (as in JBoss).
+ * <code>getRegisteredCLs()</code> does not check them.
+ * Call <code>clearUnregisteredClassLoaders()</code> to check them
+ * without waiting.
+ *
  * @author <a href="kabir.khan@jboss.com">Kabir Khan</a>
  * @version $Revision: 1.4 $
  */
@@ -46,6 +58,27 @@ public class ScopedClassPoolRepositoryImpl implements ScopedClassPoolRepository
     protected Map<ClassLoader,ScopedClassPool> registeredCLs = Collections
             .synchronizedMap(new WeakHashMap<ClassLoader,ScopedClassPool>());
 
+    /** The registered pools.  The array is never modified. */
+    private volatile ScopedClassPool[] registeredPools = new ScopedClassPool[0];
+
+    /** The weak references to the registered classloaders */
+    private final ConcurrentHashMap<ScopedClassPool,LoaderReference> loaderRefs
+        = new ConcurrentHashMap<ScopedClassPool,LoaderReference>();
+
+    /** The queue of the references to the collected classloaders */
+    private final ReferenceQueue<ClassLoader> collectedLoaders
+        = new ReferenceQueue<ClassLoader>();
+
+    /** The thread closing the pools of the collected classloaders */
+    private Thread cleaner;
+
+    /** The interval in milliseconds for checking undeployed classloaders */
+    static final long CLEANUP_INTERVAL = 10000;
+
+    /** The pools caching each class.  The arrays are never modified. */
+    private final ConcurrentHashMap<String,ScopedClassPool[]> cachedClasses
+        = new ConcurrentHashMap<String,ScopedClassPool[]>();
+
     /** The default class pool */
     protected ClassPool classpool;
 
@@ -130,50 +163,251 @@ public class ScopedClassPoolRepositoryImpl implements ScopedClassPoolRepository
             }
             ScopedClassPool pool = createScopedClassPool(ucl, classpool);
             registeredCLs.put(ucl, pool);
+            updateRegisteredPools();
+            if (ucl != null) {
+                loaderRefs.put(pool, new LoaderReference(ucl, pool, collectedLoaders));
+                startCleaner();
+            }
+
             return pool;
         }
     }
 
     /**
      * Get the registered classloaders.
+     * The classloaders that have been garbage collected or undeployed
+     * are removed by a background thread.  They may be still included
+     * in the returned map until the thread removes them.
+     *
+     * @see #clearUnregisteredClassLoaders()
      */
     @Override
     public Map<ClassLoader,ScopedClassPool> getRegisteredCLs() {
-        clearUnregisteredClassLoaders();
         return registeredCLs;
     }
 
+    /**
+     * Returns the class pools for the registered classloaders.
+     * The returned array is a snapshot; it is not changed
+     * when a classloader is registered or unregistered later.
+     * This method does not acquire a lock.
+     *
+     * @since 3.25
+     */
+    public ScopedClassPool[] getRegisteredPools() {
+        return registeredPools.clone();
+    }
+
+    /* must be called while the lock of registeredCLs is held.
+     */
+    private void updateRegisteredPools() {
+        registeredPools = registeredCLs.values().toArray(new ScopedClassPool[0]);
+    }
+
+    /* must be called while the lock of registeredCLs is held.
+     */
+    private void startCleaner() {
+        if (cleaner == null) {
+            Runnable r = new Runnable() {
+                public void run() {
+                    try {
+                        while (true) {
+                            LoaderReference ref
+                                = (LoaderReference)collectedLoaders.remove(CLEANUP_INTERVAL);
+                            if (ref == null)
+                                clearUnregisteredClassLoaders();
+                            else
+                                ref.closePool();
+                        }
+                    }
+                    catch (InterruptedException e) {}
+                }
+            };
+
+            cleaner = newCleaner(r, "javassist scoped class pool cleaner");
+            cleaner.setContextClassLoader(null);
+            cleaner.setDaemon(true);
+            cleaner.setPriority(Thread.MIN_PRIORITY);
+            cleaner.start();
+        }
+    }
+
+    /* Makes a thread not inheriting the inheritable thread-locals of
+     * the caller.  Such a constructor is available in Java 9 or later.
+     */
+    private static Thread newCleaner(Runnable r, String name) {
+        try {
+            Constructor<Thread> cons = Thread.class.getConstructor(ThreadGroup.class,
+                    Runnable.class, String.class, long.class, boolean.class);
+            return cons.newInstance(null, r, name, 0L, false);
+        }
+        catch (ReflectiveOperationException e) {}
+        catch (SecurityException e) {}
+
+        return new Thread(r, name);
+    }
+
+    /**
+     * A weak reference to a registered classloader.
+     * It is enqueued when the classloader is garbage collected.
+     */
+    private final class LoaderReference extends WeakReference<ClassLoader> {
+        private final ScopedClassPool pool;
+
+        LoaderReference(ClassLoader cl, ScopedClassPool pool,
+                        ReferenceQueue<ClassLoader> queue) {
+            super(cl, queue);
+            this.pool = pool;
+        }
+
+        void closePool() {
+            if (loaderRefs.remove(pool, this)) {
+                synchronized (registeredCLs) {
+                    // the WeakHashMap removes its entry when accessed.
+                    registeredCLs.size();
+                    updateRegisteredPools();
+                }
+
+                pool.close();
+                removeFromIndex(pool);
+            }
+        }
+    }
+
     /**
      * This method will check to see if a register classloader has been
      * undeployed (as in JBoss)
      */
     @Override
     public void clearUnregisteredClassLoaders() {
-        List<ClassLoader> toUnregister = null;
-        synchronized (registeredCLs) {
-            for (Map.Entry<ClassLoader,ScopedClassPool> reg:registeredCLs.entrySet()) {
-                if (reg.getValue().isUnloadedClassLoader()) {
-                    ClassLoader cl = reg.getValue().getClassLoader();
-                    if (cl != null) {
-                        if (toUnregister == null)
-                            toUnregister = new ArrayList<ClassLoader>();
-                        toUnregister.add(cl);
-                    }
-                    registeredCLs.remove(reg.getKey());
-                }
-            }
-            if (toUnregister != null)
-                for (ClassLoader cl:toUnregister)
+        for (ScopedClassPool pool:registeredPools)
+            if (pool.isUnloadedClassLoader()) {
+                ClassLoader cl = pool.getClassLoader0();
+                if (cl != null)
                     unregisterClassLoader(cl);
-        }
+            }
     }
 
     @Override
     public void unregisterClassLoader(ClassLoader cl) {
         synchronized (registeredCLs) {
             ScopedClassPool pool = registeredCLs.remove(cl);
-            if (pool != null)
+            if (pool != null) {
+                updateRegisteredPools();
+                LoaderReference ref = loaderRefs.remove(pool);
+                if (ref != null)
+                    ref.clear();
+
                 pool.close();
+                removeFromIndex(pool);
+            }
+        }
+    }
+
+    /**
+     * Returns the class cached by one of the registered class pools.
+     * Unlike the default implementation, this method looks up
+     * an index from class names to the pools caching them.
+     *
+     * @param classname     the class name.
+     * @return the cached class or null if no pool caches it.
+     */
+    @Override
+    public CtClass getCachedClass(String classname) {
+        ScopedClassPool[] pools = cachedClasses.get(classname);
+        if (pools == null)
+            return null;
+
+        for (ScopedClassPool pool:pools) {
+            if (pool.isUnloadedClassLoader()) {
+                unregisterClassLoader(pool.getClassLoader());
+                continue;
+            }
+
+            if (pool.classPath != null && pool.getClassLoader0() == null) {
+                // the class loader has been garbage collected.
+                classFlushed(classname, pool);
+                continue;
+            }
+
+            CtClass clazz = pool.getCachedLocally(classname);
+            if (clazz != null)
+                return clazz;
+
+            // the soft reference has been cleared.
+            classFlushed(classname, pool);
+        }
+
+        return null;
+    }
+
+    @Override
+    public void classCached(String classname, ScopedClassPool pool) {
+        while (true) {
+            ScopedClassPool[] pools = cachedClasses.get(classname);
+            if (pools == null) {
+                if (cachedClasses.putIfAbsent(classname, new ScopedClassPool[] { pool }) == null)
+                    return;
+            }
+            else {
+                for (ScopedClassPool p:pools)
+                    if (p == pool)
+                        return;
+
+                ScopedClassPool[] pools2 = new ScopedClassPool[pools.length + 1];
+                System.arraycopy(pools, 0, pools2, 0, pools.length);
+                pools2[pools.length] = pool;
+                if (cachedClasses.replace(classname, pools, pools2))
+                    return;
+            }
+        }
+    }
+
+    @Override
+    public void classFlushed(String classname, ScopedClassPool pool) {
+        while (true) {
+            ScopedClassPool[] pools = cachedClasses.get(classname);
+            if (pools == null)
+                return;
+
+            ScopedClassPool[] pools2 = remove(pools, pool);
+            if (pools2 == pools)
+                return;
+            else if (pools2 == null) {
+                if (cachedClasses.remove(classname, pools))
+                    return;
+            }
+            else if (cachedClasses.replace(classname, pools, pools2))
+                return;
+        }
+    }
+
+    /* returns null if the resulting array is empty.
+     */
+    private static ScopedClassPool[] remove(ScopedClassPool[] pools, ScopedClassPool pool) {
+        for (int i = 0; i < pools.length; i++)
+            if (pools[i] == pool) {
+                if (pools.length == 1)
+                    return null;
+
+                ScopedClassPool[] pools2 = new ScopedClassPool[pools.length - 1];
+                System.arraycopy(pools, 0, pools2, 0, i);
+                System.arraycopy(pools, i + 1, pools2, i, pools2.length - i);
+                return pools2;
+            }
+
+        return pools;
+    }
+
+    private void removeFromIndex(ScopedClassPool pool) {
+        Iterator<Map.Entry<String,ScopedClassPool[]>> it = cachedClasses.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<String,ScopedClassPool[]> e = it.next();
+            for (ScopedClassPool p:e.getValue())
+                if (p == pool) {
+                    classFlushed(e.getKey(), pool);
+                    break;
+                }
         }
     }
 
@@ -0,0 +1,86 @@
+/*
+ * Javassist, a Java-bytecode translator toolkit.
+ * Copyright (C) 1999- Shigeru Chiba. All Rights Reserved.
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with
+ * the License.  Alternatively, the contents of this file may be used under
+ * the terms of the GNU Lesser General Public License Version 2.1 or later,
+ * or the Apache License Version 2.0.
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ */
+
+package javassist.util.proxy;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.reflect.Method;
+
+/**
+ * An invocation handler that receives the forwarder method as a
+ * <code>java.lang.invoke.MethodHandle</code>.
+ *
+ * <p>If a proxy class is created by a <code>ProxyFactory</code> with
+ * <code>setUseMethodHandles(true)</code>, the method handles are created
+ * only once when the proxy class is initialized.  Then the handler can
+ * invoke the overridden method without the reflection API:
+ *
+ * <pre>
+ * public Object invoke(Object self, Method thisMethod,
+ *                      MethodHandle proceed, Object[] args) throws Throwable {
+ *     return proceed.invokeExact(self, args);
+ * }</pre>
+ *
+ * <p>The handler can be also given to a proxy class created without
+ * <code>setUseMethodHandles(true)</code>.  In that case, a method handle
+ * is created whenever the handler is called.
+ *
+ * @see ProxyFactory#setUseMethodHandles(boolean)
+ * @since 3.25
+ */
+public interface MethodHandleHandler extends MethodHandler {
+    /**
+     * Is called when a method is invoked on a proxy instance associated
+     * with this handler.  This method must process that method invocation.
+     *
+     * @param self          the proxy instance.
+     * @param thisMethod    the overridden method declared in the super
+     *                      class or interface.
+     * @param proceed       the method handle for invoking the overridden
+     *                      method.  Its type is
+     *                      <code>(Object,Object[])Object</code>;
+     *                      it takes the proxy instance and the arguments.
+     *                      If the overridden method returns a primitive
+     *                      value, it returns a wrapper object.  If the method
+     *                      is <code>void</code>, it returns null.
+     *                      It is null if the overridden method is
+     *                      abstract or declared in the interface.
+     * @param args          an array of objects containing the values of
+     *                      the arguments passed in the method invocation
+     *                      on the proxy instance.  If a parameter type is
+     *                      a primitive type, the type of the array element
+     *                      is a wrapper class.
+     * @return              the resulting value of the method invocation.
+     *
+     * @throws Throwable    if the method invocation fails.
+     */
+    Object invoke(Object self, Method thisMethod, MethodHandle proceed,
+                  Object[] args) throws Throwable;
+
+    /**
+     * Is called by a proxy class created without
+     * <code>setUseMethodHandles(true)</code>.  It converts
+     * <code>proceed</code> into a method handle and calls
+     * {@link #invoke(Object, Method, MethodHandle, Object[])}.
+     */
+    @Override
+    default Object invoke(Object self, Method thisMethod, Method proceed,
+                          Object[] args) throws Throwable
+    {
+        return invoke(self, thisMethod,
+                      RuntimeSupport.makeProceedHandle(proceed), args);
+    }
+}
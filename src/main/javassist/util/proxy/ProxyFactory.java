@@ -26,6 +26,7 @@ import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
 import java.security.ProtectionDomain;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
@@ -35,6 +36,8 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.lang.invoke.MethodHandles.Lookup;
 
 import javassist.CannotCompileException;
@@ -185,7 +188,6 @@ public class ProxyFactory {
     private String classname;
     private String basename;
     private String superName;
-    private Class<?> thisClass;
     /**
      * per factory setting initialised from current setting for useCache but able to be reset before each create call
      */
@@ -194,6 +196,10 @@ public class ProxyFactory {
      * per factory setting initialised from current setting for useWriteReplace but able to be reset before each create call
      */
     private boolean factoryWriteReplace;
+    /**
+     * per factory setting initialised to false but able to be reset before each create call
+     */
+    private boolean factoryUseMethodHandles;
 
     /**
      * <p>If true, only public/protected methods are forwarded to a proxy object.
@@ -234,6 +240,8 @@ public class ProxyFactory {
 
     private static final String HOLDER = "_methods_";
     private static final String HOLDER_TYPE = "[Ljava/lang/reflect/Method;";
+    private static final String HANDLE_HOLDER = "_handles_";
+    private static final String HANDLE_HOLDER_TYPE = "[Ljava/lang/invoke/MethodHandle;";
     private static final String FILTER_SIGNATURE_FIELD = "_filter_signature";
     private static final String FILTER_SIGNATURE_TYPE = "[B";
     private static final String HANDLER = "handler";
@@ -332,8 +340,36 @@ public class ProxyFactory {
         factoryWriteReplace = useWriteReplace;
     }
 
-    private static Map<ClassLoader,Map<String,ProxyDetails>> proxyCache =
-            new WeakHashMap<ClassLoader,Map<String,ProxyDetails>>();
+    /**
+     * test whether this factory creates proxy classes passing method handles to a {@link MethodHandleHandler}
+     * @return true if this factory creates such proxy classes otherwise false
+     * @since 3.25
+     */
+    public boolean isUseMethodHandles()
+    {
+        return factoryUseMethodHandles;
+    }
+
+    /**
+     * configure whether this factory should create proxy classes passing method handles to a
+     * {@link MethodHandleHandler}. if true, a created class makes a method handle for every forwarder
+     * method when it is initialized. a {@link MethodHandleHandler} receives that method handle instead of
+     * a method handle made whenever the handler is called. a normal {@link MethodHandler} still receives
+     * a {@code java.lang.reflect.Method} object. the default value is false.
+     * @param useMethodHandles true if this factory should create such proxy classes
+     * @since 3.25
+     */
+    public void setUseMethodHandles(boolean useMethodHandles)
+    {
+        factoryUseMethodHandles = useMethodHandles;
+    }
+
+    /**
+     * the proxy cache.  the lock of this map is held only while the second tier map
+     * for a class loader is looked up.  the second tier map is a concurrent map.
+     */
+    private static Map<ClassLoader,ConcurrentMap<ProxyKey,ProxyDetails>> proxyCache =
+            Collections.synchronizedMap(new WeakHashMap<ClassLoader,ConcurrentMap<ProxyKey,ProxyDetails>>());
 
     /**
      * determine if a class is a javassist proxy class
@@ -348,8 +384,10 @@ public class ProxyFactory {
 
     /**
      * used to store details of a specific proxy class in the second tier of the proxy cache. this entry
-     * will be located in a hashmap keyed by the unique identifying name of the proxy class. the hashmap is
-     * located in a weak hashmap keyed by the classloader common to all proxy classes in the second tier map.
+     * will be located in a concurrent hashmap keyed by a {@link ProxyKey} identifying the proxy class. the
+     * hashmap is located in a weak hashmap keyed by the classloader common to all proxy classes in the second
+     * tier map. the entry is inserted before the proxy class is created and its monitor is held while the
+     * class is created, so that only the threads requesting the same proxy class wait for each other.
      */
     static class ProxyDetails {
         /**
@@ -359,8 +397,7 @@ public class ProxyFactory {
          */
         byte[] signature;
         /**
-         * a hexadecimal string representation of the signature bit sequence. this string also forms part
-         * of the proxy class name.
+         * a weak reference to the proxy class. it is null while the proxy class is not created yet.
          */
         Reference<Class<?>> proxyClass;
         /**
@@ -369,14 +406,150 @@ public class ProxyFactory {
          */
         boolean isUseWriteReplace;
 
-        ProxyDetails(byte[] signature, Class<?> proxyClass, boolean isUseWriteReplace)
+        ProxyDetails(byte[] signature, boolean isUseWriteReplace)
         {
             this.signature = signature;
-            this.proxyClass = new WeakReference<Class<?>>(proxyClass);
+            this.proxyClass = null;
             this.isUseWriteReplace = isUseWriteReplace;
         }
     }
 
+    /**
+     * the key of the second tier of the proxy cache. two keys are equal if they have the identical
+     * super class and interfaces, the same filter signature and the same writeReplace and method
+     * handle settings. the
+     * hash code is computed in advance from the identity hash codes of the classes and the signature.
+     *
+     * a key used only for looking up the cache refers to the classes directly. a key stored in the
+     * cache is obtained by {@link #weaken()} and it refers to the classes through weak references,
+     * so that the key does not keep the classes or their class loader alive.
+     */
+    static class ProxyKey {
+        private final Class<?> superClass;
+        private final Class<?>[] interfaces;
+        private final byte[] signature;
+        private final boolean isUseWriteReplace;
+        private final boolean isUseMethodHandles;
+        private final int hash;
+
+        ProxyKey(Class<?> superClass, Class<?>[] interfaces, byte[] signature, boolean isUseWriteReplace,
+                 boolean isUseMethodHandles)
+        {
+            this.superClass = superClass;
+            this.interfaces = interfaces == null ? new Class<?>[0] : interfaces;
+            this.signature = signature;
+            this.isUseWriteReplace = isUseWriteReplace;
+            this.isUseMethodHandles = isUseMethodHandles;
+            int h = System.identityHashCode(superClass);
+            for (int i = 0; i < this.interfaces.length; i++)
+                h = h * 31 + System.identityHashCode(this.interfaces[i]);
+
+            h = h * 31 + Arrays.hashCode(signature);
+            if (isUseMethodHandles)
+                h = h * 31 + 1;
+
+            this.hash = isUseWriteReplace ? h : ~h;
+        }
+
+        /**
+         * copies a key. this is used by the subclass.
+         */
+        ProxyKey(ProxyKey key)
+        {
+            this.superClass = null;
+            this.interfaces = null;
+            this.signature = key.signature;
+            this.isUseWriteReplace = key.isUseWriteReplace;
+            this.isUseMethodHandles = key.isUseMethodHandles;
+            this.hash = key.hash;
+        }
+
+        Class<?> superClass() { return superClass; }
+
+        int interfaceCount() { return interfaces.length; }
+
+        Class<?> getInterface(int i) { return interfaces[i]; }
+
+        /**
+         * returns an equivalent key that refers to the classes through weak references.
+         */
+        ProxyKey weaken() { return new WeakProxyKey(this); }
+
+        @Override
+        public int hashCode() { return hash; }
+
+        @Override
+        public boolean equals(Object obj)
+        {
+            if (obj == this)
+                return true;
+
+            if (!(obj instanceof ProxyKey))
+                return false;
+
+            ProxyKey key = (ProxyKey)obj;
+            if (hash != key.hash || isUseWriteReplace != key.isUseWriteReplace
+                || isUseMethodHandles != key.isUseMethodHandles)
+                return false;
+
+            int n = interfaceCount();
+            if (n != key.interfaceCount())
+                return false;
+
+            Class<?> sc = superClass();
+            if (sc != key.superClass()
+                || (sc == null && (hasBeenCollected() || key.hasBeenCollected())))
+                return false;
+
+            for (int i = 0; i < n; i++) {
+                Class<?> intf = getInterface(i);
+                if (intf == null || intf != key.getInterface(i))
+                    return false;
+            }
+
+            return Arrays.equals(signature, key.signature);
+        }
+
+        /**
+         * returns true if a class referred to by this key has been garbage collected.
+         */
+        boolean hasBeenCollected() { return false; }
+    }
+
+    static final class WeakProxyKey extends ProxyKey {
+        private final Reference<Class<?>> superClass;
+        private final Reference<Class<?>>[] interfaces;
+
+        WeakProxyKey(ProxyKey key)
+        {
+            super(key);
+            Class<?> sc = key.superClass();
+            superClass = sc == null ? null : new WeakReference<Class<?>>(sc);
+            @SuppressWarnings("unchecked")
+            Reference<Class<?>>[] refs
+                = (Reference<Class<?>>[])new Reference<?>[key.interfaceCount()];
+            for (int i = 0; i < refs.length; i++)
+                refs[i] = new WeakReference<Class<?>>(key.getInterface(i));
+
+            interfaces = refs;
+        }
+
+        @Override
+        Class<?> superClass() { return superClass == null ? null : superClass.get(); }
+
+        @Override
+        int interfaceCount() { return interfaces.length; }
+
+        @Override
+        Class<?> getInterface(int i) { return interfaces[i].get(); }
+
+        @Override
+        ProxyKey weaken() { return this; }
+
+        @Override
+        boolean hasBeenCollected() { return superClass != null && superClass.get() == null; }
+    }
+
     /**
      * Constructs a factory of proxy class.
      */
@@ -388,10 +561,10 @@ public class ProxyFactory {
         signature = null;
         signatureMethods = null;
         hasGetHandler = false;
-        thisClass = null;
         writeDirectory = null;
         factoryUseCache = useCache;
         factoryWriteReplace = useWriteReplace;
+        factoryUseMethodHandles = false;
     }
 
     /**
@@ -515,28 +688,22 @@ public class ProxyFactory {
     }
 
     private Class<?> createClass1(Lookup lookup) {
-        Class<?> result = thisClass;
-        if (result == null) {
-            ClassLoader cl = getClassLoader();
-            synchronized (proxyCache) {
-                if (factoryUseCache)
-                    createClass2(cl, lookup);
-                else
-                    createClass3(cl, lookup);
-
-                result = thisClass;
-                // don't retain any unwanted references
-                thisClass = null;
-            }
-        }
-
-        return result;
+        ClassLoader cl = getClassLoader();
+        if (factoryUseCache)
+            return createClass2(cl, lookup);
+        else
+            return createClass3(cl, lookup);
     }
 
     private static char[] hexDigits =
             { '0', '1', '2', '3', '4', '5', '6', '7',
             '8', '9', 'a', 'b', 'c', 'd', 'e', 'f' };
 
+    /**
+     * Returns a string identifying the proxy class with the given properties.
+     * The proxy cache does not use this string any longer; it uses a more
+     * compact key object.
+     */
     public String getKey(Class<?> superClass, Class<?>[] interfaces, byte[] signature, boolean useWriteReplace)
     {
         StringBuffer sbuf = new StringBuffer();
@@ -562,35 +729,49 @@ public class ProxyFactory {
         return sbuf.toString();
     }
 
-    private void createClass2(ClassLoader cl, Lookup lookup) {
-        String key = getKey(superClass, interfaces, signature, factoryWriteReplace);
-        /*
-         * Excessive concurrency causes a large memory footprint and slows the
-         * execution speed down (with JDK 1.5).  Thus, we use a jumbo lock for
-         * reducing concrrency.
-         */
-        // synchronized (proxyCache) {
-            Map<String,ProxyDetails> cacheForTheLoader = proxyCache.get(cl);
-            ProxyDetails details;
+    private Class<?> createClass2(ClassLoader cl, Lookup lookup) {
+        ProxyKey key = new ProxyKey(superClass, interfaces, signature, factoryWriteReplace,
+                                    factoryUseMethodHandles);
+        ConcurrentMap<ProxyKey,ProxyDetails> cacheForTheLoader;
+        synchronized (proxyCache) {
+            cacheForTheLoader = proxyCache.get(cl);
             if (cacheForTheLoader == null) {
-                cacheForTheLoader = new HashMap<String,ProxyDetails>();
+                cacheForTheLoader = new ConcurrentHashMap<ProxyKey,ProxyDetails>();
                 proxyCache.put(cl, cacheForTheLoader);
             }
-            details = cacheForTheLoader.get(key);
-            if (details != null) {
-                Reference<Class<?>> reference = details.proxyClass;
-                thisClass = reference.get();
-                if (thisClass != null) {
-                    return;
-                }
+        }
+
+        ProxyDetails details = cacheForTheLoader.get(key);
+        if (details == null) {
+            details = new ProxyDetails(signature, factoryWriteReplace);
+            ProxyDetails found = cacheForTheLoader.putIfAbsent(key.weaken(), details);
+            if (found != null)
+                details = found;
+        }
+
+        /*
+         * Only the threads creating the same proxy class wait for each other.
+         * Proxy classes for other keys or other class loaders are created
+         * concurrently.
+         */
+        synchronized (details) {
+            Reference<Class<?>> reference = details.proxyClass;
+            if (reference != null) {
+                Class<?> c = reference.get();
+                if (c != null)
+                    return c;
             }
-            createClass3(cl, lookup);
-            details = new  ProxyDetails(signature, thisClass, factoryWriteReplace);
-            cacheForTheLoader.put(key, details);
-        // }
+
+            Class<?> c = createClass3(cl, lookup);
+            details.proxyClass = new WeakReference<Class<?>>(c);
+            return c;
+        }
     }
 
-    private void createClass3(ClassLoader cl, Lookup lookup) {
+    /* The class name and the other states of this factory are
+     * updated while a proxy class is made.
+     */
+    private synchronized Class<?> createClass3(ClassLoader cl, Lookup lookup) {
         // we need a new class so we need a new class name
         allocateClassName();
 
@@ -599,21 +780,23 @@ public class ProxyFactory {
             if (writeDirectory != null)
                 FactoryHelper.writeFile(cf, writeDirectory);
 
+            Class<?> c;
             if (lookup == null)
-                thisClass = FactoryHelper.toClass(cf, getClassInTheSamePackage(), cl, getDomain());
+                c = FactoryHelper.toClass(cf, getClassInTheSamePackage(), cl, getDomain());
             else
-                thisClass = FactoryHelper.toClass(cf, lookup);
+                c = FactoryHelper.toClass(cf, lookup);
 
-            setField(FILTER_SIGNATURE_FIELD, signature);
+            setField(c, FILTER_SIGNATURE_FIELD, signature);
             // legacy behaviour : we only set the default interceptor static field if we are not using the cache
             if (!factoryUseCache) {
-                setField(DEFAULT_INTERCEPTOR, handler);
+                setField(c, DEFAULT_INTERCEPTOR, handler);
             }
+
+            return c;
         }
         catch (CannotCompileException e) {
             throw new RuntimeException(e.getMessage(), e);
         }
-
     }
 
     /**
@@ -630,8 +813,8 @@ public class ProxyFactory {
             return this.getClass();     // maybe wrong?
     }
 
-    private void setField(String fieldName, Object value) {
-        if (thisClass != null && value != null)
+    private static void setField(Class<?> thisClass, String fieldName, Object value) {
+        if (value != null)
             try {
                 Field f = thisClass.getField(fieldName);
                 SecurityActions.setAccessible(f, true);
@@ -806,13 +989,10 @@ public class ProxyFactory {
         // if we were using the cache and the handler is non-null then we must stop caching
         if (factoryUseCache && mi != null)  {
             factoryUseCache = false;
-            // clear any currently held class so we don't try to reuse it or set its handler field
-          thisClass  = null;
         }
+        // the handler is set to the default interceptor field of a proxy class
+        // when the class is created.  This factory does not hold created classes.
         handler = mi;
-        // this retains the behaviour of the old code which resets any class we were holding on to
-        // this is probably not what is wanted
-        setField(DEFAULT_INTERCEPTOR, handler);
     }
 
     /**
@@ -884,7 +1064,7 @@ public class ProxyFactory {
 
         List<Find2MethodsArgs> forwarders = new ArrayList<Find2MethodsArgs>();
         int s = overrideMethods(cf, pool, classname, forwarders);
-        addClassInitializer(cf, pool, classname, s, forwarders);
+        addClassInitializer(cf, pool, classname, s, forwarders, factoryUseMethodHandles);
         addSetter(classname, cf, pool);
         if (!hasGetHandler)
             addGetter(classname, cf, pool);
@@ -898,7 +1078,6 @@ public class ProxyFactory {
             }
         }
 
-        thisClass = null;
         return cf;
     }
 
@@ -1012,15 +1191,26 @@ public class ProxyFactory {
     }
 
     private static void addClassInitializer(ClassFile cf, ConstPool cp,
-                String classname, int size, List<Find2MethodsArgs> forwarders)
+                String classname, int size, List<Find2MethodsArgs> forwarders,
+                boolean useMethodHandles)
         throws CannotCompileException
     {
         FieldInfo finfo = new FieldInfo(cp, HOLDER, HOLDER_TYPE);
         finfo.setAccessFlags(AccessFlag.PRIVATE | AccessFlag.STATIC);
         cf.addField(finfo);
+        if (useMethodHandles) {
+            FieldInfo hinfo = new FieldInfo(cp, HANDLE_HOLDER, HANDLE_HOLDER_TYPE);
+            hinfo.setAccessFlags(AccessFlag.PRIVATE | AccessFlag.STATIC);
+            cf.addField(hinfo);
+        }
+
         MethodInfo minfo = new MethodInfo(cp, "<clinit>", "()V");
         minfo.setAccessFlags(AccessFlag.STATIC);
-        setThrows(minfo, cp, new Class<?>[] { ClassNotFoundException.class });
+        if (useMethodHandles)
+            setThrows(minfo, cp, new Class<?>[] { ClassNotFoundException.class,
+                                                  IllegalAccessException.class });
+        else
+            setThrows(minfo, cp, new Class<?>[] { ClassNotFoundException.class });
 
         Bytecode code = new Bytecode(cp, 0, 2);
         code.addIconst(size * 2);
@@ -1043,6 +1233,17 @@ public class ProxyFactory {
         code.addAload(varArray);
         code.addPutstatic(classname, HOLDER, HOLDER_TYPE);
 
+        if (useMethodHandles) {
+            // _handles_ = RuntimeSupport.makeProceedHandles(MethodHandles.lookup(), _methods_);
+            code.addInvokestatic("java.lang.invoke.MethodHandles", "lookup",
+                                 "()Ljava/lang/invoke/MethodHandles$Lookup;");
+            code.addAload(varArray);
+            code.addInvokestatic(RuntimeSupport.class.getName(), "makeProceedHandles",
+                    "(Ljava/lang/invoke/MethodHandles$Lookup;[Ljava/lang/reflect/Method;)"
+                    + HANDLE_HOLDER_TYPE);
+            code.addPutstatic(classname, HANDLE_HOLDER, HANDLE_HOLDER_TYPE);
+        }
+
         code.addLconst(SERIAL_VERSION_UID_VALUE);
         code.addPutstatic(classname, SERIAL_VERSION_UID_FIELD, SERIAL_VERSION_UID_TYPE);
         code.addOpcode(Bytecode.RETURN);
@@ -1144,7 +1345,7 @@ public class ProxyFactory {
 
         MethodInfo forwarder
             = makeForwarder(thisClassname, meth, desc, cp, declClass,
-                            delegatorName, index, forwarders);
+                            delegatorName, index, forwarders, factoryUseMethodHandles);
         cf.addMethod(forwarder);
     }
 
@@ -1387,7 +1588,7 @@ public class ProxyFactory {
     private static MethodInfo makeForwarder(String thisClassName,
                     Method meth, String desc, ConstPool cp,
                     Class<?> declClass, String delegatorName, int index,
-                    List<Find2MethodsArgs> forwarders) {
+                    List<Find2MethodsArgs> forwarders, boolean useMethodHandles) {
         MethodInfo forwarder = new MethodInfo(cp, meth.getName(), desc);
         forwarder.setAccessFlags(Modifier.FINAL
                     | (meth.getModifiers() & ~(Modifier.ABSTRACT
@@ -1407,6 +1608,11 @@ public class ProxyFactory {
          *     :
          * return ($r)handler.invoke(this, methods[index * 2],
          *                methods[index * 2 + 1], $args);
+         *
+         * or, if useMethodHandles is true,
+         *
+         * return ($r)RuntimeSupport.invoke(handler, this, methods[index * 2],
+         *                methods[index * 2 + 1], handles[index], $args);
          */
         int origIndex = index * 2;
         int delIndex = index * 2 + 1;
@@ -1428,10 +1634,21 @@ public class ProxyFactory {
         code.addIconst(delIndex);
         code.addOpcode(Opcode.AALOAD);
 
-        makeParameterList(code, meth.getParameterTypes());
-        code.addInvokeinterface(MethodHandler.class.getName(), "invoke",
-            "(Ljava/lang/Object;Ljava/lang/reflect/Method;Ljava/lang/reflect/Method;[Ljava/lang/Object;)Ljava/lang/Object;",
-            5);
+        if (useMethodHandles) {
+            code.addGetstatic(thisClassName, HANDLE_HOLDER, HANDLE_HOLDER_TYPE);
+            code.addIconst(index);
+            code.addOpcode(Opcode.AALOAD);
+            makeParameterList(code, meth.getParameterTypes());
+            code.addInvokestatic(RuntimeSupport.class.getName(), "invoke",
+                "(" + HANDLER_TYPE + "Ljava/lang/Object;Ljava/lang/reflect/Method;Ljava/lang/reflect/Method;"
+                + "Ljava/lang/invoke/MethodHandle;[Ljava/lang/Object;)Ljava/lang/Object;");
+        }
+        else {
+            makeParameterList(code, meth.getParameterTypes());
+            code.addInvokeinterface(MethodHandler.class.getName(), "invoke",
+                "(Ljava/lang/Object;Ljava/lang/reflect/Method;Ljava/lang/reflect/Method;[Ljava/lang/Object;)Ljava/lang/Object;",
+                5);
+        }
         Class<?> retType = meth.getReturnType();
         addUnwrapper(code, retType);
         addReturn(code, retType);
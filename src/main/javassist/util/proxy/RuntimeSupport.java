@@ -17,6 +17,9 @@
 package javassist.util.proxy;
 
 import java.io.Serializable;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.Method;
 
 /**
@@ -43,6 +46,84 @@ public class RuntimeSupport {
         }
     };
 
+    private static final MethodType PROCEED_TYPE
+        = MethodType.methodType(Object.class, Object.class, Object[].class);
+
+    /**
+     * Makes the method handles for invoking the forwarder methods
+     * stored in the given array.  It is called by the class initializer
+     * of a proxy class created with <code>setUseMethodHandles(true)</code>.
+     *
+     * @param lookup        the lookup object of the proxy class.
+     * @param methods       the array filled by <code>find2Methods()</code>.
+     * @return  the array of method handles.  Its <code>i</code>-th element
+     *          is for the forwarder method at <code>methods[i * 2 + 1]</code>.
+     * @see ProxyFactory#setUseMethodHandles(boolean)
+     * @since 3.25
+     */
+    public static MethodHandle[] makeProceedHandles(MethodHandles.Lookup lookup,
+                                                    Method[] methods)
+        throws IllegalAccessException
+    {
+        MethodHandle[] handles = new MethodHandle[methods.length / 2];
+        for (int i = 0; i < handles.length; i++) {
+            Method proceed = methods[i * 2 + 1];
+            if (proceed != null)
+                handles[i] = toProceedHandle(lookup.unreflect(proceed),
+                                             proceed.getParameterTypes().length);
+        }
+
+        return handles;
+    }
+
+    /**
+     * Makes a method handle for invoking the given forwarder method.
+     * The type of the returned method handle is
+     * <code>(Object,Object[])Object</code>.
+     *
+     * @param proceed       the forwarder method.  It may be null.
+     * @return null if <code>proceed</code> is null.
+     * @see MethodHandleHandler
+     * @since 3.25
+     */
+    public static MethodHandle makeProceedHandle(Method proceed)
+        throws IllegalAccessException
+    {
+        if (proceed == null)
+            return null;
+
+        SecurityActions.setAccessible(proceed, true);
+
+        return toProceedHandle(MethodHandles.publicLookup().unreflect(proceed),
+                               proceed.getParameterTypes().length);
+    }
+
+    private static MethodHandle toProceedHandle(MethodHandle mh, int params) {
+        return mh.asSpreader(Object[].class, params).asType(PROCEED_TYPE);
+    }
+
+    /**
+     * Calls the method handler.  It is called by the methods of a proxy
+     * class created with <code>setUseMethodHandles(true)</code>.
+     * If the handler is a <code>MethodHandleHandler</code>,
+     * <code>proceedHandle</code> is passed to the handler.
+     * Otherwise, <code>proceed</code> is passed.
+     *
+     * @see ProxyFactory#setUseMethodHandles(boolean)
+     * @since 3.25
+     */
+    public static Object invoke(MethodHandler handler, Object self,
+                                Method thisMethod, Method proceed,
+                                MethodHandle proceedHandle, Object[] args)
+        throws Throwable
+    {
+        if (handler instanceof MethodHandleHandler)
+            return ((MethodHandleHandler)handler).invoke(self, thisMethod,
+                                                         proceedHandle, args);
+        else
+            return handler.invoke(self, thisMethod, proceed, args);
+    }
+
     /**
      * Finds two methods specified by the parameters and stores them
      * into the given array.
@@ -98,6 +98,151 @@ public class JvstTest extends JvstTestRoot {
         is.close();
     }
 
+    public void testJarClassPathKeptOpen() throws Exception {
+        String jarFileName = "./simple.jar";
+        ClassLoader classLoader = getClass().getClassLoader();
+        File jarFile = new File(classLoader.getResource(jarFileName).getFile());
+        ClassPool pool = new ClassPool(null);
+        ClassPath cp = pool.appendClassPath(jarFile.getAbsolutePath());
+        for (int i = 0; i < 3; i++) {
+            InputStream is = cp.openClassfile("com.test.Test");
+            assertNotNull(is);
+            assertEquals(0xCAFEBABE, new java.io.DataInputStream(is).readInt());
+            is.close();
+        }
+
+        assertNotNull(cp.find("com.test.Test"));
+        assertNull(cp.find("com.test.NoSuchClass"));
+        assertNull(cp.openClassfile("com.test.NoSuchClass"));
+        assertEquals("com.test.Test", pool.get("com.test.Test").getName());
+
+        // the jar file is closed but it can be reopened.
+        pool.removeClassPath(cp);
+        InputStream is = cp.openClassfile("com.test.Test");
+        assertNotNull(is);
+        is.close();
+    }
+
+    public void testCloseJarFiles() throws Exception {
+        String jarFileName = "./simple.jar";
+        ClassLoader classLoader = getClass().getClassLoader();
+        File jarFile = new File(classLoader.getResource(jarFileName).getFile());
+        ClassPool pool = new ClassPool(null);
+        ClassPath cp = pool.appendClassPath(jarFile.getAbsolutePath());
+        InputStream is = cp.openClassfile("com.test.Test");
+        InputStream is2 = cp.openClassfile("com.test.Test");
+
+        // the streams can be read after the jar file is closed.
+        pool.closeJarFiles();
+        assertEquals(0xCAFEBABE, new java.io.DataInputStream(is).readInt());
+        is.close();
+        is.close();
+        assertEquals(0xCAFEBABE, new java.io.DataInputStream(is2).readInt());
+        is2.close();
+
+        pool.closeJarFiles();
+        assertEquals("com.test.Test", pool.get("com.test.Test").getName());
+    }
+
+    public void testLazyParsing() throws Exception {
+        ClassPool pool = new ClassPool(null);
+        pool.appendSystemPath();
+        pool.setLazyParsing(true);
+        ClassPool pool2 = new ClassPool(null);
+        pool2.appendSystemPath();
+        String[] names = { "java.util.HashMap", "java.util.Map$Entry",
+                           "java.lang.Object", "java.lang.Thread$State" };
+        for (String name: names) {
+            CtClassType c = (CtClassType)pool.get(name);
+            CtClass c2 = pool2.get(name);
+            assertEquals(c2.getModifiers(), c.getModifiers());
+            assertEquals(c2.isInterface(), c.isInterface());
+            assertEquals(c2.getClassFile2().getSuperclass(),
+                         c.getSuperclass() == null ? null : c.getSuperclass().getName());
+            assertEquals(c2.getInterfaces().length, c.getInterfaces().length);
+            assertNull(c.classfile);
+            assertNotNull(c.rawClassfile);
+        }
+
+        CtClassType map = (CtClassType)pool.get("java.util.HashMap");
+        assertTrue(map.subtypeOf(pool.get("java.util.Map")));
+        assertNull(map.classfile);
+        assertNotNull(map.getDeclaredMethod("get"));
+        assertNotNull(map.classfile);
+        assertNull(map.rawClassfile);
+        assertEquals("java.util.AbstractMap", map.getSuperclass().getName());
+    }
+
+    public void testPackageIndex() throws Exception {
+        String jarFileName = "./simple.jar";
+        ClassLoader classLoader = getClass().getClassLoader();
+        File jarFile = new File(classLoader.getResource(jarFileName).getFile());
+        ClassPool pool = new ClassPool(null);
+        pool.setPackageIndexing(true);
+        ClassPath jar = pool.appendClassPath(jarFile.getAbsolutePath());
+        pool.appendClassPath(PATH);
+        assertNotNull(pool.find("com.test.Test"));
+        assertNotNull(pool.find("test1.Cflow"));
+        assertNull(pool.find("com.test.NoSuchClass"));
+        assertNull(pool.find("no.such.Package"));
+        assertNull(pool.find("java.lang.String"));
+
+        // a LoaderClassPath is not indexed but it is always searched.
+        pool.appendClassPath(new LoaderClassPath(classLoader));
+        assertNotNull(pool.find("java.lang.String"));
+        assertEquals("java.lang.String", pool.get("java.lang.String").getName());
+
+        pool.removeClassPath(jar);
+        assertNull(pool.find("com.test.Test"));
+        pool.insertClassPath(jarFile.getAbsolutePath());
+        assertNotNull(pool.find("com.test.Test"));
+        assertNotNull(pool.get("com.test.Test"));
+
+        pool.setPackageIndexing(false);
+        assertNotNull(pool.find("test1.Cflow"));
+    }
+
+    public void testNegativeCache() throws Exception {
+        ClassPool pool = new ClassPool(null);
+        pool.appendClassPath(PATH);
+        assertEquals(0, pool.getNegativeCacheSize());
+        assertNull(pool.getOrNull("test1.NoSuchClass"));
+        assertEquals(0, pool.getNegativeCacheHits());
+        assertEquals(0, pool.getNegativeCacheMisses());
+
+        pool.setNegativeCacheSize(2);
+        assertNull(pool.getOrNull("test1.NoSuchClass"));
+        assertEquals(0, pool.getNegativeCacheHits());
+        assertEquals(1, pool.getNegativeCacheMisses());
+        assertNull(pool.getOrNull("test1.NoSuchClass"));
+        assertNull(pool.find("test1.NoSuchClass"));
+        assertEquals(2, pool.getNegativeCacheHits());
+        assertEquals(1, pool.getNegativeCacheMisses());
+
+        // the least recently used name is discarded.
+        assertNull(pool.find("test1.NoSuchClass2"));
+        assertNull(pool.find("test1.NoSuchClass3"));
+        assertNull(pool.find("test1.NoSuchClass"));
+        assertEquals(4, pool.getNegativeCacheMisses());
+
+        // makeClass() removes the name.
+        assertNull(pool.find("test1.NoSuchClass"));
+        assertEquals(3, pool.getNegativeCacheHits());
+        pool.makeClass("test1.NoSuchClass").detach();
+        assertNull(pool.find("test1.NoSuchClass"));
+        assertEquals(3, pool.getNegativeCacheHits());
+        assertEquals(5, pool.getNegativeCacheMisses());
+
+        // a class path change clears the cache.
+        ClassPool pool2 = new ClassPool(null);
+        pool2.setNegativeCacheSize(10);
+        assertNull(pool2.getOrNull("test1.Cflow"));
+        assertNull(pool2.getOrNull("test1.Cflow"));
+        assertEquals(1, pool2.getNegativeCacheHits());
+        pool2.appendClassPath(PATH);
+        assertNotNull(pool2.getOrNull("test1.Cflow"));
+    }
+
     public void testSubtype() throws Exception {
         CtClass cc = sloader.get("test1.Subtype");
         assertTrue(cc.subtypeOf(cc));
@@ -823,6 +968,62 @@ public class JvstTest extends JvstTestRoot {
         assertEquals(2, sig.length);
     }
 
+    public void testDescCache() throws Exception {
+        Class[] sig = Desc.getParams("(ILjava/lang/String;)V");
+        sig[0] = null;
+        sig = Desc.getParams("(ILjava/lang/String;)V");
+        assertEquals(int.class, sig[0]);
+        assertEquals(String.class, sig[1]);
+        assertSame(String.class, Desc.getType("Ljava/lang/String;"));
+        assertSame(String.class, Desc.getClazz("java.lang.String"));
+
+        CtClass cc = sloader.makeClass("test1.DescHolder");
+        cc.addField(CtField.make("public Class[] sig;", cc));
+        cc.addField(CtField.make("public Class cls;", cc));
+        CtMethod m = CtNewMethod.make(
+                "public int run(int i, String s) { return i; }", cc);
+        cc.addMethod(m);
+        Desc.useStaticHolders = true;
+        try {
+            m.insertBefore("{ sig = $sig; cls = $class; $sig[0] = null; }");
+            m.insertAfter("{ if ($type != int.class) $_ = -1; }");
+        }
+        finally {
+            Desc.useStaticHolders = false;
+        }
+
+        int holders = 0;
+        for (CtField f: cc.getDeclaredFields())
+            if (f.getName().startsWith("_desc$"))
+                holders++;
+
+        assertEquals(4, holders);
+
+        Desc.useStaticHolders = true;
+        try {
+            m.insertBefore("{ sig = $sig; cls = $class; undefined(); }");
+            fail();
+        }
+        catch (CannotCompileException e) {}
+        finally {
+            Desc.useStaticHolders = false;
+        }
+
+        // no holder is left by the failed compilation.
+        assertEquals(4 + 2, cc.getDeclaredFields().length);
+        cc.writeFile();
+        Object obj = make(cc.getName());
+        java.lang.reflect.Method run
+            = obj.getClass().getMethod("run", int.class, String.class);
+        for (int i = 0; i < 2; i++) {
+            assertEquals(3, run.invoke(obj, 3, "s"));
+            Class[] s = (Class[])obj.getClass().getField("sig").get(obj);
+            assertEquals(int.class, s[0]);
+            assertEquals(String.class, s[1]);
+            assertSame(obj.getClass(), obj.getClass().getField("cls").get(obj));
+        }
+    }
+
     public void testCast() throws Exception {
         CtClass cc = sloader.makeClass("test1.CastTest");
 
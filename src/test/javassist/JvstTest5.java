@@ -11,9 +11,12 @@ import javassist.bytecode.ConstPool;
 import javassist.bytecode.InnerClassesAttribute;
 import javassist.bytecode.NestHostAttribute;
 import javassist.bytecode.NestMembersAttribute;
+import javassist.bytecode.SourceFileAttribute;
+import javassist.bytecode.StackMapTable;
 import javassist.expr.ExprEditor;
 import javassist.expr.Handler;
 import javassist.expr.MethodCall;
+import javassist.expr.NewExpr;
 
 @SuppressWarnings({"rawtypes","unchecked","unused"})
 public class JvstTest5 extends JvstTestRoot {
@@ -453,4 +456,604 @@ public class JvstTest5 extends JvstTestRoot {
         cc.getClassFile().compact();
         cc.toClass(test5.DefineClassCapability.class);
     }
+
+    public void testConcurrentClassPool() throws Exception {
+        final ConcurrentClassPool pool = new ConcurrentClassPool(true);
+        final String[] names = { "test5.NestHost", "test5.NestHost2",
+                                 "test5.VarArgsMethod", "test5.Issue155" };
+        final CtClass[][] results = new CtClass[8][];
+        Thread[] threads = new Thread[results.length];
+        for (int i = 0; i < threads.length; i++) {
+            final int k = i;
+            threads[i] = new Thread() {
+                public void run() {
+                    CtClass[] found = new CtClass[names.length];
+                    for (int j = 0; j < names.length; j++)
+                        found[j] = pool.getOrNull(names[j]);
+
+                    results[k] = found;
+                }
+            };
+            threads[i].start();
+        }
+
+        for (int i = 0; i < threads.length; i++)
+            threads[i].join();
+
+        for (int j = 0; j < names.length; j++) {
+            assertNotNull(results[0][j]);
+            for (int i = 1; i < results.length; i++)
+                assertSame(results[0][j], results[i][j]);
+        }
+
+        // the parent pool is searched first.
+        ClassPool child = new ConcurrentClassPool(pool);
+        assertSame(pool.get("java.lang.Object"), child.get("java.lang.Object"));
+        assertNull(pool.getOrNull("test5.NoSuchClass"));
+
+        CtClass cc = pool.makeClass("test5.ConcurrentPoolMade");
+        assertSame(cc, pool.get("test5.ConcurrentPoolMade"));
+        assertSame(CtClass.intType, new ConcurrentClassPool().get("int"));
+    }
+
+    public void testBoundedClassPool() throws Exception {
+        BoundedClassPool pool = new BoundedClassPool(true, 4000);
+        CtClass host = pool.get("test5.NestHost");
+        host.getClassFile2();
+        assertTrue(pool.getMemoryUsage() > 0);
+        assertSame(host, pool.get("test5.NestHost"));
+
+        CtClass modified = pool.get("test5.NestHost2");
+        modified.addField(CtField.make("public int boundedPool;", modified));
+        String[] names = { "test5.VarArgsMethod", "test5.Issue155",
+                           "java.lang.String", "java.util.HashMap" };
+        for (String name: names)
+            pool.get(name).getClassFile2();
+
+        assertTrue(pool.getMemoryUsage() <= pool.getMemoryBudget());
+        // the released class is returned while it is referenced.
+        assertSame(host, pool.get("test5.NestHost"));
+        modified = null;
+        pool.setMemoryBudget(0);
+        assertEquals(0, pool.getMemoryUsage());
+        assertNotNull(pool.get("test5.NestHost2").getField("boundedPool"));
+        CtClass made = pool.makeClass("test5.BoundedPoolMade");
+        assertSame(made, pool.get("test5.BoundedPoolMade"));
+        assertNotNull(pool.get("test5.Issue155").getClassFile2());
+        assertSame(CtClass.intType, pool.get("int"));
+    }
+
+    public void testBoundedClassPoolKeepsFrozenClasses() throws Exception {
+        BoundedClassPool pool = new BoundedClassPool(true, 1000000);
+        CtClass frozen = pool.get("test5.VarArgsMethod");
+        frozen.toBytecode();
+        assertTrue(frozen.isFrozen());
+        CtClass frozen2 = pool.get("test5.Issue155");
+        pool.setMemoryBudget(0);
+        frozen2.freeze();
+        int hash = System.identityHashCode(frozen);
+        int hash2 = System.identityHashCode(frozen2);
+        frozen = frozen2 = null;
+        for (int i = 0; i < 3; i++)
+            System.gc();
+
+        // the frozen classes are not released.
+        assertEquals(hash, System.identityHashCode(pool.get("test5.VarArgsMethod")));
+        assertTrue(pool.get("test5.VarArgsMethod").isFrozen());
+        assertEquals(hash2, System.identityHashCode(pool.get("test5.Issue155")));
+        assertTrue(pool.get("test5.Issue155").isFrozen());
+    }
+
+    public void testDeferStackMaps() throws Exception {
+        CtClass cc = sloader.makeClass("test5.DeferStackMaps");
+        CtMethod m = CtNewMethod.make(
+                "public int run(int i) { if (i > 0) return i; return -i; }", cc);
+        cc.addMethod(m);
+        AttributeInfo smt = m.getMethodInfo().getCodeAttribute()
+                             .getAttribute(StackMapTable.tag);
+        assertNotNull(smt);
+
+        cc.deferStackMaps(true);
+        assertTrue(cc.getClassFile().isStackMapDeferred());
+        m.insertBefore("{ if ($1 > 10) $1 = 10; }");
+        m.insertAfter("{ if ($_ < 3) $_ = 3; }");
+        m.instrument(new ExprEditor());
+        assertSame(smt, m.getMethodInfo().getCodeAttribute()
+                         .getAttribute(StackMapTable.tag));
+
+        cc.flushStackMaps();
+        AttributeInfo smt2 = m.getMethodInfo().getCodeAttribute()
+                              .getAttribute(StackMapTable.tag);
+        assertNotSame(smt, smt2);
+        assertTrue(cc.getClassFile().isStackMapDeferred());
+
+        m.insertBefore("{ if ($1 < -10) $1 = -10; }");
+        assertSame(smt2, m.getMethodInfo().getCodeAttribute()
+                          .getAttribute(StackMapTable.tag));
+        cc.writeFile();
+        Object obj = make(cc.getName());
+        assertEquals(10, invoke(obj, "run", 20));
+        assertEquals(10, invoke(obj, "run", -20));
+        assertEquals(3, invoke(obj, "run", 1));
+        assertEquals(5, invoke(obj, "run", 5));
+    }
+
+    public void testTransformAll() throws Exception {
+        ClassPool pool = new ClassPool(null);
+        pool.appendSystemPath();
+        java.util.List<String> names = java.util.Arrays.asList(
+                "test5.VarArgsMethod", "test5.NoSuchClass", "test5.Issue155",
+                "test5.NestHost");
+        Translator translator = new Translator() {
+            public void start(ClassPool cp) {}
+            public void onLoad(ClassPool cp, String name)
+                throws NotFoundException, CannotCompileException
+            {
+                CtClass cc = cp.get(name);
+                cc.addMethod(CtNewMethod.make(
+                        "public int transformed(int i) { if (i > 0) return i; return 0; }",
+                        cc));
+            }
+        };
+
+        java.io.File jarFile = java.io.File.createTempFile("transformAll", ".jar");
+        java.io.File dir = java.io.File.createTempFile("transformAll", "");
+        assertTrue(dir.delete());
+        try {
+            transformAll(pool, names, translator, jarFile, dir);
+        }
+        finally {
+            jarFile.delete();
+            deleteAll(dir);
+        }
+    }
+
+    private void transformAll(ClassPool pool, java.util.List<String> names,
+                              Translator translator, java.io.File jarFile,
+                              java.io.File dir)
+        throws Exception
+    {
+        java.util.Map<String,Throwable> errors
+            = pool.transformAll(names, translator, 4, jarFile);
+        assertEquals(1, errors.size());
+        assertTrue(errors.get("test5.NoSuchClass") instanceof NotFoundException);
+        java.util.jar.JarFile jar = new java.util.jar.JarFile(jarFile);
+        try {
+            java.util.Enumeration<java.util.jar.JarEntry> e = jar.entries();
+            assertEquals("test5/VarArgsMethod.class", e.nextElement().getName());
+            assertEquals("test5/Issue155.class", e.nextElement().getName());
+            assertEquals("test5/NestHost.class", e.nextElement().getName());
+            assertFalse(e.hasMoreElements());
+        }
+        finally {
+            jar.close();
+        }
+
+        ClassPool pool2 = new ClassPool(null);
+        pool2.appendSystemPath();
+        errors = pool2.transformAll(names.subList(2, 4), translator, 2, dir);
+        assertTrue(errors.isEmpty());
+        assertTrue(new java.io.File(dir, "test5/Issue155.class").isFile());
+        ClassPool pool3 = new ClassPool(null);
+        pool3.appendClassPath(dir.getPath());
+        pool3.appendSystemPath();
+        assertNotNull(pool3.get("test5.NestHost").getDeclaredMethod("transformed"));
+        assertFalse(pool.get("test5.NestHost").getClassFile2().isStackMapDeferred());
+
+        ClassPool pool4 = new ClassPool(null);
+        pool4.appendSystemPath();
+        CtClass cc = pool4.get("test5.Issue155");
+        errors = pool4.transformAll(names.subList(2, 3), new Translator() {
+            public void start(ClassPool cp) {}
+            public void onLoad(ClassPool cp, String name) throws CannotCompileException {
+                throw new CannotCompileException("failed");
+            }
+        }, 1, dir);
+        assertTrue(errors.get("test5.Issue155") instanceof CannotCompileException);
+        assertFalse(cc.getClassFile2().isStackMapDeferred());
+    }
+
+    private static void deleteAll(java.io.File file) {
+        java.io.File[] files = file.listFiles();
+        if (files != null)
+            for (java.io.File f: files)
+                deleteAll(f);
+
+        file.delete();
+    }
+
+    public void testClassHierarchy() throws Exception {
+        ClassHierarchy h = sloader.getClassHierarchy();
+        CtClass list1 = sloader.get("java.util.ArrayList");
+        CtClass list2 = sloader.get("java.util.LinkedList");
+        assertEquals("java.util.AbstractList", h.commonSuperClass(list1, list2).getName());
+        assertEquals("java.util.AbstractList", h.commonSuperClass(list2, list1).getName());
+        assertSame(list1, h.commonSuperClass(list1, list1));
+        CtClass object = sloader.get("java.lang.Object");
+        assertSame(object, h.commonSuperClass(list1, object));
+        assertTrue(java.util.Arrays.asList(h.getInterfaceNames(list1)).contains("java.util.Collection"));
+        assertTrue(h.getAllInterfaces(sloader.get("java.util.List")).containsKey("java.util.List"));
+
+        CtClass a = sloader.makeClass("test5.HierarchyA", list1);
+        CtClass b = sloader.makeClass("test5.HierarchyB", list1);
+        assertSame(list1, h.commonSuperClass(a, b));
+        a.setSuperclass(list2);
+        assertEquals("java.util.AbstractList", h.commonSuperClass(a, b).getName());
+        assertEquals("java.util.LinkedList", h.getSuperclassNames(a)[1]);
+    }
+
+    public void testClassHierarchyOfChildPool() throws Exception {
+        ClassPool parent = new ClassPool(null);
+        parent.appendSystemPath();
+        ClassPool child = new ClassPool(parent);
+        ClassHierarchy h = child.getClassHierarchy();
+        CtClass list1 = parent.get("java.util.ArrayList");
+        CtClass list2 = parent.get("java.util.LinkedList");
+        CtClass a = parent.makeClass("test5.HierarchyC", list1);
+        CtClass b = parent.makeClass("test5.HierarchyD", list1);
+        assertSame(list1, h.commonSuperClass(a, b));
+        a.setSuperclass(list2);
+        assertEquals("java.util.AbstractList", h.commonSuperClass(a, b).getName());
+
+        ClassPool other = new ClassPool(null);
+        other.appendSystemPath();
+        other.makeClass("test5.HierarchyE", other.get("java.util.ArrayList"));
+        assertEquals("java.util.AbstractList", h.commonSuperClass(a, b).getName());
+    }
+
+    public void testSubtypeOfInHierarchy() throws Exception {
+        ClassHierarchy h = sloader.getClassHierarchy();
+        String[] names = { "java.util.ArrayList", "java.util.LinkedList", "java.util.List",
+                           "java.util.Collection", "java.lang.Object", "java.util.RandomAccess",
+                           "java.lang.Iterable", "java.util.AbstractList", "java.lang.String[]" };
+        for (String n1: names)
+            for (String n2: names) {
+                CtClass c1 = sloader.get(n1);
+                CtClass c2 = sloader.get(n2);
+                assertEquals(n1 + " " + n2, c1.subtypeOf(c2), h.subtypeOf(c1, c2));
+            }
+
+        javassist.bytecode.analysis.Type t1 = javassist.bytecode.analysis.Type.get(sloader.get("java.util.ArrayList"));
+        javassist.bytecode.analysis.Type t2 = javassist.bytecode.analysis.Type.get(sloader.get("java.util.ArrayList"));
+        javassist.bytecode.analysis.Type t3 = javassist.bytecode.analysis.Type.get(sloader.get("java.util.List"));
+        assertSame(t1, t1.merge(t2));
+        assertTrue(t1.isAssignableFrom(t2));
+        assertTrue(t3.isAssignableFrom(t1));
+        assertFalse(t1.isAssignableFrom(t3));
+    }
+
+    public void testClassFileReader() throws Exception {
+        CtClass cc = sloader.get("test5.RemoveAnnotation");
+        ClassFile cf = cc.getClassFile2();
+        byte[] bytes = cc.toBytecode();
+        cc.defrost();
+        final javassist.bytecode.ClassFileReader reader
+            = new javassist.bytecode.ClassFileReader(java.nio.ByteBuffer.wrap(bytes));
+        assertEquals("test5.RemoveAnnotation", reader.getName());
+        assertEquals("java.lang.Object", reader.getSuperclass());
+        assertEquals(0, reader.getInterfaces().length);
+        assertEquals(cf.getConstPool().getSize(), reader.getConstPoolSize());
+        final java.util.List<String> names = new java.util.ArrayList<String>();
+        final int[] counts = new int[4];
+        reader.accept(new javassist.bytecode.ClassFileVisitor() {
+            public boolean visitsConstants() { return true; }
+            public void visitConstant(int index, int tag) { counts[0]++; }
+            public boolean visitMethod(int acc, int name, int desc) {
+                names.add(reader.getUtf8(name));
+                return !reader.utf8Equals(name, "bar");
+            }
+            public void visitAnnotation(int type, boolean visible, int pos) {
+                assertFalse(visible);
+                names.add(reader.getUtf8(type));
+                counts[1]++;
+            }
+            public void visitCode(int maxStack, int maxLocals, int pos, int len) {
+                counts[2]++;
+            }
+            public void visitEnd() { counts[3]++; }
+        });
+        assertEquals(4, cf.getMethods().size());
+        assertEquals("[<init>, foo, Ltest5/RemoveAnno1;, Ltest5/RemoveAnno2;, bar, run, Ltest5/RemoveAnno1;]",
+                     names.subList(1, names.size()).toString());
+        assertEquals(3, counts[2]);
+        assertEquals(4, counts[1]);
+        assertEquals(1, counts[3]);
+        assertTrue(counts[0] > 0 && counts[0] < reader.getConstPoolSize());
+        assertTrue(reader.findAttribute(SourceFileAttribute.tag) > 0);
+        assertEquals(-1, reader.findAttribute(InnerClassesAttribute.tag));
+    }
+
+    public void testWriteIntoByteBuffer() throws Exception {
+        CtClass cc = sloader.get("test5.RemoveAnnotation");
+        ClassFile cf = cc.getClassFile2();
+        java.io.ByteArrayOutputStream bout = new java.io.ByteArrayOutputStream();
+        cf.write(new java.io.DataOutputStream(bout));
+        byte[] expected = bout.toByteArray();
+        assertEquals(expected.length, cf.length());
+        assertTrue(java.util.Arrays.equals(expected, cf.toBytes()));
+
+        java.nio.ByteBuffer small = java.nio.ByteBuffer.allocate(expected.length - 1);
+        try {
+            cf.write(small);
+            fail();
+        }
+        catch (java.nio.BufferOverflowException e) {}
+        assertEquals(0, small.position());
+
+        CtClass cc2 = sloader.makeClass("test5.WriteIntoByteBuffer");
+        cc2.addMethod(CtNewMethod.make("public int run() { return \"\u3042\u0000\".length(); }", cc2));
+        java.nio.ByteBuffer buf = java.nio.ByteBuffer.allocateDirect(4096);
+        buf.putInt(0x12345678);
+        cc2.toBytecode(buf);
+        assertEquals(4 + cc2.getClassFile2().length(), buf.position());
+        buf.flip();
+        buf.getInt();
+        byte[] bytes = new byte[buf.remaining()];
+        buf.get(bytes);
+        ClassPool cp = new ClassPool();
+        CtClass cc3 = cp.makeClass(new java.io.ByteArrayInputStream(bytes));
+        assertEquals("test5.WriteIntoByteBuffer", cc3.getName());
+        cc3.writeFile();
+        Object obj = cloader.loadClass("test5.WriteIntoByteBuffer").getConstructor().newInstance();
+        assertEquals(2, invoke(obj, "run"));
+    }
+
+    public void testIncrementalWrite() throws Exception {
+        byte[][] results = new byte[2][];
+        for (int k = 0; k < 2; k++) {
+            ClassPool cp = new ClassPool(null);
+            cp.appendSystemPath();
+            cp.setIncrementalWrite(k == 1);
+            CtClass cc = cp.get("test5.RemoveAnnotation");
+            cc.getDeclaredMethod("bar").insertBefore("baz = 3;");
+            cc.addField(new CtField(CtClass.intType, "qux", cc));
+            ClassFile cf = cc.getClassFile2();
+            int changed = 0;
+            for (javassist.bytecode.MethodInfo minfo: cf.getMethods())
+                if (minfo.isChanged())
+                    changed++;
+
+            assertEquals(k == 1 ? 1 : 4, changed);
+            assertEquals(k == 0, cf.getFields().get(0).isChanged());
+            results[k] = cc.toBytecode();
+            assertEquals(results[k].length, cf.length());
+        }
+
+        assertTrue(java.util.Arrays.equals(results[0], results[1]));
+    }
+
+    public void testStringTable() throws Exception {
+        javassist.bytecode.StringTable table = new javassist.bytecode.StringTable();
+        ClassPool cp = new ClassPool(null);
+        cp.appendSystemPath();
+        cp.setStringTable(table);
+        ClassFile cf1 = cp.get("test5.RemoveAnnotation").getClassFile2();
+        ClassFile cf2 = cp.get("test5.RemoveAnnotation").getClassFile2();
+        ClassFile cf3 = cp.get("test5.NestHost").getClassFile2();
+        assertSame(cf1, cf2);
+        assertSame(table.intern("test5.RemoveAnnotation"), cf1.getName());
+        assertSame(cf1.getSuperclass(), cf3.getSuperclass());
+        assertSame(table.intern("java.lang.Object"), cf3.getSuperclass());
+
+        ConstPool cp1 = cf1.getConstPool();
+        ConstPool cp3 = cf3.getConstPool();
+        assertSame(table, cp1.getStringTable());
+        String init1 = cp1.getUtf8Info(cp1.addUtf8Info("<init>"));
+        String init3 = cp3.getUtf8Info(cp3.addUtf8Info("<init>"));
+        assertSame(init1, init3);
+        String s1 = cp1.getUtf8Info(cp1.addUtf8Info(new String("notExisting")));
+        String s3 = cp3.getUtf8Info(cp3.addUtf8Info(new String("notExisting")));
+        assertSame(s1, s3);
+        int size = table.size();
+        assertSame(cp1.getClassInfo(cp1.addClassInfo("test5.Foo")),
+                   cp3.getClassInfo(cp3.addClassInfo("test5.Foo")));
+        assertEquals(size + 2, table.size());
+
+        CtClass cc = cp.makeClass("test5.StringTableTest");
+        assertSame(cf3.getSuperclass(), cc.getClassFile2().getSuperclass());
+
+        ClassPool cp2 = new ClassPool(null);
+        cp2.appendSystemPath();
+        cp2.setStringTable(table);
+        java.io.InputStream in = cp.openClassfile("test5.NestHost");
+        try {
+            CtClass cc2 = cp2.makeClass(in);
+            assertSame(table, cc2.getClassFile2().getConstPool().getStringTable());
+            assertSame(cf3.getSuperclass(), cc2.getClassFile2().getSuperclass());
+            assertSame(cf3.getName(), cc2.getName());
+        }
+        finally {
+            in.close();
+        }
+    }
+
+    public void testDeferredEdits() throws Exception {
+        CtClass cc = sloader.makeClass("test5.DeferredEdits");
+        cc.addMethod(CtNewMethod.make("public int foo(int i) { return i + 1; }", cc));
+        CtMethod m = CtNewMethod.make("public int run() { int s = 0;"
+                + "for (int i = 0; i < 10; i++) { s += foo(i);"
+                + "  if (i % 2 == 0) s += Math.abs(-i);"
+                + "  s += new String(\"ab\").length(); }"
+                + "try { s += Integer.parseInt(\"x\"); }"
+                + "catch (NumberFormatException e) { s += 1000; }"
+                + "return s; }", cc);
+        cc.addMethod(m);
+        final ExprEditor nested = new ExprEditor() {
+            public void edit(MethodCall call) throws CannotCompileException {
+                if (call.getMethodName().equals("max"))
+                    call.replace("{ $_ = $proceed($$) * 2; }");
+            }
+        };
+        m.instrument(new ExprEditor() {
+            public void edit(MethodCall call) throws CannotCompileException {
+                String name = call.getMethodName();
+                if (name.equals("foo"))
+                    call.replace("{ $_ = $proceed($$) * 2; }");
+                else if (name.equals("abs"))
+                    call.replace("{ $_ = $proceed($$) + Math.max(100, 0); }", nested);
+                else if (name.equals("parseInt"))
+                    call.replace("{ try { $_ = $proceed($$); } finally { $_ = 0; } }");
+            }
+        });
+        cc.writeFile();
+        Object obj = make(cc.getName());
+        assertEquals(110 + 1020 + 20 + 1000, invoke(obj, "run"));
+    }
+
+    public void testStmntCache() throws Exception {
+        CtClass cc = sloader.makeClass("test5.StmntCache");
+        cc.addField(CtField.make("public int counter = 0;", cc));
+        CtMethod m1 = CtNewMethod.make("public int foo(int i) { return counter; }", cc);
+        CtMethod m2 = CtNewMethod.make("public int bar(String s, long j) { return counter; }", cc);
+        cc.addMethod(m1);
+        cc.addMethod(m2);
+        String src = "{ int k = $args.length; counter += k + String.valueOf($1).length(); }";
+        m1.insertBefore(src);
+        m2.insertBefore(src);
+        m2.insertBefore(src);
+        cc.writeFile();
+        Object obj = make(cc.getName());
+        assertEquals(1 + 3, invoke(obj, "foo", 100));
+        Object r = obj.getClass().getMethod("bar", String.class, long.class)
+                      .invoke(obj, "abcde", 3L);
+        assertEquals(4 + (2 + 5) * 2, ((Integer)r).intValue());
+    }
+
+    public void testCodeTemplate() throws Exception {
+        CodeTemplate t = new CodeTemplate("{ $1 = $1 + \"!!\".length() + Math.abs(-3); }", true);
+        CtClass cc = sloader.makeClass("test5.CodeTemplate");
+        CtMethod m1 = CtNewMethod.make("public int foo(int i) { return i; }", cc);
+        CtMethod m2 = CtNewMethod.make("public int bar(int i) { return i * 2; }", cc);
+        CtMethod m3 = CtNewMethod.make("public static int baz(int i) { return i * 3; }", cc);
+        cc.addMethod(m1);
+        cc.addMethod(m2);
+        cc.addMethod(m3);
+        CtClass cc2 = sloader.makeClass("test5.CodeTemplate2");
+        CtMethod m4 = CtNewMethod.make("public int foo(int i) { return i + 100; }", cc2);
+        cc2.addMethod(m4);
+        m1.insertBefore(t);
+        m2.insertBefore(t);
+        m3.insertBefore(t);
+        m4.insertBefore(t);
+        cc.writeFile();
+        cc2.writeFile();
+        Object obj = make(cc.getName());
+        assertEquals(6, invoke(obj, "foo", 1));
+        assertEquals(12, invoke(obj, "bar", 1));
+        assertEquals(18, invoke(obj, "baz", 1));
+        assertEquals(106, invoke(make(cc2.getName()), "foo", 1));
+
+        // a class name is resolved by the class pool of each class.
+        ClassPool cp1 = new ClassPool(null);
+        cp1.appendSystemPath();
+        ClassPool cp2 = new ClassPool(null);
+        cp2.appendSystemPath();
+        cp1.makeClass("test5.CodeTemplateOnlyIn1");
+        CodeTemplate t2 = new CodeTemplate("{ $1 = test5.CodeTemplateOnlyIn1.class.getName(); }", true);
+        CtClass cc3 = cp1.makeClass("test5.CodeTemplate3");
+        CtMethod m5 = CtNewMethod.make("public void foo(String s) {}", cc3);
+        cc3.addMethod(m5);
+        m5.insertBefore(t2);
+        CtClass cc4 = cp2.makeClass("test5.CodeTemplate4");
+        CtMethod m6 = CtNewMethod.make("public void foo(String s) {}", cc4);
+        cc4.addMethod(m6);
+        try {
+            m6.insertBefore(t2);
+            fail();
+        }
+        catch (CannotCompileException e) {}
+    }
+
+    public void testMemberIndexAfterListIteratorSet() throws Exception {
+        ClassFile cf = new ClassFile(false, "test5.MemberListSet", null);
+        ConstPool cp = cf.getConstPool();
+        cf.addMethod(new javassist.bytecode.MethodInfo(cp, "m1", "()V"));
+        cf.addMethod(new javassist.bytecode.MethodInfo(cp, "m2", "()V"));
+        assertEquals(1, cf.getMethods("m1").size());
+        java.util.ListIterator<javassist.bytecode.MethodInfo> it = cf.getMethods().listIterator();
+        while (it.hasNext()) {
+            javassist.bytecode.MethodInfo minfo = it.next();
+            it.set(new javassist.bytecode.MethodInfo(cp, minfo.getName() + "x", "()V"));
+        }
+
+        assertEquals(0, cf.getMethods("m1").size());
+        assertEquals(1, cf.getMethods("m1x").size());
+        assertEquals(1, cf.getMethods("m2x").size());
+    }
+
+    public void testDeferredEditsAndNew() throws Exception {
+        CtClass cc = sloader.makeClass("test5.DeferredEditsAndNew");
+        cc.addMethod(CtNewMethod.make("public int foo(int i) { return i + 1; }", cc));
+        CtMethod m = CtNewMethod.make("public int run() { int s = 0;"
+                + "for (int i = 0; i < 10; i++) { s += foo(i);"
+                + "  s += new Integer(Math.abs(-i)).intValue(); }"
+                + "return s; }", cc);
+        cc.addMethod(m);
+        final ExprEditor nested = new ExprEditor() {
+            public void edit(MethodCall call) throws CannotCompileException {
+                if (call.getMethodName().equals("max"))
+                    call.replace("{ $_ = $proceed($$) * 2; }");
+            }
+        };
+        m.instrument(new ExprEditor() {
+            public void edit(MethodCall call) throws CannotCompileException {
+                String name = call.getMethodName();
+                if (name.equals("foo"))
+                    call.replace("{ $_ = $proceed($$) * 2; }");
+                else if (name.equals("abs"))
+                    call.replace("{ $_ = $proceed($$) + Math.max(100, 0); }", nested);
+            }
+
+            public void edit(NewExpr e) throws CannotCompileException {
+                if (e.getClassName().equals("java.lang.Integer"))
+                    e.replace("{ $_ = new Integer($1 + 1); }");
+            }
+        });
+        cc.writeFile();
+        Object obj = make(cc.getName());
+        assertEquals(110 + 2055, invoke(obj, "run"));
+    }
+
+    public void testMemberIndex() throws Exception {
+        CtClass cc = sloader.makeClass("test5.MemberIndex");
+        for (int i = 0; i < 100; i++) {
+            cc.addMethod(CtNewMethod.make("public int m" + i + "() { return " + i + "; }", cc));
+            cc.addField(CtField.make("public int f" + i + ";", cc));
+        }
+
+        cc.addMethod(CtNewMethod.make("public int m5(int k) { return k; }", cc));
+        assertEquals(2, cc.getDeclaredMethods("m5").length);
+        assertEquals("(I)I", cc.getMethod("m5", "(I)I").getSignature());
+        assertEquals("f7", cc.getField("f7").getName());
+        ClassFile cf = cc.getClassFile();
+        assertEquals(2, cf.getMethods("m5").size());
+
+        CtMethod m = cc.getDeclaredMethod("m9");
+        m.setName("renamed");
+        assertSame(m, cc.getDeclaredMethod("renamed"));
+        assertEquals(0, cc.getDeclaredMethods("m9").length);
+        assertSame(m.getMethodInfo2(), cf.getMethod("renamed"));
+        assertNull(cf.getMethod("m9"));
+        cc.getField("f3").setName("g3");
+        assertEquals("g3", cc.getField("g3").getName());
+        CtMethod m2 = cc.getDeclaredMethod("m2");
+        m2.getMethodInfo().setName("renamed2");
+        assertSame(m2, cc.getDeclaredMethod("renamed2"));
+        assertSame(m2.getMethodInfo2(), cf.getMethod("renamed2"));
+        CtField f4 = cc.getField("f4");
+        f4.getFieldInfo().setName("g4");
+        assertSame(f4, cc.getField("g4"));
+        try {
+            cc.getField("f4");
+            fail();
+        }
+        catch (NotFoundException e) {}
+
+        cc.removeMethod(cc.getDeclaredMethod("m5", new CtClass[0]));
+        assertEquals(1, cf.getMethods("m5").size());
+        cc.addMethod(CtNewMethod.make("public int run() { return renamed() + m5(3) + m8(); }", cc));
+        cc.writeFile();
+        Object obj = make(cc.getName());
+        assertEquals(9 + 3 + 8, invoke(obj, "run"));
+    }
 }
@@ -2,6 +2,8 @@ package javassist.bytecode;
 
 import java.io.*;
 import java.lang.reflect.Method;
+import java.util.HashMap;
+import java.util.Map;
 import junit.framework.*;
 import javassist.*;
 import javassist.bytecode.annotation.*;
@@ -63,26 +65,6 @@ public class BytecodeTest extends TestCase {
         assertEquals(2, code.read(101));
     }
 
-    public void testLongVector() throws Exception {
-        LongVector vec = new LongVector();
-        assertEquals(LongVector.ASIZE * LongVector.VSIZE, vec.capacity());
-        int size = LongVector.ASIZE * LongVector.VSIZE * 3;
-        for (int i = 0; i < size; i++) {
-            vec.addElement(new IntegerInfo(i, i));
-            assertEquals(i, ((IntegerInfo)vec.elementAt(i)).value);
-            assertEquals(i + 1, vec.size());
-        }
-
-        size = LongVector.ASIZE * LongVector.VSIZE * 3;
-        vec = new LongVector(size - 5);
-        assertEquals(size, vec.capacity());
-        for (int i = 0; i < size; i++) {
-            vec.addElement(new IntegerInfo(i, i));
-            assertEquals(i, ((IntegerInfo)vec.elementAt(i)).value);
-            assertEquals(i + 1, vec.size());
-        }
-    }
-
     public void testClone() throws Exception {
         ConstPool cp = new ConstPool("test.CloneTest");
         Bytecode bc = new Bytecode(cp);
@@ -780,6 +762,49 @@ public class BytecodeTest extends TestCase {
         assertEquals("[Ltest.Bar2;", cp.getClassInfo(n8));
     }
 
+    public void testConstPoolReadWrite() throws Exception {
+        ConstPool cp = new ConstPool("test.Tester");
+        int c = cp.addClassInfo("test.Foo");
+        int m = cp.addMethodrefInfo(c, "foo", "(Ltest/Foo;)J");
+        int l = cp.addLongInfo(0x123456789abcdefL);
+        int d = cp.addDoubleInfo(-1.5);
+        int f = cp.addFloatInfo(-0.0F);
+        int f2 = cp.addFloatInfo(0.0F);
+        assertTrue(f != f2);
+        for (int i = 0; i < 1000; i++)
+            cp.addIntegerInfo(i);
+
+        int s = cp.addStringInfo("あ\u0000");
+        assertEquals(l + 2, d);
+
+        ByteArrayOutputStream bout = new ByteArrayOutputStream();
+        cp.write(new DataOutputStream(bout));
+        byte[] bytes = bout.toByteArray();
+        assertEquals(bytes.length, cp.length());
+
+        ConstPool cp2 = new ConstPool(new DataInputStream(new ByteArrayInputStream(bytes)));
+        assertEquals(cp.getSize(), cp2.getSize());
+        assertEquals("test.Foo", cp2.getMethodrefClassName(m));
+        assertEquals("(Ltest/Foo;)J", cp2.getMethodrefType(m));
+        assertEquals(0x123456789abcdefL, cp2.getLongInfo(l));
+        assertEquals(-1.5, cp2.getDoubleInfo(d), 0.0);
+        assertEquals(Float.floatToIntBits(-0.0F), Float.floatToIntBits(cp2.getFloatInfo(f)));
+        assertEquals(Integer.valueOf(999), cp2.getLdcValue(cp2.addIntegerInfo(999)));
+        assertEquals("あ\u0000", cp2.getLdcValue(s));
+        assertEquals(m, cp2.addMethodrefInfo(c, "foo", "(Ltest/Foo;)J"));
+        assertEquals(cp.getSize(), cp2.getSize());
+
+        ConstPool cp3 = new ConstPool("test.Tester2");
+        Map<String,String> map = new HashMap<String,String>();
+        map.put("test/Foo", "test/Bar");
+        int m3 = cp2.copy(m, cp3, map);
+        assertEquals("test.Bar", cp3.getMethodrefClassName(m3));
+        assertEquals("(Ltest/Bar;)J", cp3.getMethodrefType(m3));
+        int l3 = cp2.copy(l, cp3, null);
+        assertEquals(0x123456789abcdefL, cp3.getLongInfo(l3));
+        assertEquals(l3 + 2, cp3.addIntegerInfo(7));
+    }
+
     public void testInvokeDynamic() throws Exception {
         CtClass cc = loader.get("test4.InvokeDyn");
         ClassFile cf = cc.getClassFile();
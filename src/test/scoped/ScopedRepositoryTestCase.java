@@ -135,6 +135,105 @@ public class ScopedRepositoryTestCase extends TestCase
        assertTrue(current > map.size());
    }
    
+   public void testCachedClassIndex() throws Exception
+   {
+      ClassLoader cl1 = new URLClassLoader(new URL[0], null);
+      ClassLoader cl2 = new URLClassLoader(new URL[0], null);
+      ClassPool pool1 = repository.findClassPool(cl1);
+      ClassPool pool2 = repository.findClassPool(cl2);
+      try {
+         CtClass clazz = pool1.makeClass("scoped.CachedClassIndex");
+         assertSame(clazz, pool2.get("scoped.CachedClassIndex"));
+         ((ScopedClassPool)pool1).flushClass("scoped.CachedClassIndex");
+         assertNull(pool2.getOrNull("scoped.CachedClassIndex"));
+
+         clazz = pool2.makeClass("scoped.CachedClassIndex2");
+         assertSame(clazz, repository.getCachedClass("scoped.CachedClassIndex2"));
+         repository.unregisterClassLoader(cl2);
+         assertNull(repository.getCachedClass("scoped.CachedClassIndex2"));
+      }
+      finally {
+         repository.unregisterClassLoader(cl1);
+         repository.unregisterClassLoader(cl2);
+      }
+   }
+
+   public void testDefaultGetCachedClass() throws Exception
+   {
+      final Map<ClassLoader,ScopedClassPool> registered
+         = java.util.Collections.synchronizedMap(new java.util.HashMap<ClassLoader,ScopedClassPool>());
+      ScopedClassPoolRepository repo = new ScopedClassPoolRepository() {
+         public void setClassPoolFactory(javassist.scopedpool.ScopedClassPoolFactory factory) {}
+         public javassist.scopedpool.ScopedClassPoolFactory getClassPoolFactory() { return null; }
+         public boolean isPrune() { return false; }
+         public void setPrune(boolean prune) {}
+         public ScopedClassPool createScopedClassPool(ClassLoader cl, ClassPool src) { return null; }
+         public ClassPool findClassPool(ClassLoader cl) { return registered.get(cl); }
+         public ClassPool registerClassLoader(ClassLoader ucl) { return registered.get(ucl); }
+         public Map<ClassLoader,ScopedClassPool> getRegisteredCLs() { return registered; }
+         public void clearUnregisteredClassLoaders() {}
+         public void unregisterClassLoader(ClassLoader cl) { registered.remove(cl); }
+      };
+
+      ClassLoader cl1 = new URLClassLoader(new URL[0], null);
+      ClassLoader cl2 = new URLClassLoader(new URL[0], null);
+      ClassLoader cl3 = new URLClassLoader(new URL[0], null);
+      registered.put(cl1, new UnloadedPool(cl1, repo));
+      registered.put(cl2, new UnloadedPool(cl2, repo));
+      ScopedClassPool pool3 = new ScopedClassPool(cl3, ClassPool.getDefault(), repo, false) {};
+      registered.put(cl3, pool3);
+      CtClass clazz = pool3.makeClass("scoped.DefaultGetCachedClass");
+      assertSame(clazz, repo.getCachedClass("scoped.DefaultGetCachedClass"));
+      assertEquals(1, registered.size());
+      assertSame(pool3, registered.get(cl3));
+   }
+
+   static class UnloadedPool extends ScopedClassPool
+   {
+      UnloadedPool(ClassLoader cl, ScopedClassPoolRepository repo)
+      {
+         super(cl, ClassPool.getDefault(), repo, false);
+      }
+
+      @Override
+      public boolean isUnloadedClassLoader()
+      {
+         return true;
+      }
+   }
+
+   public void testCollectedClassLoader() throws Exception
+   {
+      ScopedClassPoolRepositoryImpl repo = (ScopedClassPoolRepositoryImpl)repository;
+      ClassLoader cl = new URLClassLoader(new URL[0], null);
+      ScopedClassPool pool = (ScopedClassPool)repo.findClassPool(cl);
+      pool.makeClass("scoped.CollectedClassLoader");
+      assertTrue(Arrays.asList(repo.getRegisteredPools()).contains(pool));
+      cl = null;
+      for (int i = 0; i < 100 && Arrays.asList(repo.getRegisteredPools()).contains(pool); i++) {
+         System.gc();
+         Thread.sleep(10);
+      }
+
+      assertFalse(Arrays.asList(repo.getRegisteredPools()).contains(pool));
+      assertNull(repo.getCachedClass("scoped.CollectedClassLoader"));
+   }
+
+   public void testCleanerThread() throws Exception
+   {
+      ClassLoader cl = new URLClassLoader(new URL[0], null);
+      repository.findClassPool(cl);
+      Thread cleaner = null;
+      for (Thread t:Thread.getAllStackTraces().keySet())
+         if ("javassist scoped class pool cleaner".equals(t.getName()))
+            cleaner = t;
+
+      assertNotNull(cleaner);
+      assertTrue(cleaner.isDaemon());
+      assertNull(cleaner.getContextClassLoader());
+      repository.unregisterClassLoader(cl);
+   }
+
    protected CtClass getCtClass(Class<?> clazz) throws Exception
    {
       return getCtClass(clazz.getName(), clazz.getClassLoader());
@@ -8,6 +8,7 @@ import java.io.Serializable;
 import java.lang.reflect.Method;
 
 import javassist.util.proxy.MethodFilter;
+import javassist.util.proxy.MethodHandleHandler;
 import javassist.util.proxy.MethodHandler;
 import javassist.util.proxy.Proxy;
 import javassist.util.proxy.ProxyFactory;
@@ -362,4 +363,163 @@ public class ProxySimpleTest extends TestCase {
     public static class Extended267b extends Base267b {
         public String base() { return "extended"; }
     }
+
+    public void testConcurrentCreateClass() throws Exception {
+        final Class[] superclasses = { Concurrent1.class, Concurrent2.class };
+        final Class[] results = new Class[8];
+        final Throwable[] errors = new Throwable[results.length];
+        Thread[] threads = new Thread[results.length];
+        for (int i = 0; i < threads.length; i++) {
+            final int k = i;
+            threads[i] = new Thread() {
+                public void run() {
+                    try {
+                        ProxyFactory factory = new ProxyFactory();
+                        factory.setSuperclass(superclasses[k % 2]);
+                        results[k] = factory.createClass();
+                    }
+                    catch (Throwable t) {
+                        errors[k] = t;
+                    }
+                }
+            };
+            threads[i].start();
+        }
+
+        for (int i = 0; i < threads.length; i++)
+            threads[i].join();
+
+        for (int i = 0; i < results.length; i++) {
+            assertNull(errors[i]);
+            assertSame(results[i % 2], results[i]);
+            assertEquals(superclasses[i % 2], results[i].getSuperclass());
+        }
+
+        assertNotSame(results[0], results[1]);
+    }
+
+    public void testConcurrentCreateClassBySharedFactory() throws Exception {
+        final ProxyFactory factory = new ProxyFactory();
+        factory.setSuperclass(Concurrent1.class);
+        final boolean[] useCache = { true, false };
+        for (int j = 0; j < useCache.length; j++) {
+            factory.setUseCache(useCache[j]);
+            final Class[] results = new Class[8];
+            final Throwable[] errors = new Throwable[results.length];
+            Thread[] threads = new Thread[results.length];
+            for (int i = 0; i < threads.length; i++) {
+                final int k = i;
+                threads[i] = new Thread() {
+                    public void run() {
+                        try {
+                            results[k] = factory.createClass();
+                        }
+                        catch (Throwable t) {
+                            errors[k] = t;
+                        }
+                    }
+                };
+                threads[i].start();
+            }
+
+            for (int i = 0; i < threads.length; i++)
+                threads[i].join();
+
+            for (int i = 0; i < results.length; i++) {
+                assertNull(errors[i]);
+                assertNotNull(results[i]);
+                assertEquals(Concurrent1.class, results[i].getSuperclass());
+            }
+        }
+    }
+
+    public static class Concurrent1 {
+        public int foo() { return 1; }
+    }
+
+    public static class Concurrent2 {
+        public int foo() { return 2; }
+    }
+
+    public void testProxyCacheKey() throws Exception {
+        Class c1 = createProxyClass(Concurrent1.class, new Class[] { Runnable.class, Serializable.class }, true);
+        Class c2 = createProxyClass(Concurrent1.class, new Class[] { Runnable.class, Serializable.class }, true);
+        Class c3 = createProxyClass(Concurrent1.class, new Class[] { Serializable.class, Runnable.class }, true);
+        Class c4 = createProxyClass(Concurrent1.class, new Class[] { Runnable.class, Serializable.class }, false);
+        Class c5 = createProxyClass(Concurrent2.class, new Class[] { Runnable.class, Serializable.class }, true);
+        assertSame(c1, c2);
+        assertNotSame(c1, c3);
+        assertNotSame(c1, c4);
+        assertNotSame(c1, c5);
+
+        ProxyFactory f = new ProxyFactory();
+        f.setSuperclass(Concurrent1.class);
+        f.setInterfaces(new Class[] { Runnable.class, Serializable.class });
+        f.setFilter(new MethodFilter() {
+            public boolean isHandled(Method m) {
+                return m.getName().equals("foo");
+            }
+        });
+        assertNotSame(c1, f.createClass());
+    }
+
+    private static Class createProxyClass(Class superclass, Class[] interfaces, boolean writeReplace) {
+        ProxyFactory f = new ProxyFactory();
+        f.setSuperclass(superclass);
+        f.setInterfaces(interfaces);
+        f.setUseWriteReplace(writeReplace);
+        return f.createClass();
+    }
+
+    public void testMethodHandleHandler() throws Exception {
+        MethodHandleHandler mh = new MethodHandleHandler() {
+            public Object invoke(Object self, Method thisMethod,
+                                 java.lang.invoke.MethodHandle proceed,
+                                 Object[] args) throws Throwable {
+                testResult += thisMethod.getName();
+                Object result = (Object)proceed.invokeExact(self, args);
+                return thisMethod.getName().equals("hello") ? result + "!" : result;
+            }
+        };
+
+        ProxyFactory f = new ProxyFactory();
+        f.setSuperclass(Handle.class);
+        assertFalse(f.isUseMethodHandles());
+        f.setUseMethodHandles(true);
+        Class c = f.createClass();
+        Handle h = (Handle)c.getConstructor().newInstance();
+        ((Proxy)h).setHandler(mh);
+        testResult = "";
+        assertEquals(5L, h.add(2, 3L));
+        assertEquals("hello!", h.hello());
+        h.nop();
+        assertEquals("addhellonop", testResult);
+
+        // a normal handler still receives a Method object.
+        ((Proxy)h).setHandler(new MethodHandler() {
+            public Object invoke(Object self, Method m, Method proceed,
+                                 Object[] args) throws Throwable {
+                return proceed.invoke(self, args);
+            }
+        });
+        assertEquals(7L, h.add(3, 4L));
+
+        // a method-handle handler given to a normal proxy class.
+        ProxyFactory f2 = new ProxyFactory();
+        f2.setSuperclass(Handle.class);
+        Class c2 = f2.createClass();
+        assertNotSame(c, c2);
+        Handle h2 = (Handle)c2.getConstructor().newInstance();
+        ((Proxy)h2).setHandler(mh);
+        testResult = "";
+        assertEquals(9L, h2.add(4, 5L));
+        assertEquals("hello!", h2.hello());
+        assertEquals("addhello", testResult);
+    }
+
+    public static class Handle {
+        public long add(int i, long j) { return i + j; }
+        public String hello() { return "hello"; }
+        public void nop() {}
+    }
 }